@@ -0,0 +1,21 @@
+package august;
+
+/** Reports a failure of the tested application as a whole, rather than a
+ * failure of a single test step; for example, the application not becoming
+ * ready in time after it was started.
+ * <P>
+ * ApplicationException instances are added by the TestEngine to the TestReport
+ * of the test during which the failure happened.
+ */
+public class ApplicationException extends Exception {
+
+/** Constructs an <code>ApplicationException</code> with the specified detail
+ * message.
+ *
+ * @param msg the detail message; it should start with the id of the test
+ * during which the failure happened
+ */
+public ApplicationException(String msg) {
+    super(msg);
+}
+}
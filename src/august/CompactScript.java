@@ -0,0 +1,579 @@
+package august;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/** Reads and writes test scripts in the compact format: one test step per
+ * line, instead of one xml element per step.
+ * <P>
+ * A compact script holds what the section containing test step nodes of an
+ * xml script holds, with the same tags and attributes (see TestStep.Creator).
+ * Each line is either empty, a comment starting with '#', or one element: its
+ * tag, its attributes as <CODE>name=value</CODE> pairs, and its child
+ * elements, each in braces.  For example:
+ * <PRE>
+ * # log in first
+ * callScript script=util/login.aug
+ * guiAction component=okButton keyword=click {arg type=int value=2}
+ * guiResultCheck component=status property=text value="Logged in"
+ * </PRE>
+ * A value is written in double quotes if it is empty, or contains white
+ * space, a double quote, a brace or a backslash; inside the quotes,
+ * <CODE>\"</CODE>, <CODE>\\</CODE>, <CODE>\n</CODE>, <CODE>\r</CODE> and
+ * <CODE>\t</CODE> stand for those characters.  Scripts are encoded in UTF-8.
+ * <P>
+ * The TestScriptParser reads every script (or called utility script) whose
+ * name ends with EXTENSION in this format.  The script file is read into
+ * memory in one go, and closed right away; the steps are then read straight
+ * from those bytes: only the tags, attribute names and values are decoded,
+ * into the Strings the Elements are made of.  (The file is not mapped into
+ * memory: a mapping outlives the channel until it is garbage collected, and
+ * on Windows a mapped file can be neither replaced nor deleted, which would
+ * get in the way of editing a script while the TestEngine watches it.)
+ * <P>
+ * The main method converts scripts from xml to the compact format, and back.
+ * Both conversions keep the elements of the section containing test step
+ * nodes (with their attributes and child elements), and the comments between
+ * them; they leave out anything outside that section, which is not used by
+ * the parser anyway, and comments inside the elements.  Text inside the
+ * section cannot be converted, and makes the conversion fail.
+ * <P>
+ * A CompactScript must only be used by one thread at a time.
+ */
+class CompactScript {
+
+/** The extension of scripts in the compact format.
+ */
+protected static final String EXTENSION = ".aug";
+
+/** The tag of the root element of converted xml scripts.
+ */
+protected static final String ROOT = "script";
+
+/** The character starting a comment line.
+ */
+private static final byte COMMENT = '#';
+
+/** The encoding of compact scripts.
+ */
+private static final Charset UTF8 = Charset.forName("UTF-8");
+
+/** The path of the script.
+ */
+private String testScript;
+
+/** The contents of the script file.
+ */
+private ByteBuffer buffer;
+
+/** The position of the next byte to read.
+ */
+private int pos = 0;
+
+/** The number of the line being read.
+ */
+private int line = 1;
+
+/** Creates the Elements read from the script.
+ */
+private Document document;
+
+/** Decodes tags, attribute names and values.
+ */
+private CharsetDecoder decoder = UTF8.newDecoder()
+    .onMalformedInput(CodingErrorAction.REPORT)
+    .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+/** Receives decoded characters; grown when needed.
+ */
+private CharBuffer chars = CharBuffer.allocate(128);
+
+/** Opens a compact script.
+ *
+ * @param testScript a relative or absolute path for a compact script
+ * @param document the document that creates the Elements read from the
+ * script (they are not added to it)
+ * @throws ParsingException if the script cannot be opened
+ */
+protected CompactScript(String testScript, Document document)
+throws ParsingException {
+    this.testScript = testScript;
+    this.document = document;
+    FileInputStream in = null;
+    try {
+        in = new FileInputStream(testScript);
+        FileChannel channel = in.getChannel();
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(testScript + " is too large");
+        }
+        buffer = ByteBuffer.allocate((int)size);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // Keep reading until the whole file is in the buffer.
+        }
+        // A file that shrank while being read ends where the reading stopped.
+        buffer.flip();
+    }
+    catch (IOException e) {
+        throw new ParsingException(e.getMessage());
+    }
+    finally {
+        try {
+            if (in != null) {
+                in.close();
+            }
+        }
+        catch (IOException ignored) {
+            // The contents have been read, or the script could not be
+            // opened anyway.
+        }
+    }
+}
+
+/** Checks whether a script is in the compact format.
+ *
+ * @param testScript the path of the script
+ * @return 'true' if the name of the script ends with EXTENSION
+ */
+protected static boolean isCompact(String testScript) {
+    return testScript.endsWith(EXTENSION);
+}
+
+/** Reads the next element of the script.
+ *
+ * @return the element, which belongs to no document tree, or null at the end
+ * of the script
+ * @throws ParsingException if the next line is not an element or a comment
+ */
+protected Element nextElement() throws ParsingException {
+    Node node;
+    while ((node = nextNode()) != null && !(node instanceof Element)) {
+    }
+    return (Element)node;
+}
+
+/** Reads the next element or comment of the script.
+ *
+ * @return an Element or a Comment, which belongs to no document tree, or null
+ * at the end of the script
+ * @throws ParsingException if the next line is not an element or a comment
+ */
+protected Node nextNode() throws ParsingException {
+    try {
+        while (true) {
+            skipSpaces();
+            if (pos >= buffer.limit()) {
+                return null;
+            }
+            byte b = buffer.get(pos);
+            if (b == '\n' || b == '\r') {
+                skipLineEnd();
+                continue;
+            }
+            Node node;
+            if (b == COMMENT) {
+                int start = ++pos;
+                while (pos < buffer.limit() && !isLineEnd(buffer.get(pos))) {
+                    pos++;
+                }
+                node = document.createComment(
+                    decode(start, pos).toString().trim());
+            }
+            else {
+                node = readElement();
+                skipSpaces();
+            }
+            if (pos < buffer.limit() && !isLineEnd(buffer.get(pos))) {
+                throw failure("unexpected '" + (char)buffer.get(pos) + "'");
+            }
+            skipLineEnd();
+            return node;
+        }
+    }
+    catch (DOMException e) {
+        throw failure(e.getMessage());
+    }
+}
+
+/** Releases the contents of the script.  The file itself has already been
+ * closed when the script was opened.
+ */
+protected void close() {
+    buffer = null;
+}
+
+/** Reads an element: its tag, attributes and child elements.
+ *
+ * @return the element
+ * @throws ParsingException if the element is malformed
+ */
+private Element readElement() throws ParsingException {
+    Element element = document.createElement(readName("tag"));
+    while (true) {
+        skipSpaces();
+        if (pos >= buffer.limit()) {
+            return element;
+        }
+        byte b = buffer.get(pos);
+        if (isLineEnd(b) || b == '}') {
+            return element;
+        }
+        if (b == '{') {
+            pos++;
+            skipSpaces();
+            element.appendChild(readElement());
+            if (pos >= buffer.limit() || buffer.get(pos) != '}') {
+                throw failure("'}' expected");
+            }
+            pos++;
+        }
+        else {
+            String name = readName("attribute name");
+            if (pos >= buffer.limit() || buffer.get(pos) != '=') {
+                throw failure("'=' expected after " + name);
+            }
+            pos++;
+            element.setAttribute(name, readValue());
+        }
+    }
+}
+
+/** Reads a tag or an attribute name.
+ *
+ * @param what what is expected, for the error message
+ * @return the name
+ * @throws ParsingException if there is no name
+ */
+private String readName(String what) throws ParsingException {
+    int start = pos;
+    while (pos < buffer.limit() && !isDelimiter(buffer.get(pos))
+           && buffer.get(pos) != '=') {
+        pos++;
+    }
+    if (pos == start) {
+        throw failure(what + " expected");
+    }
+    return decode(start, pos).toString();
+}
+
+/** Reads an attribute value, quoted or not.
+ *
+ * @return the value
+ * @throws ParsingException if a quoted value is not closed
+ */
+private String readValue() throws ParsingException {
+    if (pos >= buffer.limit() || buffer.get(pos) != '"') {
+        int start = pos;
+        while (pos < buffer.limit() && !isDelimiter(buffer.get(pos))) {
+            pos++;
+        }
+        return decode(start, pos).toString();
+    }
+    int start = ++pos;
+    boolean escaped = false;
+    while (true) {
+        if (pos >= buffer.limit() || isLineEnd(buffer.get(pos))) {
+            throw failure("unterminated value");
+        }
+        byte b = buffer.get(pos++);
+        if (b == '"') {
+            break;
+        }
+        if (b == '\\') {
+            if (pos >= buffer.limit() || isLineEnd(buffer.get(pos))) {
+                throw failure("unterminated value");
+            }
+            escaped = true;
+            pos++;
+        }
+    }
+    CharBuffer value = decode(start, pos - 1);
+    if (!escaped) {
+        return value.toString();
+    }
+    StringBuffer unescaped = new StringBuffer(value.length());
+    while (value.hasRemaining()) {
+        char c = value.get();
+        if (c == '\\' && value.hasRemaining()) {
+            c = value.get();
+            switch (c) {
+                case 'n': c = '\n'; break;
+                case 'r': c = '\r'; break;
+                case 't': c = '\t'; break;
+                case '"': case '\\': break;
+                default: throw failure("unknown escape \\" + c);
+            }
+        }
+        unescaped.append(c);
+    }
+    return unescaped.toString();
+}
+
+/** Decodes bytes of the script, without copying them out of the buffer.
+ *
+ * @param start the position of the first byte
+ * @param end the position after the last byte
+ * @return the characters, ready to be read (valid until the next call)
+ * @throws ParsingException if the bytes are not UTF-8
+ */
+private CharBuffer decode(int start, int end) throws ParsingException {
+    ByteBuffer bytes = buffer.duplicate();
+    bytes.limit(end);
+    bytes.position(start);
+    if (chars.capacity() < end - start) {
+        chars = CharBuffer.allocate(end - start);
+    }
+    chars.clear();
+    decoder.reset();
+    CoderResult result = decoder.decode(bytes, chars, true);
+    if (result.isError()) {
+        throw failure("not UTF-8");
+    }
+    decoder.flush(chars);
+    chars.flip();
+    return chars;
+}
+
+/** Skips spaces and tabs.
+ */
+private void skipSpaces() {
+    while (pos < buffer.limit()
+           && (buffer.get(pos) == ' ' || buffer.get(pos) == '\t')) {
+        pos++;
+    }
+}
+
+/** Skips the end of a line ("\n", "\r\n" or "\r"), if the script has not
+ * ended.
+ */
+private void skipLineEnd() {
+    if (pos < buffer.limit() && buffer.get(pos) == '\r') {
+        pos++;
+    }
+    if (pos < buffer.limit() && buffer.get(pos) == '\n') {
+        pos++;
+    }
+    line++;
+}
+
+/** @return 'true' if b ends a line
+ */
+private static boolean isLineEnd(byte b) {
+    return b == '\n' || b == '\r';
+}
+
+/** @return 'true' if b ends a name or an unquoted value
+ */
+private static boolean isDelimiter(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r'
+        || b == '{' || b == '}' || b == '"';
+}
+
+/** Describes a failure to read the script, at the current line.
+ *
+ * @param message what is wrong
+ * @return the exception to throw
+ */
+private ParsingException failure(String message) {
+    return new ParsingException("Errors parsing " + testScript + ":\n"
+        + "[Fatal Error] at line number " + line + ": " + message);
+}
+
+////////// Conversion //////////
+
+/** Converts a script from xml to the compact format, or back.
+ * <P>
+ * Usage: <CODE>java august.CompactScript from to</CODE>.  If the name of
+ * <CODE>from</CODE> ends with EXTENSION, then it is converted to xml;
+ * otherwise it is converted to the compact format.
+ *
+ * @param args the script to convert, and the file to write
+ */
+public static void main(String[] args) {
+    if (args.length != 2) {
+        System.out.println("Usage: java august.CompactScript from to");
+        System.exit(1);
+    }
+    try {
+        if (isCompact(args[0])) {
+            toXml(args[0], args[1]);
+        }
+        else {
+            fromXml(args[0], args[1]);
+        }
+    }
+    catch (Exception e) {
+        System.out.println("August aborting; could not convert " + args[0]
+            + ": " + e.getMessage());
+        System.exit(1);
+    }
+}
+
+/** Converts a compact script to xml.
+ *
+ * @param compactScript the path of the compact script
+ * @param xmlScript the path of the xml script to write
+ * @throws Exception if the compact script cannot be read, or the xml script
+ * cannot be written
+ */
+protected static void toXml(String compactScript, String xmlScript)
+throws Exception {
+    Document document = DocumentBuilderFactory.newInstance()
+        .newDocumentBuilder().newDocument();
+    Element testSteps = document.createElement(TestScriptParser.TEST_STEPS);
+    document.appendChild(document.createElement(ROOT)).appendChild(testSteps);
+    CompactScript script = new CompactScript(compactScript, document);
+    try {
+        Node node;
+        while ((node = script.nextNode()) != null) {
+            testSteps.appendChild(node);
+        }
+    }
+    finally {
+        script.close();
+    }
+    Transformer t = TransformerFactory.newInstance().newTransformer();
+    t.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+    t.setOutputProperty(OutputKeys.INDENT, "yes");
+    t.transform(new DOMSource(document), new StreamResult(new File(xmlScript)));
+}
+
+/** Converts an xml script to the compact format.
+ *
+ * @param xmlScript the path of the xml script
+ * @param compactScript the path of the compact script to write
+ * @throws Exception if the xml script cannot be read or converted, or the
+ * compact script cannot be written
+ */
+protected static void fromXml(String xmlScript, String compactScript)
+throws Exception {
+    Node testSteps = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new File(xmlScript))
+        .getElementsByTagName(TestScriptParser.TEST_STEPS).item(0);
+    if (testSteps == null) {
+        throw new ParsingException("no " + TestScriptParser.TEST_STEPS
+                                   + " element");
+    }
+    Writer out = new OutputStreamWriter(new FileOutputStream(compactScript),
+                                        UTF8);
+    try {
+        for (Node node = testSteps.getFirstChild(); node != null;
+             node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                writeElement(out, (Element)node);
+                out.write('\n');
+            }
+            else if (node.getNodeType() == Node.COMMENT_NODE) {
+                String[] lines = node.getNodeValue().trim().split("\r\n|\r|\n");
+                for (int i = 0; i < lines.length; i++) {
+                    out.write("# " + lines[i].trim() + "\n");
+                }
+            }
+            else {
+                checkNoText(node);
+            }
+        }
+    }
+    finally {
+        out.close();
+    }
+}
+
+/** Writes an element: its tag, attributes and child elements.
+ *
+ * @param out where to write
+ * @param element the element
+ * @throws Exception if the element contains text, or cannot be written
+ */
+private static void writeElement(Writer out, Element element)
+throws Exception {
+    out.write(element.getTagName());
+    NamedNodeMap attributes = element.getAttributes();
+    for (int i = 0; i < attributes.getLength(); i++) {
+        Attr attribute = (Attr)(attributes.item(i));
+        out.write(' ');
+        out.write(attribute.getName());
+        out.write('=');
+        out.write(quote(attribute.getValue()));
+    }
+    for (Node child = element.getFirstChild(); child != null;
+         child = child.getNextSibling()) {
+        if (child.getNodeType() == Node.ELEMENT_NODE) {
+            out.write(" {");
+            writeElement(out, (Element)child);
+            out.write('}');
+        }
+        else if (child.getNodeType() != Node.COMMENT_NODE) {
+            checkNoText(child);
+        }
+    }
+}
+
+/** Makes sure a node is only white space.
+ *
+ * @param node a node that is not an element or a comment
+ * @throws ParsingException if the node has text, which the compact format
+ * cannot hold
+ */
+private static void checkNoText(Node node) throws ParsingException {
+    if (node.getNodeValue() != null && !node.getNodeValue().trim().equals("")) {
+        throw new ParsingException("text cannot be converted: "
+                                   + node.getNodeValue().trim());
+    }
+}
+
+/** Writes an attribute value, quoted if necessary.
+ *
+ * @param value the value
+ * @return the value as it is written in a compact script
+ */
+private static String quote(String value) {
+    boolean plain = value.length() > 0;
+    for (int i = 0; plain && i < value.length(); i++) {
+        char c = value.charAt(i);
+        plain = c > ' ' && c != '"' && c != '{' && c != '}' && c != '\\';
+    }
+    if (plain) {
+        return value;
+    }
+    StringBuffer quoted = new StringBuffer(value.length() + 2);
+    quoted.append('"');
+    for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        switch (c) {
+            case '"': quoted.append("\\\""); break;
+            case '\\': quoted.append("\\\\"); break;
+            case '\n': quoted.append("\\n"); break;
+            case '\r': quoted.append("\\r"); break;
+            case '\t': quoted.append("\\t"); break;
+            default: quoted.append(c);
+        }
+    }
+    quoted.append('"');
+    return quoted.toString();
+}
+
+}
@@ -0,0 +1,245 @@
+package august;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.event.AWTEventListener;
+import java.awt.event.ContainerEvent;
+import java.awt.event.WindowEvent;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Maps the names of the components of the tested application to the
+ * components, so that the ObjectFinder does not have to walk every component
+ * tree to find a component by its name.
+ * <P>
+ * The index is kept up to date by an AWTEventListener: a component is indexed
+ * (together with the components inside it) when it is added to a container,
+ * and forgotten when it is removed from one; the component tree of a window is
+ * indexed when the window is opened, and forgotten when it is closed.  The
+ * windows that already exist when the index is created are indexed then.
+ * <P>
+ * The listener cannot see a component being renamed, so the index is only a
+ * hint.  A component is returned by find only if it still has the name, it is
+ * in a window of the scope being searched, and it is the only such
+ * component; otherwise the ObjectFinder falls back to walking the component
+ * trees, and adds the component it finds to the index.
+ * <P>
+ * Containers are modified on the event dispatch thread, and on the threads
+ * the tested application builds its GUI on, while the engine searches on its
+ * own thread; so the index is only used while holding its lock.  The listener
+ * is called while the AWT tree lock is held, so the lock of the index is never
+ * held while taking the tree lock.
+ */
+class ComponentIndex {
+
+/** The events the index is maintained from.
+ */
+private static final long EVENT_MASK =
+    AWTEvent.CONTAINER_EVENT_MASK | AWTEvent.WINDOW_EVENT_MASK;
+
+/** The index, created when it is first needed.
+ */
+private static ComponentIndex instance;
+
+/** Maps the names of components to the components (Lists of WeakReferences
+ * to Components, nearly always of one).  The references are weak, since
+ * components built but never shown, or dropped without being removed from
+ * their containers, are never forgotten otherwise.
+ */
+private Map components = new HashMap();
+
+/** Keeps the index up to date.
+ */
+private AWTEventListener listener = new AWTEventListener() {
+    public void eventDispatched(AWTEvent e) {
+        switch (e.getID()) {
+            case ContainerEvent.COMPONENT_ADDED:
+                add(((ContainerEvent)e).getChild());
+                break;
+            case ContainerEvent.COMPONENT_REMOVED:
+                remove(((ContainerEvent)e).getChild());
+                break;
+            case WindowEvent.WINDOW_OPENED:
+                add(((WindowEvent)e).getWindow());
+                break;
+            case WindowEvent.WINDOW_CLOSED:
+                remove(((WindowEvent)e).getWindow());
+                break;
+            default:
+                break;
+        }
+    }
+};
+
+/** Returns the index, creating it (and indexing the existing windows) if it
+ * does not exist yet.
+ *
+ * @return the index
+ */
+protected static synchronized ComponentIndex getInstance() {
+    if (instance == null) {
+        instance = new ComponentIndex();
+        Toolkit.getDefaultToolkit().addAWTEventListener(instance.listener,
+                                                        EVENT_MASK);
+        Window[] windows = Window.getWindows();
+        for (int i = 0; i < windows.length; i++) {
+            instance.add(windows[i]);
+        }
+    }
+    return instance;
+}
+
+/** Looks up a component by its name.
+ *
+ * @param componentName the name of the component
+ * @param scope the windows to search, or null to search all windows
+ * @return the only indexed component that has the name, and is in a window
+ * of the scope; or null if there is no such component, or more than one
+ */
+protected Component find(String componentName, WindowScope scope) {
+    Object[] named;
+    synchronized (this) {
+        List list = (List)(components.get(componentName));
+        if (list == null) {
+            return null;
+        }
+        // Drop the components that have been renamed since they were
+        // indexed, or garbage collected.
+        List live = new ArrayList(list.size());
+        for (int i = list.size() - 1; i >= 0; i--) {
+            Component c = (Component)(((WeakReference)(list.get(i))).get());
+            if (c == null || !componentName.equals(c.getName())) {
+                list.remove(i);
+            }
+            else {
+                live.add(c);
+            }
+        }
+        if (list.isEmpty()) {
+            components.remove(componentName);
+            return null;
+        }
+        named = live.toArray();
+    }
+    // The scope takes the tree lock, so it is asked without holding the lock
+    // of the index.
+    Component theOne = null;
+    for (int i = 0; i < named.length; i++) {
+        if (isSearched((Component)(named[i]), scope)) {
+            if (theOne != null) {
+                // Only a walk of the component trees tells which one comes
+                // first.
+                return null;
+            }
+            theOne = (Component)(named[i]);
+        }
+    }
+    return theOne;
+}
+
+/** Indexes a component, and the components inside it.
+ *
+ * @param c the component
+ */
+protected void add(Component c) {
+    List tree = new ArrayList();
+    List names = new ArrayList();
+    collect(c, tree, names);
+    synchronized (this) {
+        for (int i = 0; i < tree.size(); i++) {
+            List list = (List)(components.get(names.get(i)));
+            if (list == null) {
+                list = new ArrayList(1);
+                components.put(names.get(i), list);
+            }
+            if (indexOf(list, tree.get(i)) < 0) {
+                list.add(new WeakReference(tree.get(i)));
+            }
+        }
+    }
+}
+
+/** Forgets a component, and the components inside it.
+ *
+ * @param c the component
+ */
+protected void remove(Component c) {
+    List tree = new ArrayList();
+    List names = new ArrayList();
+    collect(c, tree, names);
+    synchronized (this) {
+        for (int i = 0; i < tree.size(); i++) {
+            List list = (List)(components.get(names.get(i)));
+            int j = (list == null) ? -1 : indexOf(list, tree.get(i));
+            if (j >= 0) {
+                list.remove(j);
+                if (list.isEmpty()) {
+                    components.remove(names.get(i));
+                }
+            }
+        }
+    }
+}
+
+/** Finds a component in a list of references.
+ *
+ * @param list a List of WeakReferences
+ * @param c the component
+ * @return the index of the reference to c, or -1
+ */
+private static int indexOf(List list, Object c) {
+    for (int i = 0; i < list.size(); i++) {
+        if (((WeakReference)(list.get(i))).get() == c) {
+            return i;
+        }
+    }
+    return -1;
+}
+
+/** Collects the named components of a component tree.  Must not be called
+ * while holding the lock of the index: the listener is called while the AWT
+ * tree lock is held, and getComponents takes that lock too.
+ *
+ * @param c the root of the tree
+ * @param tree receives the components that have a name
+ * @param names receives their names
+ */
+private static void collect(Component c, List tree, List names) {
+    String name = c.getName();
+    if (name != null) {
+        tree.add(c);
+        names.add(name);
+    }
+    if (c instanceof Container) {
+        Component[] children = ((Container)c).getComponents();
+        for (int i = 0; i < children.length; i++) {
+            collect(children[i], tree, names);
+        }
+    }
+}
+
+/** Checks whether a component is in a window that is searched.
+ *
+ * @param c the component
+ * @param scope the windows to search, or null to search all windows
+ * @return 'true' if the top of the component tree of c is a window of the
+ * scope (or any window, if there is no scope)
+ */
+protected boolean isSearched(Component c, WindowScope scope) {
+    Component root = c;
+    while (!(root instanceof Window) && root.getParent() != null) {
+        root = root.getParent();
+    }
+    if (!(root instanceof Window)) {
+        return false;
+    }
+    return scope == null || scope.contains((Window)root);
+}
+
+}
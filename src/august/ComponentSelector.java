@@ -0,0 +1,741 @@
+package august;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Window;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.accessibility.Accessible;
+import javax.accessibility.AccessibleContext;
+
+/** Identifies a GUI component by where it is and what it looks like, for
+ * components that have no name, or whose name is not unique.
+ * <P>
+ * A selector is a list of segments separated by combinators.  Each segment
+ * matches a component; a segment preceded by a space matches a component
+ * inside the component matched by the segment before it, and a segment
+ * preceded by '&gt;' matches a child of that component (the windows owned by a
+ * window count as its children).  A segment is made of, in this order:
+ * <BR>- the class of the component, or '*' (or nothing) for any class.  A
+ * class given with its package must be the class of the component or one of
+ * its superclasses; a class given without must have the simple name of one
+ * of them
+ * <BR>- any number of predicates: <CODE>#name</CODE>, which is short for
+ * <CODE>[name=name]</CODE>; <CODE>[attribute]</CODE>, which matches if the
+ * attribute has a value; and <CODE>[attribute op value]</CODE>, where op is
+ * '=' (equals), '*=' (contains), '^=' (starts with) or '$=' (ends with), and
+ * the value is a word, or is quoted with ' or ".  The attributes are name,
+ * text (getText, or getLabel), title, accessibleName, and any other property
+ * of the component that has a getter
+ * <BR>- an index, <CODE>:nth(n)</CODE>, which keeps only the n-th (counting
+ * from 1) of the components matched by the segment inside each component
+ * matched by the segment before it (or inside all windows, for the first)
+ * <BR>For example, <CODE>JDialog[title='Find'] JPanel &gt; JButton[text=OK]</CODE>
+ * or <CODE>#editor JTextField:nth(2)</CODE>.
+ * <P>
+ * A selector is compiled once, when the test step using it is parsed, into a
+ * list of Segments.  The component trees are then searched one segment at a
+ * time, only under the components matched by the segment before; a segment
+ * whose class is a window is only matched against windows, without walking
+ * their contents; the class of a component is checked before its predicates,
+ * and the predicates are checked from the cheapest to the dearest; and the
+ * search stops at the first component matched by the last segment.
+ * <P>
+ * Selectors are immutable, so the copies of a step share the selector; and
+ * serializable, so that steps using them can be cached.
+ *
+ * @see ObjectFinder#findGUIComponent(ComponentSelector)
+ */
+public class ComponentSelector implements java.io.Serializable {
+
+/** The text of the selector.
+ */
+private String selector;
+
+/** The compiled segments of the selector.
+ */
+private Segment[] segments;
+
+/** Creates a ComponentSelector.
+ *
+ * @param selector the text of the selector
+ * @param segments its compiled segments
+ */
+private ComponentSelector(String selector, Segment[] segments) {
+    this.selector = selector;
+    this.segments = segments;
+}
+
+/** Compiles a selector.
+ *
+ * @param selector the text of the selector
+ * @return the compiled selector
+ * @throws ParsingException if the selector is not well formed
+ */
+public static ComponentSelector compile(String selector)
+throws ParsingException {
+    return new Compiler(selector).compile();
+}
+
+/** Looks for the component identified by this selector.
+ *
+ * @param roots the components at the top of the component trees to search,
+ * usually windows
+ * @return the first component matched by the selector, in depth-first order
+ * of the trees, or null if there is none
+ */
+public Component find(Component[] roots) {
+    List contexts = null;
+    for (int i = 0; i < segments.length; i++) {
+        boolean last = (i == segments.length - 1);
+        List matches = new ArrayList();
+        Map seen = new IdentityHashMap();
+        if (contexts == null) {
+            segments[i].search(roots, true, last, nextIsChild(i), matches,
+                               seen);
+        }
+        else {
+            for (int j = 0; j < contexts.size(); j++) {
+                Component[] children =
+                    getChildren((Component)(contexts.get(j)));
+                segments[i].search(children, !segments[i].child, last,
+                                   nextIsChild(i), matches, seen);
+                if (last && !matches.isEmpty()) {
+                    break;
+                }
+            }
+        }
+        if (matches.isEmpty()) {
+            return null;
+        }
+        contexts = matches;
+    }
+    return (Component)(contexts.get(0));
+}
+
+/** Checks whether a component looks like the component identified by this
+ * selector, without looking at where it is: whether the last segment, apart
+ * from its index, matches it.
+ *
+ * @param c a component
+ * @return 'true' if the component may be the one identified by the selector
+ */
+public boolean mayMatch(Component c) {
+    return segments[segments.length - 1].matches(c);
+}
+
+/** @return the text of the selector
+ */
+public String toString() {
+    return selector;
+}
+
+/** @return 'true' if the segment after segment i only matches children
+ */
+private boolean nextIsChild(int i) {
+    return i + 1 < segments.length && segments[i + 1].child;
+}
+
+/** Returns the children of a component: the components of a container, then
+ * the windows owned by a window.
+ *
+ * @param c the component
+ * @return its children
+ */
+private static Component[] getChildren(Component c) {
+    Component[] components = (c instanceof Container)
+        ? ((Container)c).getComponents() : new Component[0];
+    if (!(c instanceof Window)) {
+        return components;
+    }
+    Window[] owned = ((Window)c).getOwnedWindows();
+    if (owned.length == 0) {
+        return components;
+    }
+    Component[] children = new Component[components.length + owned.length];
+    System.arraycopy(components, 0, children, 0, components.length);
+    System.arraycopy(owned, 0, children, components.length, owned.length);
+    return children;
+}
+
+/** One segment of a selector.
+ */
+private static class Segment implements java.io.Serializable {
+
+    /** 'true' if the segment only matches children of the components matched
+     * by the segment before it.
+     */
+    private boolean child;
+
+    /** The class the component must have, or null for any class.
+     */
+    private String type;
+
+    /** 'true' if the class is known to be a window, so only windows need to
+     * be looked at.
+     */
+    private boolean windowsOnly;
+
+    /** The predicates, cheapest first.
+     */
+    private Predicate[] predicates;
+
+    /** Which of the matching components to keep (counting from 1), or 0 to
+     * keep them all.
+     */
+    private int nth;
+
+    /** Looks for the components matched by this segment among some
+     * components, and (if deep) inside them.
+     *
+     * @param components the components
+     * @param deep 'true' to look inside the components too
+     * @param last 'true' if this is the last segment, so the search can stop
+     * at the first match
+     * @param nextIsChild 'true' if the next segment only matches children
+     * @param matches receives the components matched
+     * @param seen the components already matched (as keys), so that none is
+     * matched twice
+     */
+    private void search(Component[] components, boolean deep, boolean last,
+                           boolean nextIsChild, List matches, Map seen) {
+        int found = 0;
+        List stack = new ArrayList();
+        for (int i = components.length - 1; i >= 0; i--) {
+            stack.add(components[i]);
+        }
+        while (!stack.isEmpty()) {
+            Component c = (Component)(stack.remove(stack.size() - 1));
+            boolean matched = matches(c);
+            if (matched && (nth == 0 || ++found == nth)
+                && seen.put(c, c) == null) {
+                matches.add(c);
+                if (last || nth != 0) {
+                    return;
+                }
+            }
+            // The components inside a match are searched again from it by
+            // the next segment, unless it only looks at children.
+            if (!deep || (matched && nth == 0 && !nextIsChild)) {
+                continue;
+            }
+            Component[] children;
+            if (windowsOnly) {
+                children = (c instanceof Window)
+                    ? ((Window)c).getOwnedWindows() : new Component[0];
+            }
+            else {
+                children = getChildren(c);
+            }
+            for (int i = children.length - 1; i >= 0; i--) {
+                stack.add(children[i]);
+            }
+        }
+    }
+
+    /** Checks whether a component is matched by this segment, without
+     * regard to its index.
+     *
+     * @param c the component
+     * @return 'true' if it has the class and all of the predicates hold
+     */
+    private boolean matches(Component c) {
+        if (windowsOnly && !(c instanceof Window)) {
+            return false;
+        }
+        if (type != null && !isA(c.getClass(), type)) {
+            return false;
+        }
+        for (int i = 0; i < predicates.length; i++) {
+            if (!predicates[i].matches(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Checks whether a class, or one of its superclasses, has a name.  The
+     * classes are compared by name, since the tested application may have
+     * been loaded by a class loader of its own.
+     *
+     * @param cls the class
+     * @param type a class name, with its package or without
+     * @return 'true' if cls or one of its superclasses has that name
+     */
+    private static boolean isA(Class cls, String type) {
+        boolean qualified = type.indexOf('.') >= 0;
+        for (; cls != null; cls = cls.getSuperclass()) {
+            String name = cls.getName();
+            if (!qualified) {
+                name = name.substring(Math.max(name.lastIndexOf('.'),
+                                               name.lastIndexOf('$')) + 1);
+            }
+            if (name.equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+} // Segment
+
+/** A test of one attribute of a component.
+ */
+private static class Predicate implements java.io.Serializable {
+
+    /** The operators, in the order of their codes.
+     */
+    private static final String[] OPERATORS = {"", "=", "*=", "^=", "$="};
+
+    /** The code of the operator that matches any value.
+     */
+    private static final int EXISTS = 0;
+
+    /** The code of '='.
+     */
+    private static final int EQUALS = 1;
+
+    /** The code of '*='.
+     */
+    private static final int CONTAINS = 2;
+
+    /** The code of '^='.
+     */
+    private static final int STARTS_WITH = 3;
+
+    /** The code of '$='.
+     */
+    private static final int ENDS_WITH = 4;
+
+    /** Marks the properties a class does not have a getter for.
+     */
+    private static final Object NO_GETTER = new Object();
+
+    /** Keeps, for each class, a Map of the names of its properties to their
+     * getters (Methods, or NO_GETTER).  The Maps are kept by the classes
+     * themselves, through a ClassValue, rather than in a Map keyed by class:
+     * the Methods refer to their classes, so such keys would never be
+     * dropped, and neither would the class loaders of the tested
+     * application.
+     */
+    private static ClassValue getters = new ClassValue() {
+        protected Object computeValue(Class cls) {
+            return new ConcurrentHashMap();
+        }
+    };
+
+    /** The name of the attribute.
+     */
+    private String attribute;
+
+    /** The code of the operator.
+     */
+    private int operator;
+
+    /** The value the attribute is compared to.
+     */
+    private String value;
+
+    /** Creates a Predicate.
+     *
+     * @param attribute the name of the attribute
+     * @param operator the code of the operator
+     * @param value the value, or null for EXISTS
+     */
+    private Predicate(String attribute, int operator, String value) {
+        this.attribute = attribute;
+        this.operator = operator;
+        this.value = value;
+    }
+
+    /** @return how dear the attribute is to read, from 0 (the name) to 3
+     * (a property read by reflection)
+     */
+    private int getCost() {
+        if (attribute.equals("name")) {
+            return 0;
+        }
+        if (attribute.equals("text") || attribute.equals("title")) {
+            return 1;
+        }
+        if (attribute.equals("accessibleName")) {
+            return 2;
+        }
+        return 3;
+    }
+
+    /** Checks the attribute of a component.
+     *
+     * @param c the component
+     * @return 'true' if the predicate holds
+     */
+    private boolean matches(Component c) {
+        Object actual = getAttribute(c);
+        if (actual == null) {
+            return false;
+        }
+        String s = actual.toString();
+        switch (operator) {
+            case EQUALS:
+                return s.equals(value);
+            case CONTAINS:
+                return s.indexOf(value) >= 0;
+            case STARTS_WITH:
+                return s.startsWith(value);
+            case ENDS_WITH:
+                return s.endsWith(value);
+            default:
+                return true;
+        }
+    }
+
+    /** Reads the attribute of a component.
+     *
+     * @param c the component
+     * @return the value of the attribute, or null if the component does not
+     * have it
+     */
+    private Object getAttribute(Component c) {
+        if (attribute.equals("name")) {
+            return c.getName();
+        }
+        if (attribute.equals("accessibleName")) {
+            AccessibleContext context = (c instanceof Accessible)
+                ? ((Accessible)c).getAccessibleContext() : null;
+            return (context == null) ? null : context.getAccessibleName();
+        }
+        if (attribute.equals("text")) {
+            Method getter = getGetter(c.getClass(), "text");
+            if (getter == null) {
+                getter = getGetter(c.getClass(), "label");
+            }
+            return invoke(getter, c);
+        }
+        return invoke(getGetter(c.getClass(), attribute), c);
+    }
+
+    /** Calls a getter.
+     *
+     * @param getter the getter, or null
+     * @param c the component
+     * @return the value returned, or null if there is no getter or it fails
+     */
+    private static Object invoke(Method getter, Component c) {
+        if (getter == null) {
+            return null;
+        }
+        try {
+            return getter.invoke(c);
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** Finds the getter of a property, remembering it for the next time.
+     *
+     * @param cls the class of the component
+     * @param property the name of the property
+     * @return the public, parameterless getX or isX method, or null
+     */
+    private static Method getGetter(Class cls, String property) {
+        Map properties = (Map)(getters.get(cls));
+        Object getter = properties.get(property);
+        if (getter == null) {
+            String suffix = Character.toUpperCase(property.charAt(0))
+                + property.substring(1);
+            getter = NO_GETTER;
+            try {
+                getter = cls.getMethod("get" + suffix);
+            }
+            catch (NoSuchMethodException e) {
+                try {
+                    getter = cls.getMethod("is" + suffix);
+                }
+                catch (NoSuchMethodException e2) {
+                    // The class does not have the property.
+                }
+            }
+            properties.put(property, getter);
+        }
+        return (getter == NO_GETTER) ? null : (Method)getter;
+    }
+} // Predicate
+
+/** Compiles the text of a selector into Segments.
+ */
+private static class Compiler {
+
+    /** The text of the selector.
+     */
+    private String selector;
+
+    /** The position of the next character to read.
+     */
+    private int pos;
+
+    /** Creates a Compiler.
+     *
+     * @param selector the text of the selector
+     */
+    private Compiler(String selector) {
+        this.selector = selector;
+    }
+
+    /** Compiles the selector.
+     *
+     * @return the compiled selector
+     * @throws ParsingException if the selector is not well formed
+     */
+    private ComponentSelector compile() throws ParsingException {
+        List segments = new ArrayList();
+        skipSpaces();
+        if (pos == selector.length()) {
+            throw error("empty selector");
+        }
+        boolean child = false;
+        while (true) {
+            segments.add(segment(child));
+            int start = pos;
+            skipSpaces();
+            if (pos == selector.length()) {
+                break;
+            }
+            child = selector.charAt(pos) == '>';
+            if (child) {
+                pos++;
+                skipSpaces();
+            }
+            else if (pos == start) {
+                throw error("unexpected '" + selector.charAt(pos) + "'");
+            }
+        }
+        return new ComponentSelector(selector, (Segment[])(segments.toArray(
+            new Segment[segments.size()])));
+    }
+
+    /** Reads a segment.
+     *
+     * @param child 'true' if it was preceded by '&gt;'
+     * @return the segment
+     * @throws ParsingException if the segment is not well formed
+     */
+    private Segment segment(boolean child) throws ParsingException {
+        Segment segment = new Segment();
+        segment.child = child;
+        int start = pos;
+        if (peek() == '*') {
+            pos++;
+        }
+        else {
+            String type = word(".$");
+            if (type.length() > 0) {
+                segment.type = type;
+                segment.windowsOnly = isWindowClass(type);
+            }
+        }
+        List predicates = new ArrayList();
+        while (pos < selector.length()) {
+            char c = selector.charAt(pos);
+            if (c == '#') {
+                pos++;
+                String name = (peek() == '\'' || peek() == '"')
+                    ? quoted() : word("-.$");
+                if (name.length() == 0) {
+                    throw error("name expected");
+                }
+                predicates.add(new Predicate("name", Predicate.EQUALS, name));
+            }
+            else if (c == '[') {
+                pos++;
+                predicates.add(predicate());
+            }
+            else if (c == ':') {
+                pos++;
+                if (!word("").equals("nth") || peek() != '(') {
+                    throw error(":nth(n) expected");
+                }
+                pos++;
+                String n = word("");
+                if (peek() != ')') {
+                    throw error("')' expected");
+                }
+                pos++;
+                try {
+                    segment.nth = Integer.parseInt(n);
+                }
+                catch (NumberFormatException e) {
+                    segment.nth = 0;
+                }
+                if (segment.nth < 1) {
+                    throw error("the index must be a positive number");
+                }
+            }
+            else {
+                break;
+            }
+        }
+        if (pos == start) {
+            throw error(pos == selector.length() ? "segment expected"
+                        : "unexpected '" + selector.charAt(pos) + "'");
+        }
+        // Cheapest first, keeping the order of those that cost the same.
+        segment.predicates = new Predicate[predicates.size()];
+        int k = 0;
+        for (int cost = 0; cost <= 3; cost++) {
+            for (int i = 0; i < predicates.size(); i++) {
+                Predicate p = (Predicate)(predicates.get(i));
+                if (p.getCost() == cost) {
+                    segment.predicates[k++] = p;
+                }
+            }
+        }
+        return segment;
+    }
+
+    /** Reads a predicate, after its '['.
+     *
+     * @return the predicate
+     * @throws ParsingException if the predicate is not well formed
+     */
+    private Predicate predicate() throws ParsingException {
+        skipSpaces();
+        String attribute = word("");
+        if (attribute.length() == 0) {
+            throw error("attribute expected");
+        }
+        skipSpaces();
+        int operator = Predicate.EXISTS;
+        String value = null;
+        if (peek() != ']') {
+            for (int i = Predicate.OPERATORS.length - 1; i > 0; i--) {
+                if (selector.startsWith(Predicate.OPERATORS[i], pos)) {
+                    operator = i;
+                    pos += Predicate.OPERATORS[i].length();
+                    break;
+                }
+            }
+            if (operator == Predicate.EXISTS) {
+                throw error("operator expected");
+            }
+            skipSpaces();
+            if (peek() == '\'' || peek() == '"') {
+                value = quoted();
+            }
+            else {
+                int start = pos;
+                while (pos < selector.length()
+                       && selector.charAt(pos) != ']') {
+                    pos++;
+                }
+                value = selector.substring(start, pos).trim();
+            }
+            skipSpaces();
+        }
+        if (peek() != ']') {
+            throw error("']' expected");
+        }
+        pos++;
+        return new Predicate(attribute, operator, value);
+    }
+
+    /** Reads a quoted value, with \ escaping the next character.
+     *
+     * @return the value, without the quotes
+     * @throws ParsingException if the closing quote is missing
+     */
+    private String quoted() throws ParsingException {
+        char quote = selector.charAt(pos++);
+        StringBuffer value = new StringBuffer();
+        while (pos < selector.length()) {
+            char c = selector.charAt(pos++);
+            if (c == quote) {
+                return value.toString();
+            }
+            if (c == '\\' && pos < selector.length()) {
+                c = selector.charAt(pos++);
+            }
+            value.append(c);
+        }
+        throw error("missing " + quote);
+    }
+
+    /** Reads a word of letters, digits, '_', and some other characters.
+     *
+     * @param others the other characters the word may contain
+     * @return the word, which may be empty
+     */
+    private String word(String others) {
+        int start = pos;
+        while (pos < selector.length()) {
+            char c = selector.charAt(pos);
+            if (!Character.isLetterOrDigit(c) && c != '_'
+                && others.indexOf(c) < 0) {
+                break;
+            }
+            pos++;
+        }
+        return selector.substring(start, pos);
+    }
+
+    /** @return the next character, or 0 at the end of the selector
+     */
+    private char peek() {
+        return (pos < selector.length()) ? selector.charAt(pos) : 0;
+    }
+
+    /** Skips white space.
+     */
+    private void skipSpaces() {
+        while (pos < selector.length()
+               && Character.isWhitespace(selector.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    /** Creates the exception reporting an error at the current position.
+     *
+     * @param message what is wrong
+     * @return the exception
+     */
+    private ParsingException error(String message) {
+        return new ParsingException("Bad selector \"" + selector + "\": "
+            + message + " at position " + pos);
+    }
+
+    /** Checks whether a class name names a window class of AWT or Swing.
+     * Other classes are not loaded, since they may belong to the tested
+     * application.
+     *
+     * @param type the class name
+     * @return 'true' if it names java.awt.Window or one of its subclasses
+     */
+    private static boolean isWindowClass(String type) {
+        String[] names = (type.indexOf('.') >= 0)
+            ? new String[] {type}
+            : new String[] {"java.awt." + type, "javax.swing." + type};
+        for (int i = 0; i < names.length; i++) {
+            if (!names[i].startsWith("java.awt.")
+                && !names[i].startsWith("javax.swing.")) {
+                continue;
+            }
+            try {
+                if (Window.class.isAssignableFrom(Class.forName(names[i]))) {
+                    return true;
+                }
+            }
+            catch (ClassNotFoundException e) {
+                // Not a class of AWT or Swing.
+            }
+            catch (LinkageError e) {
+                // Not a class that can be loaded here.
+            }
+        }
+        return false;
+    }
+} // Compiler
+
+}
@@ -0,0 +1,117 @@
+package august;
+
+import junit.framework.*;
+import java.awt.Component;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+public class ComponentSelectorTest extends TestCase {
+
+public ComponentSelectorTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(ComponentSelectorTest.class);
+}
+
+public void testFindComponent() throws ParsingException {
+
+    // Set up the following (none of the components has a name, except e):
+    //          a                  e
+    //       /     \            /     \
+    //      b       c          f       g
+    //    /   \     |
+    //   d1   d2    h
+    //
+    JPanel a = new JPanel();
+    JPanel b = new JPanel();
+    JButton d1 = new JButton("OK");
+    JButton d2 = new JButton("Cancel");
+    JPanel c = new JPanel();
+    JButton h = new JButton("OK");
+    h.getAccessibleContext().setAccessibleName("confirm");
+    JPanel e = new JPanel();
+    e.setName("e");
+    JTextField f = new JTextField("first");
+    JTextField g = new JTextField("second");
+    g.setEditable(false);
+
+    a.add(b);
+    a.add(c);
+    b.add(d1);
+    b.add(d2);
+    c.add(h);
+    e.add(f);
+    e.add(g);
+
+    Component[] roots = {a, e};
+
+    assertSame(d1, find("JButton", roots));
+    assertSame(d1, find("javax.swing.AbstractButton[text=OK]", roots));
+    assertSame(d2, find("JButton[text='Cancel']", roots));
+    assertSame(d2, find("*[text^=Can]", roots));
+    assertSame(h, find("JButton[accessibleName=confirm]", roots));
+    assertSame(h, find("JButton:nth(3)", roots));
+    assertSame(d1, find("JPanel > JPanel > JButton[text=OK]", roots));
+    assertSame(h, find("JPanel > JPanel:nth(2) > JButton", roots));
+    assertSame(d2, find("JPanel JPanel JButton:nth(2)", roots));
+    assertSame(f, find("#e JTextField", roots));
+    assertSame(f, find("JTextField:nth(1)", roots));
+    assertSame(g, find("JTextField[editable=false]", roots));
+    assertSame(g, find("#e > *[text $= \"ond\"]", roots));
+    assertSame(e, find("JPanel[name]", roots));
+    assertSame(e, find("JPanel:nth(4)", roots));
+
+    assertNull(find("JLabel", roots));
+    assertNull(find("#e JButton", roots));
+    assertNull(find("JPanel > JPanel > JPanel", roots));
+    assertNull(find("JButton:nth(4)", roots));
+    assertNull(find("JTextField[noSuchProperty]", roots));
+    // A window class is only looked for among windows.
+    assertNull(find("JFrame JButton", roots));
+}
+
+public void testBadSelectors() {
+    String[] bad = {"", "  ", "JButton >", "> JButton", "JButton[text=OK",
+                    "JButton[=OK]", "JButton[text~OK]", "JButton:nth(0)",
+                    "JButton:first", "JButton[text='OK]", "#", "JButton,"};
+    for (int i = 0; i < bad.length; i++) {
+        try {
+            ComponentSelector.compile(bad[i]);
+            fail("compiled \"" + bad[i] + "\"");
+        }
+        catch (ParsingException e) {
+            // expected
+        }
+    }
+}
+
+public void testSelectorIsSerializable() throws Exception {
+    ComponentSelector selector = ComponentSelector.compile(
+        "#main JLabel[text*='name']:nth(2)");
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(bytes);
+    out.writeObject(selector);
+    out.close();
+    ComponentSelector copy = (ComponentSelector)(new java.io.ObjectInputStream(
+        new java.io.ByteArrayInputStream(bytes.toByteArray())).readObject());
+
+    JPanel main = new JPanel();
+    main.setName("main");
+    JLabel first = new JLabel("user name");
+    JLabel second = new JLabel("host name");
+    main.add(first);
+    main.add(second);
+    assertEquals(selector.toString(), copy.toString());
+    assertSame(second, copy.find(new Component[] {main}));
+}
+
+private static Component find(String selector, Component[] roots)
+throws ParsingException {
+    return ComponentSelector.compile(selector).find(roots);
+}
+
+}
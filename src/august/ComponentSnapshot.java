@@ -0,0 +1,315 @@
+package august;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.EventQueue;
+import java.awt.Rectangle;
+import java.awt.Window;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/** An immutable copy of the visible part of the component hierarchy of the
+ * tested application, taken on the event dispatch thread.
+ * <P>
+ * Swing components may only be touched on the event dispatch thread, but the
+ * ObjectFinder runs on the thread of the TestEngine; walking the live component
+ * trees from there races with the application changing them (and now and then
+ * fails with an ArrayIndexOutOfBoundsException from a container whose children
+ * changed under the walk).  A snapshot is taken in one round trip to the event
+ * dispatch thread, and after that any number of lookups can run against it,
+ * from any thread, without touching the components.  The round trip is
+ * bounded: if the event dispatch thread is too busy (or hung) to take the
+ * snapshot in time, there is no snapshot, and the ObjectFinder walks the live
+ * component trees as it always did.
+ * <P>
+ * The hierarchy is kept in flat arrays, indexed by the position of each
+ * component in the order in which the ObjectFinder has always searched: depth
+ * first, with the roots, and the children of each component, from the last to
+ * the first, followed by the windows it owns (also from the last to the
+ * first).  For each component the snapshot holds the index of its parent (-1
+ * for a root), its name, the name of its class, and its bounds (relative to
+ * its parent).  Only visible components are taken, since hidden ones cannot be
+ * acted on.
+ * <P>
+ * A snapshot records the generation of the hierarchy it was taken at (see
+ * HierarchyMonitor), so it can tell when it is out of date.  Changes which do
+ * not change the hierarchy, such as a component being renamed, are not seen;
+ * the ObjectFinder falls back to the live component trees when the snapshot
+ * does not have a component.
+ *
+ * @see ObjectFinder#getSnapshot
+ */
+public class ComponentSnapshot {
+
+/** The generation of the hierarchy the snapshot was taken at.
+ */
+private long generation;
+
+/** The components.
+ */
+private Component[] components;
+
+/** The index of the parent of each component, or -1 for the roots.  Windows
+ * have the window that owns them as their parent.
+ */
+private int[] parents;
+
+/** The name of each component (null if it has none).
+ */
+private String[] names;
+
+/** The name of the class of each component.
+ */
+private String[] classNames;
+
+/** The bounds of each component, as four ints (x, y, width, height) per
+ * component.
+ */
+private int[] bounds;
+
+/** Creates a snapshot from the arrays filled in by a Capture.
+ *
+ * @param generation the generation of the hierarchy
+ * @param capture the filled in Capture
+ */
+private ComponentSnapshot(long generation, Capture capture) {
+    int n = capture.size;
+    this.generation = generation;
+    components = new Component[n];
+    System.arraycopy(capture.components, 0, components, 0, n);
+    parents = new int[n];
+    System.arraycopy(capture.parents, 0, parents, 0, n);
+    names = new String[n];
+    System.arraycopy(capture.names, 0, names, 0, n);
+    classNames = new String[n];
+    System.arraycopy(capture.classNames, 0, classNames, 0, n);
+    bounds = new int[4 * n];
+    System.arraycopy(capture.bounds, 0, bounds, 0, 4 * n);
+}
+
+/** Takes a snapshot of the visible components under some roots.  Blocks
+ * until the event dispatch thread has taken it, but no longer than a timeout,
+ * unless called on the event dispatch thread.
+ *
+ * @param roots the components at the top of the component trees, usually
+ * windows
+ * @param generation the generation of the hierarchy, taken before this
+ * method is called, so that a change made while the snapshot is taken makes
+ * it out of date
+ * @param timeout the longest time to wait for the event dispatch thread, in
+ * milliseconds
+ * @return the snapshot, or null if the event dispatch thread did not take it
+ * in time
+ * @throws InterruptedException if interrupted while waiting for the event
+ * dispatch thread
+ */
+protected static ComponentSnapshot capture(final Component[] roots,
+                                           long generation, long timeout)
+throws InterruptedException {
+    final Capture capture = new Capture();
+    final Throwable[] failure = {null};
+    final CountDownLatch taken = new CountDownLatch(1);
+    Runnable walk = new Runnable() {
+        public void run() {
+            try {
+                for (int i = roots.length - 1; i >= 0; i--) {
+                    capture.add(roots[i], -1);
+                }
+            }
+            catch (RuntimeException e) {
+                failure[0] = e;
+            }
+            catch (Error e) {
+                failure[0] = e;
+            }
+            finally {
+                taken.countDown();
+            }
+        }
+    };
+    if (EventQueue.isDispatchThread()) {
+        walk.run();
+    }
+    else {
+        EventQueue.invokeLater(walk);
+        if (!taken.await(timeout, TimeUnit.MILLISECONDS)) {
+            // The walk still runs when the event dispatch thread gets to it,
+            // but nobody looks at the result.
+            return null;
+        }
+    }
+    if (failure[0] instanceof Error) {
+        throw (Error)(failure[0]);
+    }
+    if (failure[0] != null) {
+        throw (RuntimeException)(failure[0]);
+    }
+    return new ComponentSnapshot(generation, capture);
+}
+
+/** @return the generation of the hierarchy the snapshot was taken at
+ */
+public long getGeneration() {
+    return generation;
+}
+
+/** @return the number of components in the snapshot
+ */
+public int size() {
+    return components.length;
+}
+
+/** @return component i
+ */
+public Component getComponent(int i) {
+    return components[i];
+}
+
+/** @return the index of the parent of component i, or -1 if it is a root
+ */
+public int getParent(int i) {
+    return parents[i];
+}
+
+/** @return the name component i had, or null
+ */
+public String getName(int i) {
+    return names[i];
+}
+
+/** @return the name of the class of component i
+ */
+public String getClassName(int i) {
+    return classNames[i];
+}
+
+/** @return the bounds component i had, relative to its parent
+ */
+public Rectangle getBounds(int i) {
+    return new Rectangle(bounds[4 * i], bounds[4 * i + 1],
+                         bounds[4 * i + 2], bounds[4 * i + 3]);
+}
+
+/** Looks for a component by the name it had.
+ *
+ * @param componentName the name
+ * @param from the index to start looking at
+ * @return the index of the first component at or after from that had the
+ * name, or -1
+ */
+public int indexOf(String componentName, int from) {
+    for (int i = Math.max(from, 0); i < names.length; i++) {
+        if (componentName.equals(names[i])) {
+            return i;
+        }
+    }
+    return -1;
+}
+
+/** Looks for a component by the name it had, in the order the ObjectFinder
+ * searches the live component trees.
+ *
+ * @param componentName the name
+ * @return the first component that had the name, or null
+ */
+public Component find(String componentName) {
+    int i = indexOf(componentName, 0);
+    return (i >= 0) ? components[i] : null;
+}
+
+/** Checks whether a component is inside another one.
+ *
+ * @param i the index of a component
+ * @param ancestor the index of another component
+ * @return 'true' if component ancestor is a parent of component i, or a
+ * parent of its parent, and so on
+ */
+public boolean isInside(int i, int ancestor) {
+    for (int p = parents[i]; p >= 0; p = parents[p]) {
+        if (p == ancestor) {
+            return true;
+        }
+    }
+    return false;
+}
+
+/** Walks the component trees on the event dispatch thread, filling in
+ * growing arrays.
+ */
+private static class Capture {
+
+    /** The number of components taken so far.
+     */
+    private int size;
+
+    /** The components taken so far, followed by room for more; and
+     * likewise their parents, names, class names and bounds.
+     */
+    private Component[] components = new Component[64];
+
+    private int[] parents = new int[64];
+
+    private String[] names = new String[64];
+
+    private String[] classNames = new String[64];
+
+    private int[] bounds = new int[4 * 64];
+
+    /** Takes a component, and the visible components under it.
+     *
+     * @param c the component
+     * @param parent the index of its parent, or -1
+     */
+    private void add(Component c, int parent) {
+        if (!c.isVisible()) {
+            return;
+        }
+        if (size == components.length) {
+            grow();
+        }
+        int i = size++;
+        components[i] = c;
+        parents[i] = parent;
+        names[i] = c.getName();
+        classNames[i] = c.getClass().getName();
+        bounds[4 * i] = c.getX();
+        bounds[4 * i + 1] = c.getY();
+        bounds[4 * i + 2] = c.getWidth();
+        bounds[4 * i + 3] = c.getHeight();
+        if (c instanceof Container) {
+            Component[] children = ((Container)c).getComponents();
+            for (int j = children.length - 1; j >= 0; j--) {
+                add(children[j], i);
+            }
+        }
+        if (c instanceof Window) {
+            Window[] owned = ((Window)c).getOwnedWindows();
+            for (int j = owned.length - 1; j >= 0; j--) {
+                add(owned[j], i);
+            }
+        }
+    }
+
+    /** Doubles the size of the arrays.
+     */
+    private void grow() {
+        int n = 2 * components.length;
+        Component[] newComponents = new Component[n];
+        System.arraycopy(components, 0, newComponents, 0, size);
+        components = newComponents;
+        int[] newParents = new int[n];
+        System.arraycopy(parents, 0, newParents, 0, size);
+        parents = newParents;
+        String[] newNames = new String[n];
+        System.arraycopy(names, 0, newNames, 0, size);
+        names = newNames;
+        String[] newClassNames = new String[n];
+        System.arraycopy(classNames, 0, newClassNames, 0, size);
+        classNames = newClassNames;
+        int[] newBounds = new int[4 * n];
+        System.arraycopy(bounds, 0, newBounds, 0, 4 * size);
+        bounds = newBounds;
+    }
+} // Capture
+
+}
@@ -0,0 +1,116 @@
+package august;
+
+import junit.framework.*;
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.Rectangle;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import java.util.concurrent.CountDownLatch;
+
+public class ComponentSnapshotTest extends TestCase {
+
+public ComponentSnapshotTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(ComponentSnapshotTest.class);
+}
+
+public void testCapture() throws InterruptedException {
+
+    // Set up the following (where hidden is not visible):
+    //      a           e
+    //   /  |  \
+    //  b   c   hidden
+    //      |     |
+    //      d     f
+    //
+    JPanel a = new JPanel(null);
+    a.setName("a");
+    JButton b = new JButton();
+    b.setName("b");
+    b.setBounds(1, 2, 30, 40);
+    JPanel c = new JPanel();
+    c.setName("c");
+    JLabel d = new JLabel();
+    d.setName("d");
+    JPanel hidden = new JPanel();
+    hidden.setName("hidden");
+    hidden.setVisible(false);
+    JLabel f = new JLabel();
+    f.setName("f");
+    JPanel e = new JPanel();
+    e.setName("e");
+
+    a.add(b);
+    a.add(c);
+    a.add(hidden);
+    c.add(d);
+    hidden.add(f);
+
+    ComponentSnapshot snapshot =
+        ComponentSnapshot.capture(new Component[] {a, e}, 7, 5000);
+    assertEquals(7, snapshot.getGeneration());
+
+    // The order in which the ObjectFinder searches: last first.
+    String[] names = {"e", "a", "c", "d", "b"};
+    assertEquals(names.length, snapshot.size());
+    for (int i = 0; i < names.length; i++) {
+        assertEquals(names[i], snapshot.getName(i));
+    }
+    assertEquals(-1, snapshot.getParent(0));
+    assertEquals(-1, snapshot.getParent(1));
+    assertEquals(1, snapshot.getParent(2));
+    assertEquals(2, snapshot.getParent(3));
+    assertEquals(1, snapshot.getParent(4));
+    assertTrue(snapshot.isInside(3, 1));
+    assertFalse(snapshot.isInside(3, 4));
+    assertEquals("javax.swing.JLabel", snapshot.getClassName(3));
+    assertEquals(new Rectangle(1, 2, 30, 40), snapshot.getBounds(4));
+
+    assertSame(d, snapshot.find("d"));
+    assertSame(b, snapshot.getComponent(snapshot.indexOf("b", 0)));
+    assertNull(snapshot.find("hidden"));
+    assertNull(snapshot.find("f"));
+    assertEquals(-1, snapshot.indexOf("d", 4));
+
+    // The snapshot does not change with the components.
+    c.remove(d);
+    assertSame(d, snapshot.find("d"));
+}
+
+public void testBusyEventDispatchThread() throws InterruptedException {
+    final CountDownLatch release = new CountDownLatch(1);
+    EventQueue.invokeLater(new Runnable() {
+        public void run() {
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+            }
+        }
+    });
+    try {
+        long start = System.currentTimeMillis();
+        assertNull(ComponentSnapshot.capture(new Component[] {new JPanel()},
+                                             0, 200));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+    finally {
+        release.countDown();
+    }
+}
+
+public void testSnapshotIsTakenAgainAfterChange() throws InterruptedException {
+    ComponentSnapshot first = ObjectFinder.getSnapshot();
+    assertSame(first, ObjectFinder.getSnapshot());
+    new JPanel().add(new JButton());
+    ComponentSnapshot second = ObjectFinder.getSnapshot();
+    assertNotSame(first, second);
+    assertTrue(second.getGeneration() > first.getGeneration());
+}
+
+}
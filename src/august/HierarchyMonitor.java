@@ -0,0 +1,90 @@
+package august;
+
+import java.awt.AWTEvent;
+import java.awt.Toolkit;
+import java.awt.event.AWTEventListener;
+
+/** Counts the changes to the component hierarchy of the tested application,
+ * so that threads can wait for the next change instead of polling.
+ * <P>
+ * An AWTEventListener increases the generation of the hierarchy whenever a
+ * component is added, removed, shown, hidden, moved or resized, or a window is
+ * opened, closed, iconified or deiconified, and wakes up the threads waiting
+ * in awaitChange.  A thread takes the generation before it looks at the
+ * hierarchy, and if what it looks for is not there yet, waits for the
+ * generation to change; so no change made in between can be missed.
+ * <P>
+ * The listener is called while the AWT tree lock is held, so it only takes the
+ * lock of the monitor, and the threads waiting do not take the tree lock while
+ * holding that lock.
+ *
+ * @see ObjectFinder#waitForComponent
+ */
+class HierarchyMonitor {
+
+/** The events that change the hierarchy.
+ */
+private static final long EVENT_MASK = AWTEvent.HIERARCHY_EVENT_MASK
+    | AWTEvent.CONTAINER_EVENT_MASK | AWTEvent.COMPONENT_EVENT_MASK
+    | AWTEvent.WINDOW_EVENT_MASK;
+
+/** The monitor, created when it is first needed.
+ */
+private static HierarchyMonitor instance;
+
+/** The number of changes seen so far.
+ */
+private long generation;
+
+/** Counts the changes.
+ */
+private AWTEventListener listener = new AWTEventListener() {
+    public void eventDispatched(AWTEvent e) {
+        synchronized (HierarchyMonitor.this) {
+            generation++;
+            HierarchyMonitor.this.notifyAll();
+        }
+    }
+};
+
+/** Returns the monitor, creating it if it does not exist yet.
+ *
+ * @return the monitor
+ */
+protected static synchronized HierarchyMonitor getInstance() {
+    if (instance == null) {
+        instance = new HierarchyMonitor();
+        Toolkit.getDefaultToolkit().addAWTEventListener(instance.listener,
+                                                        EVENT_MASK);
+    }
+    return instance;
+}
+
+/** Returns the generation of the hierarchy.
+ *
+ * @return the number of changes seen so far
+ */
+protected synchronized long getGeneration() {
+    return generation;
+}
+
+/** Waits until the hierarchy changes after a generation, but no longer than
+ * a timeout.
+ *
+ * @param seen the generation already seen
+ * @param timeout the longest time to wait, in milliseconds
+ * @return the generation of the hierarchy when the wait ends
+ * @throws InterruptedException if the waiting thread is interrupted
+ */
+protected synchronized long awaitChange(long seen, long timeout)
+throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeout;
+    long remaining = timeout;
+    while (generation == seen && remaining > 0) {
+        wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+    }
+    return generation;
+}
+
+}
@@ -0,0 +1,53 @@
+package august;
+
+import junit.framework.*;
+import javax.swing.JButton;
+import javax.swing.JPanel;
+
+public class HierarchyMonitorTest extends TestCase {
+
+public HierarchyMonitorTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(HierarchyMonitorTest.class);
+}
+
+public void testChangeWakesWaiter() throws Exception {
+    HierarchyMonitor monitor = HierarchyMonitor.getInstance();
+    final JPanel panel = new JPanel();
+    long generation = monitor.getGeneration();
+    Thread adder = new Thread() {
+        public void run() {
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            panel.add(new JButton());
+        }
+    };
+    long start = System.currentTimeMillis();
+    adder.start();
+    assertTrue(monitor.awaitChange(generation, 10000) > generation);
+    assertTrue(System.currentTimeMillis() - start < 5000);
+    adder.join();
+}
+
+public void testWaitEndsAtTimeout() throws Exception {
+    HierarchyMonitor monitor = HierarchyMonitor.getInstance();
+    long generation = monitor.getGeneration();
+    long start = System.currentTimeMillis();
+    assertEquals(generation, monitor.awaitChange(generation, 200));
+    assertTrue(System.currentTimeMillis() - start >= 200);
+
+    // A change made before the wait is not missed.
+    new JPanel().add(new JButton());
+    start = System.currentTimeMillis();
+    assertTrue(monitor.awaitChange(generation, 10000) > generation);
+    assertTrue(System.currentTimeMillis() - start < 5000);
+}
+
+}
@@ -0,0 +1,115 @@
+package august;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/** Loads the classes of one instance of the tested application, so that
+ * several instances can run in one JVM without sharing static state.
+ * <P>
+ * Unlike an ordinary class loader, an IsolatingClassLoader looks for a class
+ * on its own class path before asking its parent.  The only classes it always
+ * leaves to its parent are those of the Java platform and of the August
+ * framework itself (with the exception of the TestableApplication
+ * implementation, which belongs to the tested application), so all instances
+ * share one copy of the framework, and one copy of its compiled code.
+ *
+ * @see TestEngine.AugustProperties#INSTANCES
+ */
+class IsolatingClassLoader extends URLClassLoader {
+
+/** Classes in these packages are always loaded by the parent.
+ */
+private static final String[] SHARED_PACKAGES = {
+    "java.", "javax.", "sun.", "com.sun.", "jdk.", "org.w3c.", "org.xml.",
+    "org.apache.xerces.", "august."
+};
+
+/** The name of the TestableApplication implementation, which is loaded by
+ * this loader even if it is in a shared package.
+ */
+private String applicationClassName;
+
+/** Creates an IsolatingClassLoader.
+ *
+ * @param classPath the class path of the tested application, in the format of
+ * the java.class.path system property
+ * @param applicationClassName the name of the TestableApplication
+ * implementation
+ * @param parent the loader of the August framework
+ * @throws MalformedURLException if an element of the class path cannot be
+ * turned into a URL
+ */
+protected IsolatingClassLoader(String classPath, String applicationClassName,
+                               ClassLoader parent) throws MalformedURLException {
+    super(toURLs(classPath), parent);
+    this.applicationClassName = applicationClassName;
+}
+
+/** Loads a class, looking on this loader's own class path first, unless the
+ * class is shared.
+ *
+ * @param name the name of the class
+ * @param resolve 'true' if the class should be resolved
+ * @return the class
+ * @throws ClassNotFoundException if the class cannot be found
+ */
+protected Class loadClass(String name, boolean resolve)
+throws ClassNotFoundException {
+    if (isShared(name)) {
+        return super.loadClass(name, resolve);
+    }
+    synchronized (getClassLoadingLock(name)) {
+        Class c = findLoadedClass(name);
+        if (c == null) {
+            try {
+                c = findClass(name);
+            }
+            catch (ClassNotFoundException e) {
+                c = getParent().loadClass(name);
+            }
+        }
+        if (resolve) {
+            resolveClass(c);
+        }
+        return c;
+    }
+}
+
+/** Checks whether a class must be loaded by the parent.
+ *
+ * @param name the name of the class
+ * @return 'true' if the class is shared by all instances
+ */
+private boolean isShared(String name) {
+    if (name.equals(applicationClassName)) {
+        return false;
+    }
+    for (int i = 0; i < SHARED_PACKAGES.length; i++) {
+        if (name.startsWith(SHARED_PACKAGES[i])) {
+            return true;
+        }
+    }
+    return false;
+}
+
+/** Turns a class path into URLs.
+ *
+ * @param classPath elements separated by the platform's path separator
+ * @return one URL per element
+ * @throws MalformedURLException if an element cannot be turned into a URL
+ */
+private static URL[] toURLs(String classPath) throws MalformedURLException {
+    List urls = new ArrayList();
+    StringTokenizer st = new StringTokenizer(classPath, File.pathSeparator);
+    while (st.hasMoreTokens()) {
+        urls.add(new File(st.nextToken()).toURI().toURL());
+    }
+    return (URL[])(urls.toArray(new URL[urls.size()]));
+}
+
+}
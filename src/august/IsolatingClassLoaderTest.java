@@ -0,0 +1,39 @@
+package august;
+
+import junit.framework.*;
+
+public class IsolatingClassLoaderTest extends TestCase {
+
+private static final String APPLICATION = "august.test.ProfilerTestableImpl";
+
+public IsolatingClassLoaderTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(IsolatingClassLoaderTest.class);
+}
+
+public void testApplicationClassIsIsolated() throws Exception {
+    String classPath = System.getProperty("java.class.path");
+    ClassLoader parent = getClass().getClassLoader();
+    ClassLoader first = new IsolatingClassLoader(classPath, APPLICATION, parent);
+    ClassLoader second = new IsolatingClassLoader(classPath, APPLICATION, parent);
+
+    Class a = first.loadClass(APPLICATION);
+    Class b = second.loadClass(APPLICATION);
+    assertNotSame(a, b);
+    assertSame(first, a.getClassLoader());
+    assertSame(a, first.loadClass(APPLICATION));
+}
+
+public void testFrameworkClassesAreShared() throws Exception {
+    ClassLoader loader = new IsolatingClassLoader(
+        System.getProperty("java.class.path"), APPLICATION,
+        getClass().getClassLoader());
+    assertSame(TestableApplication.class,
+               loader.loadClass("august.TestableApplication"));
+    assertSame(String.class, loader.loadClass("java.lang.String"));
+}
+
+}
@@ -4,12 +4,12 @@ import java.awt.Component;
 import java.awt.Container;
 import java.awt.Frame;
 import java.awt.Window;
-import javax.swing.JDialog;
 import javax.swing.JTree;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreeModel;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 /** This is a utility used for finding objects in the application tested by the
  * August system.
@@ -24,17 +24,83 @@ import java.util.List;
  */
 public class ObjectFinder {
 
-/** Maintains reference to windows that are currently iconified
+/** The window scope of each thread that has one.
  */
-private static List iconifiedWindows = new ArrayList();
+private static ThreadLocal scope = new ThreadLocal();
+
+/** The number of milliseconds steps wait for the component they look for to
+ * appear, or 0 if they do not wait.
+ */
+private static long componentWait;
+
+/** The longest time a lookup waits for the event dispatch thread to take a
+ * snapshot of the component hierarchy, in milliseconds.
+ */
+protected static final long SNAPSHOT_TIMEOUT = 500;
+
+/** The latest snapshot of the windows searched by each scope (null for the
+ * threads without one).
+ */
+private static Map snapshots = new HashMap();
+
+/** Restricts the searches made by the current thread to the windows of one
+ * instance of the tested application.  Used when several instances run in the
+ * same JVM.
+ *
+ * @param windowScope the windows to search, or null to search all windows
+ */
+protected static void setScope(WindowScope windowScope) {
+    scope.set(windowScope);
+}
+
+/** Returns the window scope of the current thread.
+ *
+ * @return the windows searched by the current thread, or null if it searches
+ * all windows
+ */
+protected static WindowScope getScope() {
+    return (WindowScope)(scope.get());
+}
+
+/** Returns the top-level windows searched by the current thread.
+ *
+ * @return the windows of the scope of the current thread, or all top-level
+ * windows in the WindowRegistry if it does not have one
+ */
+protected static Window[] getRootWindows() {
+    WindowScope windowScope = getScope();
+    return (windowScope != null) ? windowScope.getWindows()
+        : WindowRegistry.getInstance().getTopLevelWindows();
+}
+
+/** Sets the number of milliseconds steps wait for the component they look
+ * for to appear.
+ *
+ * @param wait the number of milliseconds, or 0 if steps should not wait
+ * @see TestEngine.AugustProperties#COMPONENT_WAIT
+ */
+protected static void setComponentWait(long wait) {
+    componentWait = wait;
+}
+
+/** Returns the number of milliseconds steps wait for the component they look
+ * for to appear (see waitForComponent).
+ *
+ * @return the number of milliseconds, or 0 if steps should not wait
+ */
+public static long getComponentWait() {
+    return componentWait;
+}
 
 /** Should be called (probably from a window wrapper)
- * whenever a window is iconified.
+ * whenever a window is iconified.  The WindowRegistry notices internal frames
+ * being iconified by itself, so this is only needed for other windows that
+ * leave the component tree when iconified.
  *
  *  @param window a window that just became iconified
  */
 public static void addIconifiedWindow(Component window) {
-    iconifiedWindows.add(window);
+    WindowRegistry.getInstance().addIconified(window);
 }
 
 /** Should be called (probably form a window wrapper)
@@ -43,7 +109,7 @@ public static void addIconifiedWindow(Component window) {
  *  @param window a window that just became deiconified
  */
 public static void removeIconifiedWindow(Component window) {
-    iconifiedWindows.remove(window);
+    WindowRegistry.getInstance().removeIconified(window);
 }
 
 /** Looks for all components of a given class contained in a given container.
@@ -66,8 +132,13 @@ public static ArrayList findGUIComponents(Container cont, Class compClass) {
 }
 
  /** Looks for a component whose name matches the parameter componentName in
-  * all existing windows (Frame objects) which were instantiated by the same
-  * JVM. Stops looking if it finds a match.
+  * all open windows (see WindowRegistry) of the tested application.
+  * Stops looking if it finds a match.  If the current thread has a window
+  * scope, only the windows of that scope are searched.
+  * <P>
+  * The component is looked up in the ComponentIndex first; the component trees
+  * are only walked if the index does not know a single component with that
+  * name, and the component found by the walk is then added to the index.
   *
   * @param componentName name of the GUI component to look for
   * @return the first Component object whose name matches the parameter
@@ -75,25 +146,194 @@ public static ArrayList findGUIComponents(Container cont, Class compClass) {
   * existing containers of type Frame, or null if such component is not found
   */
 public static Component findGUIComponent(String componentName) {
-    Component theOne = null;
+    ComponentIndex index = ComponentIndex.getInstance();
+    Component theOne = index.find(componentName, getScope());
+    if (theOne == null) {
+        theOne = walk(componentName);
+        if (theOne != null) {
+            index.add(theOne);
+        }
+    }
+    return theOne;
+}
 
-    // First, search the component trees under all the active frames.
-    theOne = find(componentName, Frame.getFrames());
+/** Looks for the component identified by a selector in the windows searched
+ * by the current thread (see getRootWindows), and the iconified windows.
+ *
+ * @param selector the compiled selector
+ * @return the first component matched by the selector, or null if such
+ * component is not found
+ */
+public static Component findGUIComponent(ComponentSelector selector) {
+    return selector.find(getSearchRoots());
+}
 
-    // If the component was not found, look in dialogs that are not owned by
-    // any of the frames.
-    if (theOne == null) {
-        Component[] defaultDialogOwner = {(new JDialog()).getOwner()};
-        theOne = find(componentName, defaultDialogOwner);
+/** Returns a snapshot of the visible components of the windows searched by
+ * the current thread (see getRootWindows), and the iconified windows.  The
+ * snapshot is taken again only if the component hierarchy has changed since
+ * the last one was taken.
+ *
+ * @return the snapshot, or null if the event dispatch thread did not take it
+ * within <CODE>SNAPSHOT_TIMEOUT</CODE> milliseconds
+ * @throws InterruptedException if interrupted while waiting for the event
+ * dispatch thread to take the snapshot
+ */
+public static ComponentSnapshot getSnapshot() throws InterruptedException {
+    WindowScope windowScope = getScope();
+    long generation = HierarchyMonitor.getInstance().getGeneration();
+    synchronized (snapshots) {
+        ComponentSnapshot snapshot =
+            (ComponentSnapshot)(snapshots.get(windowScope));
+        if (snapshot != null && snapshot.getGeneration() == generation) {
+            return snapshot;
+        }
+    }
+    // The lock is not held while the event dispatch thread takes the
+    // snapshot, which may take a while.
+    ComponentSnapshot snapshot = ComponentSnapshot.capture(getSearchRoots(),
+        generation, SNAPSHOT_TIMEOUT);
+    if (snapshot == null) {
+        return null;
     }
+    synchronized (snapshots) {
+        ComponentSnapshot latest =
+            (ComponentSnapshot)(snapshots.get(windowScope));
+        if (latest == null || latest.getGeneration() < generation) {
+            snapshots.put(windowScope, snapshot);
+        }
+    }
+    return snapshot;
+}
 
-    // If the component still was not found, look in iconified windows.
-    if (theOne == null) {
-        Component[] iconified = new Component[iconifiedWindows.size()];
-        for (int i = 0; i < iconified.length; i++) {
-            iconified[i] = (Component)(iconifiedWindows.get(i));
+/** Forgets the snapshot of a scope that has been closed.
+ *
+ * @param windowScope the scope
+ */
+protected static void forgetSnapshot(WindowScope windowScope) {
+    synchronized (snapshots) {
+        snapshots.remove(windowScope);
+    }
+}
+
+/** Returns the components at the top of the trees searched by the current
+ * thread: the windows of getRootWindows, followed by the iconified windows.
+ *
+ * @return the components
+ */
+private static Component[] getSearchRoots() {
+    Window[] windows = getRootWindows();
+    Component[] iconified = WindowRegistry.getInstance().getIconified();
+    Component[] roots = new Component[windows.length + iconified.length];
+    System.arraycopy(windows, 0, roots, 0, windows.length);
+    System.arraycopy(iconified, 0, roots, windows.length, iconified.length);
+    return roots;
+}
+
+/** Waits until a component with the given name is showing, but no longer
+ * than a timeout.  The caller is only woken up to look for the component
+ * again when the component hierarchy changes (see HierarchyMonitor).
+ *
+ * @param componentName name of the GUI component to look for
+ * @param timeout the longest time to wait, in milliseconds; if it is 0, the
+ * component is looked for once, as by findGUIComponent
+ * @return the component, once it is showing; or, if the timeout passes first,
+ * the component as found then (it may not be showing), or null
+ * @throws InterruptedException if the calling thread is interrupted
+ */
+public static Component waitForComponent(String componentName, long timeout)
+throws InterruptedException {
+    return waitFor(componentName, null, timeout);
+}
+
+/** Waits until the component identified by a selector is showing, but no
+ * longer than a timeout.  The caller is only woken up to look for the
+ * component again when the component hierarchy changes (see
+ * HierarchyMonitor).
+ *
+ * @param selector the compiled selector
+ * @param timeout the longest time to wait, in milliseconds; if it is 0, the
+ * component is looked for once, as by findGUIComponent
+ * @return the component, once it is showing; or, if the timeout passes first,
+ * the component as found then (it may not be showing), or null
+ * @throws InterruptedException if the calling thread is interrupted
+ */
+public static Component waitForComponent(ComponentSelector selector,
+                                         long timeout)
+throws InterruptedException {
+    return waitFor(null, selector, timeout);
+}
+
+/** Waits until a component is showing, but no longer than a timeout.
+ *
+ * @param componentName name of the GUI component to look for, if selector
+ * is null
+ * @param selector the selector of the component, or null
+ * @param timeout the longest time to wait, in milliseconds
+ * @return the component, or null
+ * @throws InterruptedException if the calling thread is interrupted
+ */
+private static Component waitFor(String componentName,
+                                 ComponentSelector selector, long timeout)
+throws InterruptedException {
+    HierarchyMonitor monitor = (timeout > 0)
+        ? HierarchyMonitor.getInstance() : null;
+    long deadline = System.currentTimeMillis() + timeout;
+    while (true) {
+        // Take the generation first, so that a change made while looking is
+        // not missed.
+        long generation = (monitor != null) ? monitor.getGeneration() : 0;
+        Component c = (selector != null) ? findGUIComponent(selector)
+            : findGUIComponent(componentName);
+        long remaining = deadline - System.currentTimeMillis();
+        if ((c != null && c.isShowing()) || remaining <= 0) {
+            return c;
+        }
+        monitor.awaitChange(generation, remaining);
+    }
+}
+
+/** Looks for a component by its name the slow way, by walking the component
+ * trees of all of the windows searched by the current thread.
+ * <P>
+ * The visible components are looked up in a snapshot of the trees (see
+ * getSnapshot), which is consistent, and costs nothing until the hierarchy
+ * changes; the live trees are only walked for components that are hidden,
+ * or have been renamed since the snapshot was taken, or when the event
+ * dispatch thread is too busy to take a snapshot.
+ *
+ * @param componentName name of the GUI component to look for
+ * @return the component, or null if it is not found
+ */
+private static Component walk(String componentName) {
+    Component theOne = null;
+    try {
+        ComponentSnapshot snapshot = getSnapshot();
+        // Without a snapshot, the live trees are walked below.
+        int i = (snapshot != null) ? snapshot.indexOf(componentName, 0) : -1;
+        // The component may have been renamed since.
+        while (i >= 0 && theOne == null) {
+            if (componentName.equals(snapshot.getComponent(i).getName())) {
+                theOne = snapshot.getComponent(i);
+            }
+            i = snapshot.indexOf(componentName, i + 1);
+        }
+        if (theOne != null) {
+            return theOne;
         }
-        theOne = find(componentName, iconified);
+    }
+    catch (InterruptedException e) {
+        // Let whoever interrupted this thread know, and walk the live trees.
+        Thread.currentThread().interrupt();
+    }
+
+    // First, search the component trees under all the top-level windows,
+    // including the dialogs that are not owned by any frame.
+    theOne = find(componentName, getRootWindows());
+
+    // If the component was not found, look in iconified windows.
+    if (theOne == null) {
+        theOne = find(componentName,
+                      WindowRegistry.getInstance().getIconified());
     }
 
     return theOne;
@@ -170,8 +410,7 @@ public static Component findInFrames(String componentTitle, Frame[] frames){
 
 
 public static JTree findTree(String userObjectString){
-    Frame[] frames = Frame.getFrames();
-    return findTree(userObjectString, frames);
+    return findTree(userObjectString, getRootWindows());
 }
 
 protected static JTree findTree(String userObjectString, Component[] components){
@@ -2,6 +2,9 @@ package august;
 
 import junit.framework.*;
 import java.awt.*;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
 
 public class ObjectFinderTest extends TestCase {
     
@@ -68,5 +71,104 @@ public void testFindComponent() {
     result = ObjectFinder.find("z", components);
     assertNull(result);
 }
+
+// The waiting tests search no windows, so they need no display.
+
+public void testWaitForMissingComponent() throws InterruptedException {
+    long start = System.currentTimeMillis();
+    assertNull(ObjectFinder.waitForComponent("nowhere", 300));
+    assertTrue(System.currentTimeMillis() - start >= 300);
+}
+
+public void testHierarchyChangeDoesNotEndWait() throws Exception {
+    ComponentSelector selector = ComponentSelector.compile("#nowhere");
+    final JPanel panel = new JPanel();
+    Thread adder = new Thread() {
+        public void run() {
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            panel.add(new JButton());
+        }
+    };
+    long start = System.currentTimeMillis();
+    adder.start();
+    // The change wakes the waiter, which looks again and keeps waiting.
+    assertNull(ObjectFinder.waitForComponent(selector, 400));
+    assertTrue(System.currentTimeMillis() - start >= 400);
+    adder.join();
+
+    start = System.currentTimeMillis();
+    assertNull(ObjectFinder.waitForComponent(selector, 0));
+    assertTrue(System.currentTimeMillis() - start < 5000);
+}
+
+public void testComponentIndex() {
+    // An index that is not fed by AWT events, and takes every component to
+    // be in a searched window; so no window (and no display) is needed.
+    ComponentIndex index = new ComponentIndex() {
+        protected boolean isSearched(Component c, WindowScope scope) {
+            return true;
+        }
+    };
+    JPanel panel = new JPanel();
+    Component button = new JButton();
+    button.setName("indexed");
+    panel.add(button);
+    index.add(panel);
+    assertSame(button, index.find("indexed", null));
+
+    // A renamed component is dropped, and found under its new name once it
+    // has been indexed again.
+    button.setName("renamed");
+    assertNull(index.find("indexed", null));
+    assertNull(index.find("renamed", null));
+    index.add(button);
+    assertSame(button, index.find("renamed", null));
+
+    // A name shared by two components does not tell which one is meant.
+    Component twin = new JLabel();
+    twin.setName("renamed");
+    index.add(twin);
+    assertNull(index.find("renamed", null));
+
+    index.remove(panel);
+    assertSame(twin, index.find("renamed", null));
+    index.remove(twin);
+    assertNull(index.find("renamed", null));
+}
+
+/** Needs a display: the components have to be in a window.
+ */
+public void testComponentIndexInWindow() {
+    ComponentIndex index = ComponentIndex.getInstance();
+    Frame frame = new Frame();
+    Panel panel = new Panel();
+    Component button = new Button();
+    button.setName("indexed");
+    panel.add(button);
+    frame.add(panel);
+    // The frame is never opened, so it has to be registered by hand.
+    WindowRegistry.getInstance().add(frame);
+    try {
+        assertSame(button, index.find("indexed", null));
+
+        // A renamed component is found by walking, and indexed again.
+        button.setName("renamed");
+        assertNull(index.find("indexed", null));
+        assertSame(button, ObjectFinder.findGUIComponent("renamed"));
+        assertSame(button, index.find("renamed", null));
+
+        frame.remove(panel);
+        assertNull(index.find("renamed", null));
+    }
+    finally {
+        WindowRegistry.getInstance().remove(frame);
+        frame.dispose();
+    }
+}
     
 }
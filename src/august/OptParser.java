@@ -1,26 +1,200 @@
 package august;
 
+import java.util.HashSet;
+import java.util.Set;
+
+/** Parses command line options, one at a time, in the manner of getopt.
+ * <P>
+ * An option is given by its short name, as in <CODE>-j 4</CODE> or
+ * <CODE>-j4</CODE>, or by its long name, as in <CODE>--jobs 4</CODE> or
+ * <CODE>--jobs=4</CODE>.  Short options without arguments may be grouped, as
+ * in <CODE>-rf</CODE>.  The argument <CODE>--</CODE> ends the options.  Since
+ * the TestEngine takes no other arguments, any argument which is not an
+ * option, or the argument of one, is an error.
+ * <P>
+ * Errors are reported by throwing an IllegalArgumentException, whose message
+ * is meant for the user.
+ *
+ * @see Option
+ */
 public class OptParser {
 
-	public static final int FINISHED_PARSING = 0;
+/** Returned by getOption when there are no more options.
+ */
+public static final int FINISHED_PARSING = 0;
+
+/** The options that may be given.
+ */
+private Option[] options;
+
+/** The command line arguments.
+ */
+private String[] args = new String[0];
+
+/** The index of the next argument to look at.
+ */
+private int next;
+
+/** The short options still to be returned from the current group of short
+ * options (the argument without its dash), or null.
+ */
+private String group;
 
-	public OptParser(Option[] opt) {
-		// TODO Auto-generated constructor stub
-	}
+/** The argument of the option last returned by getOption, or null.
+ */
+private String optionArg;
 
-	public void setArgs(String[] args) {
-		// TODO Auto-generated method stub
-		
-	}
+/** The options that have been given so far.
+ */
+private Set given = new HashSet();
 
-	public int getOption() {
-		// TODO Auto-generated method stub
-		return 0;
-	}
+/** Creates a parser.
+ *
+ * @param options the options that may be given
+ */
+public OptParser(Option[] options) {
+    this.options = options;
+}
+
+/** Sets the command line arguments to parse, and starts parsing them from the
+ * first one.
+ *
+ * @param args the command line arguments
+ * @throws IllegalArgumentException if there are no arguments
+ */
+public void setArgs(String[] args) {
+    if (args == null || args.length == 0) {
+        throw new IllegalArgumentException("No arguments");
+    }
+    this.args = args;
+    next = 0;
+    group = null;
+    optionArg = null;
+    given.clear();
+}
+
+/** Parses the next option.
+ *
+ * @return the short name of the option, or FINISHED_PARSING if there are no
+ * more options
+ * @throws IllegalArgumentException if an option is unknown, is missing its
+ * argument or has an argument it does not take, if an argument is not an
+ * option, or if a mandatory option was not given
+ */
+public int getOption() {
+    optionArg = null;
+    if (group != null) {
+        return shortOption();
+    }
+    if (next >= args.length) {
+        return finish();
+    }
+    String arg = args[next++];
+    if (arg.equals("--")) {
+        if (next < args.length) {
+            throw new IllegalArgumentException("Unexpected argument: "
+                                               + args[next]);
+        }
+        return finish();
+    }
+    if (arg.startsWith("--")) {
+        return longOption(arg.substring(2));
+    }
+    if (arg.startsWith("-") && arg.length() > 1) {
+        group = arg.substring(1);
+        return shortOption();
+    }
+    throw new IllegalArgumentException("Unexpected argument: " + arg);
+}
 
-	public String getOptionArg() {
-		// TODO Auto-generated method stub
-		return null;
-	}
+/** @return the argument of the option last returned by getOption, or null
+ * if it takes none
+ */
+public String getOptionArg() {
+    return optionArg;
+}
+
+/** Parses the first option of the current group of short options.
+ *
+ * @return the short name of the option
+ */
+private int shortOption() {
+    char name = group.charAt(0);
+    String rest = group.substring(1);
+    group = null;
+    Option option = null;
+    for (int i = 0; i < options.length && option == null; i++) {
+        if (options[i].getShortName() == name) {
+            option = options[i];
+        }
+    }
+    if (option == null) {
+        throw new IllegalArgumentException("Unknown option: -" + name);
+    }
+    if (option.takesArgument()) {
+        optionArg = (rest.length() > 0) ? rest : nextArg("-" + name);
+    }
+    else if (rest.length() > 0) {
+        group = rest;
+    }
+    given.add(option);
+    return name;
+}
+
+/** Parses a long option.
+ *
+ * @param arg the argument, without its two dashes
+ * @return the short name of the option
+ */
+private int longOption(String arg) {
+    int equals = arg.indexOf('=');
+    String name = (equals < 0) ? arg : arg.substring(0, equals);
+    Option option = null;
+    for (int i = 0; i < options.length && option == null; i++) {
+        if (options[i].getLongName().equals(name)) {
+            option = options[i];
+        }
+    }
+    if (option == null) {
+        throw new IllegalArgumentException("Unknown option: --" + name);
+    }
+    if (option.takesArgument()) {
+        optionArg = (equals < 0) ? nextArg("--" + name)
+            : arg.substring(equals + 1);
+    }
+    else if (equals >= 0) {
+        throw new IllegalArgumentException("Option --" + name
+                                           + " takes no argument");
+    }
+    given.add(option);
+    return option.getShortName();
+}
+
+/** Takes the next argument as the argument of an option.
+ *
+ * @param name the option, as given
+ * @return the argument
+ */
+private String nextArg(String name) {
+    if (next >= args.length) {
+        throw new IllegalArgumentException("Option " + name
+                                           + " requires an argument");
+    }
+    return args[next++];
+}
+
+/** Ends parsing, checking that every mandatory option was given.
+ *
+ * @return FINISHED_PARSING
+ */
+private int finish() {
+    for (int i = 0; i < options.length; i++) {
+        if (options[i].isMandatory() && !given.contains(options[i])) {
+            throw new IllegalArgumentException("Missing option: --"
+                                               + options[i].getLongName());
+        }
+    }
+    return FINISHED_PARSING;
+}
 
 }
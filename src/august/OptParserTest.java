@@ -0,0 +1,74 @@
+package august;
+
+import junit.framework.*;
+
+public class OptParserTest extends TestCase {
+
+public OptParserTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(OptParserTest.class);
+}
+
+private static OptParser parser(String[] args) {
+    Option[] options = {
+        new Option(false, Option.REQUIRES_ARGUMENT, 'j', "jobs"),
+        new Option(false, Option.NO_ARGUMENT,       'r', "rerunfailed"),
+        new Option(false, Option.NO_ARGUMENT,       'f', "failedfirst"),
+        new Option(false, Option.REQUIRES_ARGUMENT, 'v', "validate")
+    };
+    OptParser parser = new OptParser(options);
+    parser.setArgs(args);
+    return parser;
+}
+
+public void testShortAndLongOptions() {
+    OptParser parser = parser(new String[] {
+        "-j", "4", "--validate=only", "-rf", "--jobs", "2", "-j3", "--"});
+    assertEquals('j', parser.getOption());
+    assertEquals("4", parser.getOptionArg());
+    assertEquals('v', parser.getOption());
+    assertEquals("only", parser.getOptionArg());
+    assertEquals('r', parser.getOption());
+    assertNull(parser.getOptionArg());
+    assertEquals('f', parser.getOption());
+    assertEquals('j', parser.getOption());
+    assertEquals("2", parser.getOptionArg());
+    assertEquals('j', parser.getOption());
+    assertEquals("3", parser.getOptionArg());
+    assertEquals(OptParser.FINISHED_PARSING, parser.getOption());
+}
+
+public void testErrors() {
+    String[][] bad = {{"-x"}, {"--unknown"}, {"-j"}, {"--jobs"},
+                      {"--rerunfailed=yes"}, {"tests"}, {"-r", "tests"},
+                      {"--", "tests"}};
+    for (int i = 0; i < bad.length; i++) {
+        OptParser parser = parser(bad[i]);
+        try {
+            while (parser.getOption() != OptParser.FINISHED_PARSING) {
+            }
+            fail("accepted " + java.util.Arrays.asList(bad[i]));
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
+
+public void testMandatoryOption() {
+    OptParser parser = new OptParser(new Option[] {
+        new Option(true, Option.REQUIRES_ARGUMENT, 'c', "configfile")});
+    parser.setArgs(new String[] {"--"});
+    try {
+        parser.getOption();
+        fail("missing option was not reported");
+    }
+    catch (IllegalArgumentException e) {
+        assertEquals("Missing option: --configfile", e.getMessage());
+    }
+}
+
+}
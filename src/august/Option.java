@@ -1,13 +1,81 @@
 package august;
 
+/** A command line option, for the OptParser.
+ * <P>
+ * An option has a short name, given as <CODE>-x</CODE>, and a long name,
+ * given as <CODE>--name</CODE>, and either takes an argument or does not.
+ *
+ * @see OptParser
+ */
 public class Option {
-	public static final String REQUIRES_ARGUMENT = null;
-	public static final String NO_ARGUMENT = null;
 
-	public Option(boolean b, String requiresArgument, char c, String string) {
-		// TODO Auto-generated constructor stub
-	}
+/** The option takes an argument.
+ */
+public static final String REQUIRES_ARGUMENT = "requires argument";
 
+/** The option takes no argument.
+ */
+public static final String NO_ARGUMENT = "no argument";
 
+/** 'true' if the option must be given.
+ */
+private boolean mandatory;
+
+/** 'true' if the option takes an argument.
+ */
+private boolean takesArgument;
+
+/** The short name.
+ */
+private char shortName;
+
+/** The long name.
+ */
+private String longName;
+
+/** Creates an option.
+ *
+ * @param mandatory 'true' if the option must be given
+ * @param argument REQUIRES_ARGUMENT or NO_ARGUMENT
+ * @param shortName the short name, given as -shortName
+ * @param longName the long name, given as --longName
+ * @throws IllegalArgumentException if argument is neither REQUIRES_ARGUMENT
+ * nor NO_ARGUMENT
+ */
+public Option(boolean mandatory, String argument, char shortName,
+              String longName) {
+    if (!REQUIRES_ARGUMENT.equals(argument) && !NO_ARGUMENT.equals(argument)) {
+        throw new IllegalArgumentException("Bad argument kind for option "
+                                           + longName + ": " + argument);
+    }
+    this.mandatory = mandatory;
+    this.takesArgument = REQUIRES_ARGUMENT.equals(argument);
+    this.shortName = shortName;
+    this.longName = longName;
+}
+
+/** @return 'true' if the option must be given
+ */
+public boolean isMandatory() {
+    return mandatory;
+}
+
+/** @return 'true' if the option takes an argument
+ */
+public boolean takesArgument() {
+    return takesArgument;
+}
+
+/** @return the short name
+ */
+public char getShortName() {
+    return shortName;
+}
+
+/** @return the long name
+ */
+public String getLongName() {
+    return longName;
+}
 
 }
@@ -0,0 +1,205 @@
+package august;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.event.AWTEventListener;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/** Decides when the tested application is ready to be tested after it has been
+ * started.
+ * <P>
+ * The TestEngine uses a ReadinessGate instead of sleeping for a fixed time
+ * after starting the application, if the readyCondition property is set in
+ * the config file.  The gate is released as soon as its condition holds, which
+ * is checked whenever a window or hierarchy event is dispatched anywhere in the
+ * JVM (and, as a backstop, every <CODE>POLL_INTERVAL</CODE> milliseconds).  The
+ * following conditions are recognized:
+ * <BR>- "frame" - at least one frame is showing
+ * <BR>- "component:&lt;name&gt;" - a component with the given name is showing
+ * <BR>- "idle" - at least one frame is showing and the AWT event queue has been
+ * empty for <CODE>IDLE_PERIOD</CODE> milliseconds
+ * <P>
+ * Checking for idleness needs the event dispatch thread, which a hung
+ * application may never give back; the gate does not wait for it beyond its
+ * timeout, and an event dispatch thread that does not answer in time means
+ * that the application is not ready.
+ *
+ * @see TestEngine.AugustProperties#READY_CONDITION
+ */
+class ReadinessGate implements AWTEventListener {
+
+/** The condition satisfied when at least one frame is showing.
+ */
+protected static final String FRAME = "frame";
+
+/** The condition satisfied when the event queue goes idle.
+ */
+protected static final String IDLE = "idle";
+
+/** Starts the condition satisfied when a named component is showing; the
+ * component name follows.
+ */
+protected static final String COMPONENT = "component:";
+
+/** The longest time the condition goes unchecked while the gate waits.  Not
+ * every change that may satisfy a condition causes an event (for example
+ * Component.setName does not).
+ */
+protected static final long POLL_INTERVAL = 200;
+
+/** How long the event queue must stay empty to be considered idle.
+ */
+protected static final long IDLE_PERIOD = 100;
+
+/** The kinds of events that wake up a waiting gate.
+ */
+private static final long EVENT_MASK =
+    AWTEvent.WINDOW_EVENT_MASK | AWTEvent.HIERARCHY_EVENT_MASK;
+
+/** One of FRAME, IDLE or COMPONENT (the constants themselves, so that they
+ * can be compared by identity).
+ */
+private String condition;
+
+/** The name of the component to wait for if the condition is COMPONENT.
+ */
+private String componentName;
+
+/** Creates a ReadinessGate.
+ *
+ * @param condition the value of the readyCondition property
+ * @throws IllegalArgumentException if the condition is not recognized
+ */
+protected ReadinessGate(String condition) {
+    condition = condition.trim();
+    if (condition.startsWith(COMPONENT)) {
+        this.condition = COMPONENT;
+        componentName = condition.substring(COMPONENT.length());
+    }
+    else if (condition.equals(FRAME)) {
+        this.condition = FRAME;
+    }
+    else if (condition.equals(IDLE)) {
+        this.condition = IDLE;
+    }
+    else {
+        throw new IllegalArgumentException("Unrecognized ready condition: "
+            + condition);
+    }
+}
+
+/** Blocks until the condition of this gate holds, or until the timeout
+ * elapses.
+ *
+ * @param timeout the maximum number of milliseconds to wait
+ * @return 'true' if the condition holds, 'false' if the timeout elapsed first
+ */
+protected boolean await(long timeout) {
+    long deadline = System.currentTimeMillis() + timeout;
+    Toolkit.getDefaultToolkit().addAWTEventListener(this, EVENT_MASK);
+    try {
+        while (!isReady(deadline)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            synchronized (this) {
+                wait(Math.min(remaining, POLL_INTERVAL));
+            }
+        }
+        return true;
+    }
+    catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+    }
+    finally {
+        Toolkit.getDefaultToolkit().removeAWTEventListener(this);
+    }
+}
+
+/** Wakes up the thread waiting in the await method, so that it checks the
+ * condition again.
+ *
+ * @param e a window or hierarchy event
+ */
+public void eventDispatched(AWTEvent e) {
+    synchronized (this) {
+        notifyAll();
+    }
+}
+
+/** @return the condition of this gate: FRAME, IDLE or COMPONENT
+ */
+protected String getCondition() {
+    return condition;
+}
+
+/** Checks the condition of this gate.
+ *
+ * @param deadline the time after which the gate stops waiting
+ * @return 'true' if the condition holds
+ * @throws InterruptedException if interrupted while checking for idleness
+ */
+private boolean isReady(long deadline) throws InterruptedException {
+    if (condition == COMPONENT) {
+        Component c = ObjectFinder.findGUIComponent(componentName);
+        return c != null && c.isShowing();
+    }
+    if (!isFrameShowing()) {
+        return false;
+    }
+    if (condition == IDLE) {
+        if (!isEventQueueIdle(deadline)) {
+            return false;
+        }
+        Thread.sleep(IDLE_PERIOD);
+        return isEventQueueIdle(deadline);
+    }
+    return true;
+}
+
+/** Checks whether at least one frame is showing.  If the current thread has
+ * a window scope, only the windows of that scope count.
+ *
+ * @return 'true' if at least one frame is showing
+ */
+private static boolean isFrameShowing() {
+    Window[] frames = ObjectFinder.getRootWindows();
+    for (int i = 0; i < frames.length; i++) {
+        if (frames[i].isShowing()) {
+            return true;
+        }
+    }
+    return false;
+}
+
+/** Lets the event dispatch thread process every event posted so far, and then
+ * checks whether any new events have been posted in the meantime.
+ *
+ * @param deadline the time after which the event dispatch thread is no longer
+ * waited for
+ * @return 'true' if the event queue is empty; 'false' if it is not, or if the
+ * event dispatch thread did not get through the events before the deadline
+ * @throws InterruptedException if interrupted while waiting for the event
+ * dispatch thread
+ */
+static boolean isEventQueueIdle(long deadline) throws InterruptedException {
+    final CountDownLatch processed = new CountDownLatch(1);
+    EventQueue.invokeLater(new Runnable() {
+        public void run() {
+            processed.countDown();
+        }
+    });
+    long remaining = Math.max(deadline - System.currentTimeMillis(), 0);
+    if (!processed.await(remaining, TimeUnit.MILLISECONDS)) {
+        return false;
+    }
+    return Toolkit.getDefaultToolkit().getSystemEventQueue().peekEvent() == null;
+}
+
+}
@@ -0,0 +1,66 @@
+package august;
+
+import junit.framework.*;
+import java.awt.EventQueue;
+import java.io.ByteArrayInputStream;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+public class ReadinessGateTest extends TestCase {
+
+public ReadinessGateTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(ReadinessGateTest.class);
+}
+
+public void testConditionLoadedFromProperties() throws Exception {
+    Properties properties = new Properties();
+    properties.load(new ByteArrayInputStream((
+        "idle=idle \nframe=frame\ncomponent=component:main\n").getBytes()));
+
+    // The loaded values are not interned, so the gate must keep its own
+    // constants.
+    String idle = properties.getProperty("idle");
+    assertNotSame(ReadinessGate.IDLE, idle.trim());
+    assertSame(ReadinessGate.IDLE, new ReadinessGate(idle).getCondition());
+    assertSame(ReadinessGate.FRAME,
+               new ReadinessGate(properties.getProperty("frame"))
+                   .getCondition());
+    assertSame(ReadinessGate.COMPONENT,
+               new ReadinessGate(properties.getProperty("component"))
+                   .getCondition());
+    try {
+        new ReadinessGate("busy");
+        fail("busy is not a ready condition");
+    }
+    catch (IllegalArgumentException e) {
+    }
+}
+
+public void testBlockedEventDispatchThreadIsNotIdle() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    EventQueue.invokeLater(new Runnable() {
+        public void run() {
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+            }
+        }
+    });
+    try {
+        long start = System.currentTimeMillis();
+        assertFalse(ReadinessGate.isEventQueueIdle(start + 200));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+    finally {
+        release.countDown();
+    }
+    assertTrue(ReadinessGate.isEventQueueIdle(
+        System.currentTimeMillis() + 5000));
+}
+
+}
@@ -0,0 +1,31 @@
+package august;
+
+/** A TestableApplication that can be brought back to a clean state without
+ * being exited and started again.
+ * <P>
+ * If the application class named in the config file implements this
+ * interface, and the reuseApplication property is set to 'true,' then the
+ * TestEngine keeps one running instance of the application across test
+ * scripts, and calls resetApplication before each script instead of starting
+ * the application again.  The application is still exited and started again
+ * after a test fails, after the reset fails, and after the number of scripts
+ * given by the maxRunsPerStart property.
+ *
+ * @see TestEngine.AugustProperties#REUSE_APPLICATION
+ */
+public interface ResettableApplication extends TestableApplication {
+
+/** Brings the running tested application back to the state it was in right
+ * after it was started: closes all windows and dialogs other than the ones
+ * shown at startup, discards any documents or settings changed by the previous
+ * test, and so on.
+ * <P>
+ * Called by the TestEngine before each test script, except for the first one
+ * after the application is started.
+ *
+ * @return 'true' if the application is now in a clean state,
+ * 'false' if it could not be reset and must be exited and started again
+ */
+boolean resetApplication();
+
+}
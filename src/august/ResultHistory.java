@@ -0,0 +1,93 @@
+package august;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/** Remembers whether each test script passed or failed the last time it was
+ * run.
+ * <P>
+ * The history is kept in a properties file (named <CODE>HISTORY_FILE</CODE>)
+ * in the log directory, mapping test script paths to "pass" or "FAIL".  A run
+ * that runs only some of the scripts (for example, only the ones that failed
+ * last time) updates the entries of those scripts and leaves the others as
+ * they were.
+ * <P>
+ * The TestReportLogger records the result of every test it logs, and saves
+ * the history when it is done; the TestEngine reads it in the rerunFailed and
+ * failedFirst modes.  All of the methods are synchronized, since reports are
+ * logged on the logger thread.
+ *
+ * @see ScriptScheduler
+ */
+class ResultHistory {
+
+/** The name of the history file in the log directory.
+ */
+protected static final String HISTORY_FILE = "results.properties";
+
+/** Written at the top of the history file.
+ */
+private static final String HEADER = "August test script results";
+
+/** The path of the history file.
+ */
+private String historyFile;
+
+/** Test script paths mapped to "pass" or "FAIL".
+ */
+private Properties results = new Properties();
+
+/** Creates a ResultHistory, and loads the history file from the given
+ * directory if there is one.
+ *
+ * @param logDir the log directory
+ */
+protected ResultHistory(String logDir) {
+    historyFile = new File(logDir, HISTORY_FILE).getPath();
+    if (FileUtilities.exists(historyFile)) {
+        try {
+            FileUtilities.loadProperties(results, historyFile);
+        }
+        catch (IOException e) {
+            // Without a history no script is known to have failed.
+            results.clear();
+        }
+    }
+}
+
+/** Records the result of a test.
+ *
+ * @param report the report of the test
+ */
+protected synchronized void record(TestReport report) {
+    results.setProperty(report.getTestID(),
+                        report.isTestPassed() ? TestReport.PASS : TestReport.FAIL);
+}
+
+/** Checks whether a test script failed the last time it was run.
+ *
+ * @param testScript the path of the test script
+ * @return 'true' if the script failed the last time it was run, 'false' if
+ * it passed or has never been run
+ */
+protected synchronized boolean hasFailed(String testScript) {
+    return TestReport.FAIL.equals(results.getProperty(testScript));
+}
+
+/** Writes the history to the history file.
+ *
+ * @throws IOException if the file cannot be written
+ */
+protected synchronized void save() throws IOException {
+    FileOutputStream out = new FileOutputStream(historyFile);
+    try {
+        results.store(out, HEADER);
+    }
+    finally {
+        out.close();
+    }
+}
+
+}
@@ -0,0 +1,267 @@
+package august;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Toolkit;
+import java.awt.event.AWTEventListener;
+import java.awt.event.ComponentEvent;
+import java.util.Random;
+
+/** Decides how long the TestEngine waits before each retry of a failed test
+ * step, and when it stops retrying.
+ * <P>
+ * A step chooses its policy with the retryPolicy attribute:
+ * <BR>- "fixed" (the default) - waits retryDelay milliseconds before each
+ * retry
+ * <BR>- "backoff" - waits retryDelay milliseconds before the first retry, and
+ * twice as long before each following one (but no longer than retryMaxDelay,
+ * if it is specified); each wait is randomly shortened by up to a half, so that
+ * retries do not fall into step with whatever they are waiting for
+ * <BR>- "onChange" - retries as soon as an AWT event shows that the component
+ * the step is looking for (by its name, or by its selector), or the component
+ * hierarchy, has changed, but waits no longer than retryDelay milliseconds (or
+ * <CODE>MAX_CHANGE_WAIT</CODE> if retryDelay is not specified); for a step
+ * that does not look for a component, any event counts as a change
+ * <P>
+ * Whatever the policy, the step is retried at most retryTimes times, and, if
+ * the retryBudget attribute is specified, no retry starts later than
+ * retryBudget milliseconds after the first failure.
+ * <P>
+ * RetryPolicy objects are immutable, so a single policy may be shared.  They
+ * are serializable, since they are part of the TestStep that uses them.
+ *
+ * @see TestStep
+ */
+public abstract class RetryPolicy implements java.io.Serializable {
+
+/** The value of the retryPolicy attribute selecting a fixed delay.
+ */
+public static final String FIXED = "fixed";
+
+/** The value of the retryPolicy attribute selecting exponential backoff.
+ */
+public static final String BACKOFF = "backoff";
+
+/** The value of the retryPolicy attribute selecting retry on change.
+ */
+public static final String ON_CHANGE = "onChange";
+
+/** The longest an "onChange" policy waits for a change if retryDelay is not
+ * specified.
+ */
+protected static final int MAX_CHANGE_WAIT = 5000;
+
+/** Randomizes backoff delays.
+ */
+private static final Random JITTER = new Random();
+
+/** The delay before the first retry, in milliseconds.
+ */
+protected int delay;
+
+/** The maximum number of milliseconds after the first failure at which a
+ * retry may start, or 0 if there is no limit.
+ */
+protected int budget;
+
+/** Creates the retry policy for a test step.
+ *
+ * @param name the value of the retryPolicy attribute ("" means "fixed")
+ * @param delay the value of the retryDelay attribute
+ * @param maxDelay the value of the retryMaxDelay attribute (0 if not given)
+ * @param budget the value of the retryBudget attribute (0 if not given)
+ * @return a retry policy
+ * @throws ParsingException if the policy name is not recognized
+ */
+public static RetryPolicy create(String name, int delay, int maxDelay,
+                                 int budget) throws ParsingException {
+    RetryPolicy policy;
+    if (name == null || name.equals("") || name.equals(FIXED)) {
+        policy = new Fixed();
+    }
+    else if (name.equals(BACKOFF)) {
+        policy = new Backoff(maxDelay);
+    }
+    else if (name.equals(ON_CHANGE)) {
+        policy = new OnChange();
+    }
+    else {
+        throw new ParsingException("retryPolicy must be one of " + FIXED + ", "
+            + BACKOFF + " or " + ON_CHANGE + "; " + name + " is not");
+    }
+    policy.delay = delay;
+    policy.budget = budget;
+    return policy;
+}
+
+/** Waits until it is time for the next retry of a step.
+ * <P>
+ * Called by the TestEngine after each failure of a step that may be retried.
+ *
+ * @param retry the number of the retry about to start (1 for the first)
+ * @param firstFailure the time of the first failure of the step
+ * @param step the step
+ * @return 'true' if the step should be retried now, 'false' if the retry
+ * budget is used up
+ * @throws InterruptedException if the waiting thread is interrupted
+ */
+public boolean awaitRetry(int retry, long firstFailure, TestStep step)
+throws InterruptedException {
+    long wait = getDelay(retry);
+    if (budget > 0) {
+        long remaining = firstFailure + budget - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return false;
+        }
+        wait = Math.min(wait, remaining);
+    }
+    if (wait > 0) {
+        await(wait, step);
+    }
+    return true;
+}
+
+/** Computes the longest wait before a retry.
+ *
+ * @param retry the number of the retry (1 for the first)
+ * @return the number of milliseconds to wait
+ */
+protected abstract long getDelay(int retry);
+
+/** Waits before a retry.  By default, simply sleeps.
+ *
+ * @param wait the longest time to wait, in milliseconds
+ * @param step the step about to be retried
+ * @throws InterruptedException if the waiting thread is interrupted
+ */
+protected void await(long wait, TestStep step)
+throws InterruptedException {
+    Thread.sleep(wait);
+}
+
+/** Waits retryDelay milliseconds before each retry.
+ */
+static class Fixed extends RetryPolicy {
+
+    protected long getDelay(int retry) {
+        return delay;
+    }
+} // Fixed
+
+/** Doubles the wait with each retry, and randomly shortens each wait by up to
+ * a half.
+ */
+static class Backoff extends RetryPolicy {
+
+    /** The longest wait, or 0 if there is no limit.
+     */
+    private int maxDelay;
+
+    /** Creates a Backoff policy.
+     *
+     * @param maxDelay the longest wait, or 0 if there is no limit
+     */
+    Backoff(int maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    protected long getDelay(int retry) {
+        // Stop doubling well before a long could overflow.
+        long full = (long)delay << Math.min(retry - 1, 30);
+        if (maxDelay > 0) {
+            full = Math.min(full, maxDelay);
+        }
+        long half = full / 2;
+        return (full - half) + (half > 0 ? (long)(JITTER.nextDouble() * half) : 0);
+    }
+} // Backoff
+
+/** Retries as soon as something relevant changes in the GUI.
+ */
+static class OnChange extends RetryPolicy {
+
+    /** The kinds of events that may mean that the retry can succeed now.
+     */
+    private static final long EVENT_MASK = AWTEvent.COMPONENT_EVENT_MASK
+        | AWTEvent.CONTAINER_EVENT_MASK | AWTEvent.HIERARCHY_EVENT_MASK
+        | AWTEvent.WINDOW_EVENT_MASK | AWTEvent.ITEM_EVENT_MASK
+        | AWTEvent.TEXT_EVENT_MASK | AWTEvent.ACTION_EVENT_MASK;
+
+    protected long getDelay(int retry) {
+        return (delay > 0) ? delay : MAX_CHANGE_WAIT;
+    }
+
+    protected void await(long wait, TestStep step)
+    throws InterruptedException {
+        final String componentName = step.getComponentName();
+        final ComponentSelector selector = step.getComponentSelector();
+        final Object changed = new Object();
+        final boolean[] seen = {false};
+        AWTEventListener listener = new AWTEventListener() {
+            public void eventDispatched(AWTEvent e) {
+                if (isRelevant(e, componentName, selector)) {
+                    synchronized (changed) {
+                        seen[0] = true;
+                        changed.notifyAll();
+                    }
+                }
+            }
+        };
+        long deadline = System.currentTimeMillis() + wait;
+        Toolkit.getDefaultToolkit().addAWTEventListener(listener, EVENT_MASK);
+        try {
+            synchronized (changed) {
+                long remaining = wait;
+                while (!seen[0] && remaining > 0) {
+                    changed.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            }
+        }
+        finally {
+            Toolkit.getDefaultToolkit().removeAWTEventListener(listener);
+        }
+    }
+
+    /** Decides whether an event may have made the step succeed.  A step
+     * that looks for a component with a selector cannot tell where an event
+     * came from without searching the component trees, so an event from a
+     * component that merely looks like the one selected (see
+     * ComponentSelector.mayMatch) counts.
+     *
+     * @param e an event
+     * @param componentName the name of the component the step is looking
+     * for, or null
+     * @param selector the selector of the component the step is looking for,
+     * or null
+     * @return 'true' if the event changed the component hierarchy, or if it
+     * came from the component the step is looking for (or from any component,
+     * if the step does not look for one)
+     */
+    static boolean isRelevant(AWTEvent e, String componentName,
+                              ComponentSelector selector) {
+        if (componentName == null && selector == null) {
+            return true;
+        }
+        switch (e.getID()) {
+            case ComponentEvent.COMPONENT_SHOWN:
+            case ComponentEvent.COMPONENT_HIDDEN:
+            case java.awt.event.ContainerEvent.COMPONENT_ADDED:
+            case java.awt.event.ContainerEvent.COMPONENT_REMOVED:
+            case java.awt.event.HierarchyEvent.HIERARCHY_CHANGED:
+            case java.awt.event.WindowEvent.WINDOW_OPENED:
+            case java.awt.event.WindowEvent.WINDOW_CLOSED:
+                return true;
+            default:
+                Object source = e.getSource();
+                if (!(source instanceof Component)) {
+                    return false;
+                }
+                return (selector != null)
+                    ? selector.mayMatch((Component)source)
+                    : componentName.equals(((Component)source).getName());
+        }
+    }
+} // OnChange
+
+}
@@ -0,0 +1,96 @@
+package august;
+
+import junit.framework.*;
+
+public class RetryPolicyTest extends TestCase {
+
+public RetryPolicyTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(RetryPolicyTest.class);
+}
+
+public void testFixedIsDefault() {
+    try {
+        RetryPolicy policy = RetryPolicy.create("", 200, 0, 0);
+        assertEquals(RetryPolicy.Fixed.class, policy.getClass());
+        assertEquals(200, policy.getDelay(1));
+        assertEquals(200, policy.getDelay(5));
+    }
+    catch (ParsingException e) {
+        fail(e.getMessage());
+    }
+}
+
+public void testBackoffDoublesWithJitter() {
+    try {
+        RetryPolicy policy = RetryPolicy.create(RetryPolicy.BACKOFF, 100, 1000, 0);
+        for (int n = 0; n < 20; n++) {
+            long first = policy.getDelay(1);
+            assertTrue(first >= 50 && first <= 100);
+            long third = policy.getDelay(3);
+            assertTrue(third >= 200 && third <= 400);
+            // Capped by retryMaxDelay.
+            long tenth = policy.getDelay(10);
+            assertTrue(tenth >= 500 && tenth <= 1000);
+        }
+        // Does not overflow however many retries there are.
+        assertTrue(RetryPolicy.create(RetryPolicy.BACKOFF, 100, 0, 0)
+                       .getDelay(1000) > 0);
+    }
+    catch (ParsingException e) {
+        fail(e.getMessage());
+    }
+}
+
+public void testBudget() {
+    try {
+        RetryPolicy policy = RetryPolicy.create(RetryPolicy.FIXED, 10, 0, 50);
+        long now = System.currentTimeMillis();
+        assertTrue(policy.awaitRetry(1, now, null));
+        assertFalse(policy.awaitRetry(2, now - 100, null));
+    }
+    catch (Exception e) {
+        fail(e.getMessage());
+    }
+}
+
+public void testOnChangeRecognizesRelevantEvents() throws ParsingException {
+    javax.swing.JButton ok = new javax.swing.JButton("OK");
+    ok.setName("ok");
+    javax.swing.JButton cancel = new javax.swing.JButton("Cancel");
+    java.awt.AWTEvent fromOk = new java.awt.event.ActionEvent(
+        ok, java.awt.event.ActionEvent.ACTION_PERFORMED, "OK");
+    java.awt.AWTEvent fromCancel = new java.awt.event.ActionEvent(
+        cancel, java.awt.event.ActionEvent.ACTION_PERFORMED, "Cancel");
+    java.awt.AWTEvent added = new java.awt.event.ContainerEvent(
+        new javax.swing.JPanel(), java.awt.event.ContainerEvent.COMPONENT_ADDED,
+        cancel);
+    ComponentSelector selector =
+        ComponentSelector.compile("JPanel > JButton[text=OK]");
+
+    // A step looking for a component by its name.
+    assertTrue(RetryPolicy.OnChange.isRelevant(fromOk, "ok", null));
+    assertFalse(RetryPolicy.OnChange.isRelevant(fromCancel, "ok", null));
+    // A step looking for a component with a selector, which has no name.
+    assertTrue(RetryPolicy.OnChange.isRelevant(fromOk, null, selector));
+    assertFalse(RetryPolicy.OnChange.isRelevant(fromCancel, null, selector));
+    // Changes to the hierarchy are relevant to any step.
+    assertTrue(RetryPolicy.OnChange.isRelevant(added, "ok", null));
+    assertTrue(RetryPolicy.OnChange.isRelevant(added, null, selector));
+    // Any event is relevant to a step that looks for no component.
+    assertTrue(RetryPolicy.OnChange.isRelevant(fromCancel, null, null));
+}
+
+public void testUnknownPolicy() {
+    try {
+        RetryPolicy.create("sometimes", 10, 0, 0);
+        fail("sometimes is not a retry policy");
+    }
+    catch (ParsingException e) {
+    }
+}
+
+}
@@ -0,0 +1,376 @@
+package august;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Keeps the parsed test steps of test scripts in a cache directory, so that
+ * scripts that have not changed since they were last parsed do not have to be
+ * parsed again.
+ * <P>
+ * There is one cache file per test script.  It starts with the list of files
+ * the steps were parsed from: the script itself, the utility scripts and data
+ * files it calls (directly or not), and the file that maps tags to TestStep
+ * classes.  The list of the files the code that created the steps was loaded
+ * from comes next: the class files (or jars) of the TestScriptParser, of
+ * TestStep, and of every registered step class (see getCodeSources), since a
+ * change to how a step reads its attributes need not change anything that
+ * serialization would notice.  For each of those files the entry records its
+ * length, its time of last modification and the SHA-1 hash of its contents.
+ * The serialized steps follow.
+ * <P>
+ * An entry is used only if every one of its files still has the recorded
+ * contents, and it was written with the same code sources.  If the length and
+ * the time of a file are unchanged, then its contents are assumed to be
+ * unchanged as well; otherwise the file is hashed again.  So when nothing has
+ * changed, loading the steps costs one file read plus one file status check
+ * per file.  An entry is also discarded when it cannot be deserialized, which
+ * is what happens when the fields of a TestStep class have changed since the
+ * entry was written (the step classes deliberately declare no
+ * serialVersionUID).
+ * <P>
+ * Stylesheets included or imported by utility scripts are not tracked; the
+ * cache directory should be cleared when one of them changes.
+ * <P>
+ * A ScriptCache keeps no state besides the directory, so one cache may be used
+ * by several parsers on several threads.  Entries are written to a temporary
+ * file first and then renamed, so readers never see half-written entries.
+ *
+ * @see TestEngine.AugustProperties#SCRIPT_CACHE_DIR
+ */
+class ScriptCache {
+
+/** Changes whenever the format of the cache files changes.
+ */
+private static final int FORMAT_VERSION = 2;
+
+/** The extension of the cache files.
+ */
+protected static final String CACHE_FILE_EXTENSION = ".steps";
+
+/** The size of the buffer used when hashing files.
+ */
+private static final int BUFFER_SIZE = 8192;
+
+/** The directory in which the cache files are kept.
+ */
+private File directory;
+
+/** Creates a ScriptCache.  The directory is created if it does not exist.
+ *
+ * @param directory the path of the cache directory
+ */
+protected ScriptCache(String directory) {
+    this.directory = new File(directory);
+    this.directory.mkdirs();
+}
+
+/** Loads the steps of a test script, if the cache has an up to date entry
+ * for it.
+ *
+ * @param testScript the path of the test script, exactly as it would be given
+ * to the parser
+ * @return the test steps (a fresh TestStep instance for each step), or null if
+ * there is no usable entry
+ */
+protected List load(String testScript) {
+    return load(testScript, null);
+}
+
+/** Loads the steps of a test script, if the cache has an up to date entry
+ * for it, together with the files they were parsed from.
+ *
+ * @param testScript the path of the test script, exactly as it would be given
+ * to the parser
+ * @param dependencies if the steps are loaded, then the paths (Strings) of
+ * the files they were parsed from are added to this list; may be null
+ * @return the test steps (a fresh TestStep instance for each step), or null if
+ * there is no usable entry
+ */
+protected List load(String testScript, List dependencies) {
+    File file = getCacheFile(testScript);
+    if (!file.isFile()) {
+        return null;
+    }
+    ObjectInputStream in = null;
+    try {
+        in = new ObjectInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+        if (in.readInt() != FORMAT_VERSION
+                || !in.readUTF().equals(testScript)) {
+            return null;
+        }
+        List paths = readUnchanged(in);
+        List codeSources = readUnchanged(in);
+        if (paths == null || codeSources == null
+                || !codeSources.equals(getCodeSources())) {
+            return null;
+        }
+        List testSteps = (List)(in.readObject());
+        if (dependencies != null) {
+            dependencies.addAll(paths);
+        }
+        return testSteps;
+    }
+    catch (Exception e) {
+        // The entry is damaged, or was written by different TestStep classes;
+        // it will be replaced once the script has been parsed.
+        return null;
+    }
+    finally {
+        close(in);
+    }
+}
+
+/** Stores the steps of a test script.  Failures are reported, but otherwise
+ * ignored, since the cache only saves time.
+ *
+ * @param testScript the path of the test script
+ * @param dependencies the paths (Strings) of every file the steps were parsed
+ * from, including the test script itself
+ * @param testSteps the steps, which must not have been executed yet
+ */
+protected void store(String testScript, List dependencies, List testSteps) {
+    File temp = null;
+    ObjectOutputStream out = null;
+    try {
+        temp = File.createTempFile("entry", ".tmp", directory);
+        out = new ObjectOutputStream(
+            new BufferedOutputStream(new FileOutputStream(temp)));
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(testScript);
+        writeFiles(out, dependencies);
+        writeFiles(out, getCodeSources());
+        out.writeObject(new ArrayList(testSteps));
+        out.close();
+        out = null;
+
+        File file = getCacheFile(testScript);
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("cannot rename " + temp + " to " + file);
+            }
+        }
+        temp = null;
+    }
+    catch (IOException e) {
+        System.out.println("August warning; could not cache the steps of "
+            + testScript + ": " + e);
+    }
+    finally {
+        close(out);
+        if (temp != null) {
+            temp.delete();
+        }
+    }
+}
+
+/** Returns the files from which the code that creates test steps was loaded:
+ * the class file (or the jar) of the TestScriptParser, of TestStep, and of
+ * every registered step class (see TestStep.Creator.getStepClasses).  Classes
+ * without a code source that is a file (such as classes of the JVM) are left
+ * out.
+ *
+ * @return the paths (Strings) of the files, without duplicates
+ */
+protected List getCodeSources() {
+    List classes = new ArrayList();
+    classes.add(TestScriptParser.class);
+    classes.add(TestStep.class);
+    classes.addAll(TestStep.Creator.getStepClasses());
+    Set paths = new LinkedHashSet();
+    for (int i = 0; i < classes.size(); i++) {
+        File file = getCodeSource((Class)(classes.get(i)));
+        if (file != null) {
+            paths.add(file.getPath());
+        }
+    }
+    List sorted = new ArrayList(paths);
+    Collections.sort(sorted);
+    return sorted;
+}
+
+/** Returns the file a class was loaded from.
+ *
+ * @param cls the class
+ * @return its class file, if it was loaded from a directory; the jar, if it
+ * was loaded from a jar; or null if it was not loaded from a file
+ */
+private static File getCodeSource(Class cls) {
+    CodeSource source = cls.getProtectionDomain().getCodeSource();
+    URL location = (source != null) ? source.getLocation() : null;
+    if (location == null || !location.getProtocol().equals("file")) {
+        return null;
+    }
+    try {
+        File file = new File(location.toURI());
+        if (file.isDirectory()) {
+            file = new File(file, cls.getName().replace('.', File.separatorChar)
+                                  + ".class");
+        }
+        return file.isFile() ? file : null;
+    }
+    catch (Exception e) {
+        // Not a path this JVM can read.
+        return null;
+    }
+}
+
+/** Writes the paths, lengths, times of last modification and hashes of a
+ * list of files.
+ *
+ * @param out the stream of a cache entry
+ * @param paths the paths (Strings) of the files
+ * @throws IOException if the stream or one of the files cannot be read
+ */
+private static void writeFiles(ObjectOutputStream out, List paths)
+throws IOException {
+    out.writeInt(paths.size());
+    for (int i = 0; i < paths.size(); i++) {
+        File file = new File((String)(paths.get(i)));
+        // Take the status first, so that a change made while the file is
+        // being hashed makes the entry look out of date, not up to date.
+        long length = file.length();
+        long lastModified = file.lastModified();
+        out.writeUTF(file.getPath());
+        out.writeLong(length);
+        out.writeLong(lastModified);
+        out.writeUTF(hash(file));
+    }
+}
+
+/** Reads a list of files written by writeFiles, and checks that none of them
+ * has changed.
+ *
+ * @param in the stream of a cache entry
+ * @return the paths (Strings) of the files, or null if one of them has changed
+ * @throws IOException if the stream or one of the files cannot be read
+ */
+private static List readUnchanged(ObjectInputStream in) throws IOException {
+    int count = in.readInt();
+    List paths = new ArrayList(count);
+    for (int i = 0; i < count; i++) {
+        String path = in.readUTF();
+        if (!isUnchanged(new File(path), in.readLong(),
+                         in.readLong(), in.readUTF())) {
+            return null;
+        }
+        paths.add(path);
+    }
+    return paths;
+}
+
+/** Returns the cache file of a test script.  Its name is the hash of the
+ * absolute path of the script.
+ *
+ * @param testScript the path of the test script
+ * @return the cache file (which may not exist)
+ */
+private File getCacheFile(String testScript) {
+    try {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        byte[] path = new File(testScript).getAbsolutePath().getBytes("UTF-8");
+        return new File(directory,
+                        toHex(digest.digest(path)) + CACHE_FILE_EXTENSION);
+    }
+    catch (Exception e) {
+        // Every JVM supports SHA-1 and UTF-8.
+        throw new IllegalStateException(e.toString());
+    }
+}
+
+/** Checks whether a file still has the contents recorded in a cache entry.
+ *
+ * @param file the file
+ * @param length the recorded length
+ * @param lastModified the recorded time of last modification
+ * @param hash the recorded hash
+ * @return 'true' if the file has not changed
+ * @throws IOException if the file cannot be read
+ */
+private static boolean isUnchanged(File file, long length, long lastModified,
+                                   String hash) throws IOException {
+    if (!file.isFile()) {
+        return false;
+    }
+    if (file.length() == length && file.lastModified() == lastModified) {
+        return true;
+    }
+    return file.length() == length && hash(file).equals(hash);
+}
+
+/** Computes the SHA-1 hash of the contents of a file.
+ *
+ * @param file the file
+ * @return the hash, in hexadecimal
+ * @throws IOException if the file cannot be read
+ */
+protected static String hash(File file) throws IOException {
+    MessageDigest digest;
+    try {
+        digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+        // Every JVM supports SHA-1.
+        throw new IllegalStateException(e.toString());
+    }
+    InputStream in = new FileInputStream(file);
+    try {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            digest.update(buffer, 0, n);
+        }
+    }
+    finally {
+        in.close();
+    }
+    return toHex(digest.digest());
+}
+
+/** Turns bytes into hexadecimal digits.
+ *
+ * @param bytes the bytes
+ * @return two lower case digits per byte
+ */
+private static String toHex(byte[] bytes) {
+    StringBuffer hex = new StringBuffer(bytes.length * 2);
+    for (int i = 0; i < bytes.length; i++) {
+        hex.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+        hex.append(Character.forDigit(bytes[i] & 0xf, 16));
+    }
+    return hex.toString();
+}
+
+/** Closes a stream, ignoring failures.
+ *
+ * @param stream the stream, or null
+ */
+private static void close(java.io.Closeable stream) {
+    if (stream != null) {
+        try {
+            stream.close();
+        }
+        catch (IOException e) {
+            // Nothing was left to read or write.
+        }
+    }
+}
+
+}
@@ -0,0 +1,138 @@
+package august;
+
+import junit.framework.*;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Element;
+
+public class ScriptCacheTest extends TestCase {
+
+private File cacheDir;
+
+private File script;
+
+private File codeSource;
+
+public ScriptCacheTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(ScriptCacheTest.class);
+}
+
+protected void setUp() throws IOException {
+    cacheDir = new File("script_cache_test_dir");
+    script = new File("script_cache_test.xml");
+    write(script, "<testSteps/>");
+    codeSource = new File("script_cache_test.class");
+    write(codeSource, "version 1");
+}
+
+protected void tearDown() {
+    File[] entries = cacheDir.listFiles();
+    for (int i = 0; entries != null && i < entries.length; i++) {
+        entries[i].delete();
+    }
+    cacheDir.delete();
+    script.delete();
+    codeSource.delete();
+}
+
+public void testLoadStoredSteps() throws Exception {
+    ScriptCache cache = new ScriptCache(cacheDir.getPath());
+    assertNull(cache.load(script.getPath()));
+
+    cache.store(script.getPath(), dependencies(), steps());
+    List loaded = new ScriptCache(cacheDir.getPath()).load(script.getPath());
+    assertEquals(2, loaded.size());
+    TestStep second = (TestStep)(loaded.get(1));
+    assertEquals(script.getPath(), second.getScriptID());
+    assertEquals(2, second.getStepNumber());
+    assertEquals(3, second.getRetryTimes());
+}
+
+public void testTouchedButUnchangedDependency() throws Exception {
+    ScriptCache cache = new ScriptCache(cacheDir.getPath());
+    cache.store(script.getPath(), dependencies(), steps());
+    script.setLastModified(script.lastModified() - 10000);
+    assertNotNull(cache.load(script.getPath()));
+}
+
+public void testChangedDependency() throws Exception {
+    ScriptCache cache = new ScriptCache(cacheDir.getPath());
+    cache.store(script.getPath(), dependencies(), steps());
+    write(script, "<testSteps></testSteps>");
+    assertNull(cache.load(script.getPath()));
+}
+
+public void testChangedCodeSource() throws Exception {
+    ScriptCache cache = new ScriptCache(cacheDir.getPath()) {
+        protected List getCodeSources() {
+            List codeSources = new ArrayList();
+            codeSources.add(codeSource.getPath());
+            return codeSources;
+        }
+    };
+    cache.store(script.getPath(), dependencies(), steps());
+    List dependencies = new ArrayList();
+    assertNotNull(cache.load(script.getPath(), dependencies));
+    // The code sources are not dependencies of the script.
+    assertEquals(dependencies(), dependencies);
+
+    write(codeSource, "version 2");
+    assertNull(cache.load(script.getPath()));
+}
+
+public void testStepClassIsCodeSource() throws Exception {
+    TestStep.Creator.register("scriptCacheTestStep", Step.class);
+    List codeSources = new ScriptCache(cacheDir.getPath()).getCodeSources();
+    File classes = new File(Step.class.getProtectionDomain().getCodeSource()
+                                .getLocation().toURI());
+    if (classes.isDirectory()) {
+        assertTrue(codeSources.contains(
+            new File(classes, "august/ScriptCacheTest$Step.class").getPath()));
+    }
+    else {
+        assertTrue(codeSources.contains(classes.getPath()));
+    }
+}
+
+private List dependencies() {
+    List dependencies = new ArrayList();
+    dependencies.add(script.getPath());
+    return dependencies;
+}
+
+private List steps() throws Exception {
+    Element node = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .newDocument().createElement("step");
+    node.setAttribute(TestStep.RETRY_TIMES, "3");
+    List steps = new ArrayList();
+    steps.add(new Step(script.getPath(), Integer.valueOf(1), node));
+    steps.add(new Step(script.getPath(), Integer.valueOf(2), node));
+    return steps;
+}
+
+private static void write(File file, String contents) throws IOException {
+    FileWriter out = new FileWriter(file);
+    out.write(contents);
+    out.close();
+}
+
+public static class Step extends TestStep {
+
+    public Step(String scriptID, Integer stepNumber, Element node)
+    throws ParsingException {
+        super(scriptID, stepNumber, node);
+    }
+
+    public void execute() {
+    }
+} // Step
+
+}
@@ -0,0 +1,325 @@
+package august;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** Opens test scripts ahead of the TestEngine, on a separate thread.
+ * <P>
+ * While the engine is running one test script, the ScriptPrefetcher opens the
+ * scripts that follow it (see TestScriptParser.openTestSteps), so that reading
+ * them (which may take seconds for scripts generated from data files) overlaps
+ * with the test run instead of adding to it, and creates their first steps.
+ * The remaining steps are created as the engine takes them, just like the
+ * steps of a script the engine opens itself, so the memory used by the steps
+ * of a script is bounded by the steps in flight, not by the length of the
+ * script.  The prefetcher opens the scripts strictly in the order it was
+ * given, so the engine runs (and reports) the scripts in the same order as it
+ * would without it.
+ * <P>
+ * An opened script keeps using the parser that opened it until the engine
+ * closes it, so each script is opened with a parser of its own, taken from a
+ * pool of parsers with the same settings as the parser of the engine; the
+ * parser goes back to the pool when the engine closes the script.
+ * <P>
+ * At most <CODE>ahead</CODE> opened scripts are kept waiting for the engine;
+ * once that many are waiting, the prefetcher blocks until the engine takes one.
+ *
+ * @see TestEngine.AugustProperties#PARSE_AHEAD
+ */
+class ScriptPrefetcher extends Thread {
+
+/** Paths of the test scripts to be parsed.
+ */
+private List scripts;
+
+/** Parsed scripts waiting to be taken by the engine.
+ */
+private BlockingQueue parsed;
+
+/** The parsers that are not in use by an opened script.
+ */
+private BlockingQueue idle;
+
+/** The number of parsers created so far.
+ */
+private int parsers;
+
+/** The most parsers ever needed at once: one for each script waiting for
+ * the engine, one for the script the engine is running, and one for the
+ * script being opened.
+ */
+private int maxParsers;
+
+/** The parser whose settings the parsers of the pool copy.
+ */
+private TestScriptParser settings;
+
+/** Creates a ScriptPrefetcher.  Parsing starts when the start method is called.
+ *
+ * @param scripts paths of the test scripts to parse (Strings)
+ * @param ahead the maximum number of parsed scripts waiting for the engine
+ * @param settings the parser of the engine, whose settings are copied by the
+ * parser of the prefetcher
+ * @throws org.xml.sax.SAXException if the parser cannot be initialized
+ */
+protected ScriptPrefetcher(List scripts, int ahead, TestScriptParser settings)
+throws org.xml.sax.SAXException {
+    this.scripts = scripts;
+    this.settings = settings;
+    parsed = new ArrayBlockingQueue(ahead);
+    maxParsers = ahead + 2;
+    idle = new ArrayBlockingQueue(maxParsers);
+    idle.add(new TestScriptParser(settings));
+    parsers = 1;
+    setName("August-ScriptPrefetcher");
+    // The engine may stop taking scripts at any point (e.g. if it is aborted);
+    // this thread should not keep the JVM alive in that case.
+    setDaemon(true);
+}
+
+/** Opens the scripts one by one, in order.  Whatever goes wrong with a
+ * script is queued as its failure, for the engine to report against it, so
+ * that the engine never waits for a script that will not come.
+ */
+public void run() {
+    Iterator i = scripts.iterator();
+    try {
+        while (i.hasNext()) {
+            parsed.put(open((String)(i.next())));
+        }
+    }
+    catch (InterruptedException e) {
+        // Nobody is waiting for the remaining scripts.
+    }
+}
+
+/** Opens a script with a parser from the pool, and creates its first step.
+ *
+ * @param testScript the path of the test script
+ * @return the opened script; never null, even if opening it failed
+ * @throws InterruptedException if interrupted while waiting for a parser
+ */
+private ParsedScript open(String testScript) throws InterruptedException {
+    TestScriptParser parser = null;
+    ParsedScript script = null;
+    try {
+        parser = takeParser();
+        script = ParsedScript.open(parser, testScript);
+        if (script.testSteps != null) {
+            script.testSteps = new Prefetched(script.testSteps, parser);
+            return script;
+        }
+    }
+    catch (InterruptedException e) {
+        throw e;
+    }
+    catch (Throwable t) {
+        if (script != null && script.testSteps != null) {
+            script.testSteps.close();
+        }
+        script = ParsedScript.failed(testScript, t);
+    }
+    if (parser != null) {
+        idle.put(parser);
+    }
+    return script;
+}
+
+/** Takes a parser from the pool, creating one if none is idle and fewer than
+ * maxParsers exist, and otherwise waiting for the engine to close a script.
+ *
+ * @return the parser
+ * @throws InterruptedException if interrupted while waiting
+ */
+private TestScriptParser takeParser() throws InterruptedException {
+    TestScriptParser parser = (TestScriptParser)(idle.poll());
+    if (parser == null && parsers < maxParsers) {
+        try {
+            parser = new TestScriptParser(settings);
+            parsers++;
+        }
+        catch (org.xml.sax.SAXException e) {
+            // The first parser could be created, so this should not happen;
+            // make do with the parsers there are.
+            e.printStackTrace();
+            maxParsers = parsers;
+        }
+    }
+    return (parser != null) ? parser : (TestScriptParser)(idle.take());
+}
+
+/** The steps of a script opened by the prefetcher: the first step, created on
+ * the prefetching thread, followed by the steps the engine takes from the
+ * script.  Closing the source returns its parser to the pool.
+ */
+private class Prefetched extends TestStepSource {
+
+    /** The source the steps are taken from.
+     */
+    private TestStepSource source;
+
+    /** The parser used by the source.
+     */
+    private TestScriptParser parser;
+
+    /** The first step, until it is taken (null if the script has none).
+     */
+    private TestStep first;
+
+    /** The reason the first step could not be created, or null.
+     */
+    private ParsingException failure;
+
+    /** 'true' once the first step has been taken.
+     */
+    private boolean started;
+
+    /** Creates a Prefetched source, and creates the first step.
+     *
+     * @param source the opened script
+     * @param parser the parser used by the source
+     */
+    private Prefetched(TestStepSource source, TestScriptParser parser) {
+        this.source = source;
+        this.parser = parser;
+        try {
+            first = source.next();
+        }
+        catch (ParsingException e) {
+            failure = e;
+        }
+    }
+
+    TestStep next() throws ParsingException {
+        if (!started) {
+            started = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return first;
+        }
+        return (first == null) ? null : source.next();
+    }
+
+    void close() {
+        source.close();
+        if (parser != null) {
+            idle.add(parser);
+            parser = null;
+        }
+    }
+} // Prefetched
+
+/** Returns the next parsed script, waiting for it to be parsed if necessary.
+ * <P>
+ * Called by the TestEngine once for each script, in order.
+ *
+ * @return the next parsed script
+ * @throws InterruptedException if interrupted while waiting
+ */
+protected ParsedScript next() throws InterruptedException {
+    return (ParsedScript)(parsed.take());
+}
+
+/** The outcome of parsing one test script: either its test steps, or the
+ * exception that made parsing fail.
+ */
+static class ParsedScript {
+
+    /** The path of the test script.
+     */
+    private String testScript;
+
+    /** The test steps, or null if parsing failed.
+     */
+    private TestStepSource testSteps;
+
+    /** The reason parsing failed, or null if it succeeded.
+     */
+    private ParsingException failure;
+
+    /** Parses a test script, creating all of its test steps.
+     *
+     * @param parser the parser to use
+     * @param testScript the path of the test script
+     * @return the parsed script; never null, even if parsing failed
+     */
+    static ParsedScript parse(TestScriptParser parser, String testScript) {
+        return create(parser, testScript, false);
+    }
+
+    /** Opens a test script, whose test steps are created as they are taken
+     * (see TestScriptParser.openTestSteps).  Only for use on the thread that
+     * takes the steps, since the parser is used until the source is closed.
+     *
+     * @param parser the parser to use
+     * @param testScript the path of the test script
+     * @return the opened script; never null, even if opening it failed
+     */
+    static ParsedScript open(TestScriptParser parser, String testScript) {
+        return create(parser, testScript, true);
+    }
+
+    /** Parses or opens a test script.
+     *
+     * @param parser the parser to use
+     * @param testScript the path of the test script
+     * @param lazy 'true' to open the script, 'false' to parse all of it
+     * @return the parsed script; never null, even if parsing failed
+     */
+    private static ParsedScript create(TestScriptParser parser,
+                                       String testScript, boolean lazy) {
+        ParsedScript script = new ParsedScript();
+        script.testScript = testScript;
+        try {
+            script.testSteps = lazy ? parser.openTestSteps(testScript)
+                : TestStepSource.of(parser.readTestSteps(testScript));
+        }
+        catch (ParsingException e) {
+            script.failure = e;
+        }
+        catch (RuntimeException e) {
+            // This would otherwise be lost on the prefetching thread.
+            script = failed(testScript, e);
+        }
+        return script;
+    }
+
+    /** Creates a script that could not be parsed for an unexpected reason.
+     *
+     * @param testScript the path of the test script
+     * @param cause what went wrong
+     * @return the script, with a ParsingException caused by cause as its
+     * failure
+     */
+    static ParsedScript failed(String testScript, Throwable cause) {
+        ParsedScript script = new ParsedScript();
+        script.testScript = testScript;
+        script.failure = new ParsingException(testScript + ": " + cause);
+        script.failure.initCause(cause);
+        return script;
+    }
+
+    /** @return the path of the test script
+     */
+    String getTestScript() {
+        return testScript;
+    }
+
+    /** @return a source of objects of type TestStep, or null if parsing
+     * failed
+     */
+    TestStepSource getTestSteps() {
+        return testSteps;
+    }
+
+    /** @return the reason parsing failed, or null if it succeeded
+     */
+    ParsingException getFailure() {
+        return failure;
+    }
+} // ParsedScript
+
+}
@@ -0,0 +1,111 @@
+package august;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/** Decides which test scripts of a run are started, and in which order.
+ * <P>
+ * Scripts are started longest first, according to a TimingHistory.  With
+ * several workers this keeps one long script started at the very end from
+ * holding up the whole run while the other workers sit idle.  A script that
+ * is not in the history is assumed to take as long as the average of the
+ * scripts that are.
+ * <P>
+ * Scripts may also be chosen or moved forward according to a ResultHistory,
+ * so that a developer checking a fix finds out quickly whether the scripts
+ * that failed last time pass now.
+ * <P>
+ * All of the methods are class methods, so that they can be used without
+ * instantiating the ScriptScheduler.
+ */
+class ScriptScheduler {
+
+/** Orders test scripts longest first.  Scripts with equal estimates keep
+ * their original order.
+ *
+ * @param testScripts the paths of the test scripts (Strings)
+ * @param history the durations of previous runs
+ * @return a new list containing the same paths, longest first
+ */
+protected static List orderLongestFirst(List testScripts,
+                                        TimingHistory history) {
+    final long[] estimates = new long[testScripts.size()];
+    long known = 0;
+    long total = 0;
+    for (int i = 0; i < estimates.length; i++) {
+        estimates[i] = history.getDuration((String)(testScripts.get(i)));
+        if (estimates[i] >= 0) {
+            known++;
+            total += estimates[i];
+        }
+    }
+    long fallback = (known == 0) ? 0 : total / known;
+
+    // Sort the positions of the scripts rather than the scripts themselves,
+    // so that each estimate is only computed once.
+    List positions = new ArrayList();
+    for (int i = 0; i < estimates.length; i++) {
+        if (estimates[i] < 0) {
+            estimates[i] = fallback;
+        }
+        positions.add(Integer.valueOf(i));
+    }
+    Collections.sort(positions, new Comparator() {
+        public int compare(Object o1, Object o2) {
+            long e1 = estimates[((Integer)o1).intValue()];
+            long e2 = estimates[((Integer)o2).intValue()];
+            return (e1 > e2) ? -1 : ((e1 < e2) ? 1 : 0);
+        }
+    });
+
+    List ordered = new ArrayList();
+    for (int i = 0; i < positions.size(); i++) {
+        ordered.add(testScripts.get(((Integer)(positions.get(i))).intValue()));
+    }
+    return ordered;
+}
+
+/** Moves the test scripts that failed last time to the front.  Otherwise the
+ * scripts keep their order.
+ *
+ * @param testScripts the paths of the test scripts (Strings)
+ * @param history the results of previous runs
+ * @return a new list containing the same paths, failed ones first
+ */
+protected static List orderFailedFirst(List testScripts, ResultHistory history) {
+    List failed = new ArrayList();
+    List others = new ArrayList();
+    for (int i = 0; i < testScripts.size(); i++) {
+        String testScript = (String)(testScripts.get(i));
+        if (history.hasFailed(testScript)) {
+            failed.add(testScript);
+        }
+        else {
+            others.add(testScript);
+        }
+    }
+    failed.addAll(others);
+    return failed;
+}
+
+/** Selects the test scripts that failed last time.
+ *
+ * @param testScripts the paths of the test scripts (Strings)
+ * @param history the results of previous runs
+ * @return a new list containing only the paths of the scripts that failed the
+ * last time they were run, in their original order
+ */
+protected static List selectFailed(List testScripts, ResultHistory history) {
+    List failed = new ArrayList();
+    for (int i = 0; i < testScripts.size(); i++) {
+        String testScript = (String)(testScripts.get(i));
+        if (history.hasFailed(testScript)) {
+            failed.add(testScript);
+        }
+    }
+    return failed;
+}
+
+}
@@ -0,0 +1,106 @@
+package august;
+
+import junit.framework.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ScriptSchedulerTest extends TestCase {
+
+private File logDir;
+
+public ScriptSchedulerTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(ScriptSchedulerTest.class);
+}
+
+protected void setUp() {
+    logDir = new File("scheduler_test_dir");
+    logDir.mkdirs();
+}
+
+protected void tearDown() {
+    new File(logDir, TimingHistory.HISTORY_FILE).delete();
+    new File(logDir, ResultHistory.HISTORY_FILE).delete();
+    logDir.delete();
+}
+
+public void testOrderLongestFirst() {
+    TimingHistory history = new TimingHistory(logDir.getPath());
+    history.record("short", 100);
+    history.record("long", 900);
+    history.record("medium", 500);
+
+    List scripts = new ArrayList();
+    scripts.add("short");
+    scripts.add("new");
+    scripts.add("long");
+    scripts.add("medium");
+
+    // "new" has never been run, so it is estimated at the average (500), and
+    // stays after "medium", which came first in the original order.
+    List ordered = ScriptScheduler.orderLongestFirst(scripts, history);
+    assertEquals("long", ordered.get(0));
+    assertEquals("new", ordered.get(1));
+    assertEquals("medium", ordered.get(2));
+    assertEquals("short", ordered.get(3));
+}
+
+public void testOrderWithoutHistory() {
+    TimingHistory history = new TimingHistory(logDir.getPath());
+    List scripts = new ArrayList();
+    scripts.add("b");
+    scripts.add("a");
+    scripts.add("c");
+    assertEquals(scripts, ScriptScheduler.orderLongestFirst(scripts, history));
+}
+
+public void testSaveAndLoad() {
+    TimingHistory history = new TimingHistory(logDir.getPath());
+    history.record("script", 1000);
+    history.record("script", 2000);
+    try {
+        history.save();
+    }
+    catch (Exception e) {
+        fail(e.getMessage());
+    }
+    TimingHistory loaded = new TimingHistory(logDir.getPath());
+    assertEquals(1500, loaded.getDuration("script"));
+    assertEquals(-1, loaded.getDuration("unknown"));
+}
+
+public void testFailedFirstAndSelectFailed() {
+    ResultHistory history = new ResultHistory(logDir.getPath());
+    TestReport passed = new TestReport("a");
+    TestReport failed = new TestReport("b");
+    failed.addFailure(new ParsingException("b 1 broken"));
+    history.record(passed);
+    history.record(failed);
+    try {
+        history.save();
+    }
+    catch (Exception e) {
+        fail(e.getMessage());
+    }
+    history = new ResultHistory(logDir.getPath());
+
+    List scripts = new ArrayList();
+    scripts.add("a");
+    scripts.add("new");
+    scripts.add("b");
+
+    List ordered = ScriptScheduler.orderFailedFirst(scripts, history);
+    assertEquals("b", ordered.get(0));
+    assertEquals("a", ordered.get(1));
+    assertEquals("new", ordered.get(2));
+
+    List selected = ScriptScheduler.selectFailed(scripts, history);
+    assertEquals(1, selected.size());
+    assertEquals("b", selected.get(0));
+}
+
+}
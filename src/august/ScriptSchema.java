@@ -0,0 +1,135 @@
+package august;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.xerces.parsers.XMLGrammarPreparser;
+import org.apache.xerces.util.XMLGrammarPoolImpl;
+import org.apache.xerces.xni.grammars.XMLGrammarDescription;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.apache.xerces.xni.parser.XMLInputSource;
+
+/** Keeps the compiled XML Schemas against which test scripts are validated.
+ * <P>
+ * Each schema is read and compiled once, into a grammar pool which is then
+ * locked, and shared by every TestScriptParser that validates against that
+ * schema.  A parser given the pool validates each script against the grammar
+ * already in it, instead of reading and compiling the schema again for every
+ * script; and since the pool is locked, grammars named by the scripts
+ * themselves (with xsi:schemaLocation) are never added to it.  A schema is
+ * compiled again only if it has been modified since.
+ * <P>
+ * The grammar of a schema without a target namespace applies to scripts whose
+ * elements have no namespace, so scripts do not need to name the schema.
+ * <P>
+ * All of the methods are class methods, and are synchronized, since parsers
+ * on separate threads share the pools.
+ *
+ * @see TestEngine.AugustProperties#SCHEMA_VALIDATION
+ */
+class ScriptSchema {
+
+/** The SAX feature which turns validation on.
+ */
+protected static final String VALIDATION_FEATURE =
+    "http://xml.org/sax/features/validation";
+
+/** The Xerces feature which turns XML Schema validation on.
+ */
+protected static final String SCHEMA_FEATURE =
+    "http://apache.org/xml/features/validation/schema";
+
+/** The Xerces feature which limits validation to documents for which a
+ * grammar is found, so scripts without a DTD are not reported as invalid.
+ */
+protected static final String DYNAMIC_FEATURE =
+    "http://apache.org/xml/features/validation/dynamic";
+
+/** The Xerces property which holds the grammar pool of a parser.
+ */
+protected static final String GRAMMAR_POOL_PROPERTY =
+    "http://apache.org/xml/properties/internal/grammar-pool";
+
+/** Maps the paths of schemas to CompiledSchema objects.
+ */
+private static Map schemas = new HashMap();
+
+/** Returns the file that holds the schema of test scripts, unless the
+ * scriptSchema property names another one.
+ *
+ * @return the testScript.xsd file in the config subdirectory of the base
+ * directory
+ */
+protected static File getDefaultSchema() {
+    return new File(System.getProperty("base.dir"), "config/testScript.xsd");
+}
+
+/** Returns the locked grammar pool that holds a schema, compiling the schema
+ * if it has not been compiled before, or if it has been modified since.
+ *
+ * @param schema the path of the schema
+ * @return the grammar pool
+ * @throws ParsingException if the schema cannot be read or compiled
+ */
+protected static synchronized XMLGrammarPool getGrammarPool(String schema)
+throws ParsingException {
+    File file = new File(schema);
+    if (!file.isFile()) {
+        throw new ParsingException("Errors processing " + schema
+            + ":\nno such file");
+    }
+    long lastModified = file.lastModified();
+    CompiledSchema compiled = (CompiledSchema)(schemas.get(schema));
+    if (compiled != null && compiled.lastModified == lastModified) {
+        return compiled.pool;
+    }
+
+    XMLGrammarPoolImpl pool = new XMLGrammarPoolImpl();
+    XMLGrammarPreparser preparser = new XMLGrammarPreparser();
+    preparser.registerPreparser(XMLGrammarDescription.XML_SCHEMA, null);
+    preparser.setProperty(GRAMMAR_POOL_PROPERTY, pool);
+    preparser.setFeature(VALIDATION_FEATURE, true);
+    preparser.setFeature(SCHEMA_FEATURE, true);
+    try {
+        preparser.preparseGrammar(XMLGrammarDescription.XML_SCHEMA,
+            new XMLInputSource(null, file.toURI().toString(), null));
+    }
+    catch (java.io.IOException e) {
+        throw new ParsingException("Errors processing " + schema + ":\n"
+            + e.getMessage());
+    }
+    catch (RuntimeException e) {
+        // Xerces reports fatal errors in the schema with an XNIException.
+        throw new ParsingException("Errors processing " + schema + ":\n"
+            + e.getMessage());
+    }
+    pool.lockPool();
+    schemas.put(schema, new CompiledSchema(pool, lastModified));
+    return pool;
+}
+
+/** A grammar pool holding a compiled schema, and the time the schema was last
+ * modified when it was compiled.
+ */
+private static class CompiledSchema {
+
+    /** The locked grammar pool.
+     */
+    private XMLGrammarPool pool;
+
+    /** The time the schema was last modified before it was compiled.
+     */
+    private long lastModified;
+
+    /** Creates a CompiledSchema.
+     *
+     * @param pool the grammar pool
+     * @param lastModified the time the file was last modified
+     */
+    private CompiledSchema(XMLGrammarPool pool, long lastModified) {
+        this.pool = pool;
+        this.lastModified = lastModified;
+    }
+} // CompiledSchema
+
+}
@@ -0,0 +1,136 @@
+package august;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/** Parses every test script of a run before any test is run, using all of the
+ * processors of the machine, so that all of the scripts that cannot be parsed
+ * are found at once, instead of one by one as the run reaches them.
+ * <P>
+ * Each thread has its own TestScriptParser, with the same settings as the
+ * parser of the TestEngine.  Validating the scripts also fills the caches of
+ * parsed scripts (if the scriptCacheDir property is specified) and of utility
+ * scripts, so the run that may follow parses faster.
+ *
+ * @see TestEngine.AugustProperties#VALIDATE
+ */
+class ScriptValidator {
+
+/** The value of the validate property which makes August validate the test
+ * scripts, and then exit.
+ */
+protected static final String ONLY = "only";
+
+/** The value of the validate property which makes August validate the test
+ * scripts, and then run them only if all of them are valid.
+ */
+protected static final String FIRST = "first";
+
+/** Creates the threads on which scripts are parsed.
+ */
+private static final ThreadFactory PARSER_THREADS = new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "August-ScriptValidator");
+        t.setDaemon(true);
+        return t;
+    }
+};
+
+/** The parser whose settings the parser of each thread copies.
+ */
+private TestScriptParser settings;
+
+/** The number of threads.
+ */
+private int threads;
+
+/** The parser of each thread.
+ */
+private ThreadLocal parsers = new ThreadLocal();
+
+/** Creates a ScriptValidator.
+ *
+ * @param settings the parser of the engine, whose settings are copied by the
+ * parsers of the validator
+ * @param threads the number of scripts to parse at the same time
+ */
+protected ScriptValidator(TestScriptParser settings, int threads) {
+    this.settings = settings;
+    this.threads = threads;
+}
+
+/** Parses all of the given scripts, and waits until they have been parsed.
+ *
+ * @param testScripts the paths of the test scripts (Strings)
+ * @return a List of Strings, one for each script that could not be parsed,
+ * made of the path of the script and the reason, in the order of the scripts;
+ * empty if all of the scripts were parsed
+ * @throws InterruptedException if interrupted while waiting
+ */
+protected List validate(List testScripts) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+                                                            PARSER_THREADS);
+    List results = new ArrayList();
+    try {
+        for (int i = 0; i < testScripts.size(); i++) {
+            final String testScript = (String)(testScripts.get(i));
+            results.add(executor.submit(new Callable() {
+                public Object call() throws Exception {
+                    return check(testScript);
+                }
+            }));
+        }
+        List failures = new ArrayList();
+        for (int i = 0; i < results.size(); i++) {
+            String failure;
+            try {
+                failure = (String)(((Future)(results.get(i))).get());
+            }
+            catch (ExecutionException e) {
+                failure = testScripts.get(i) + ": " + e.getCause();
+            }
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+        return failures;
+    }
+    finally {
+        executor.shutdownNow();
+    }
+}
+
+/** Parses one script with the parser of the current thread.
+ *
+ * @param testScript the path of the test script
+ * @return null if the script was parsed, or the path of the script and the
+ * reason why it could not be parsed
+ * @throws org.xml.sax.SAXException if the parser cannot be created
+ */
+private String check(String testScript) throws org.xml.sax.SAXException {
+    TestScriptParser parser = (TestScriptParser)(parsers.get());
+    if (parser == null) {
+        parser = new TestScriptParser(settings);
+        parsers.set(parser);
+    }
+    try {
+        parser.parseTestSteps(testScript);
+        return null;
+    }
+    catch (ParsingException e) {
+        return testScript + ": " + e.getMessage();
+    }
+    catch (RuntimeException e) {
+        // The parser does not expect everything that may be wrong with a
+        // script (for example a missing testSteps section).
+        return testScript + ": " + e;
+    }
+}
+
+}
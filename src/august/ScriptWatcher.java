@@ -0,0 +1,316 @@
+package august;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/** Watches the test directory, and the files the test scripts depend on, and
+ * tells which test scripts have to be run again when some of them change.
+ * <P>
+ * The watcher keeps a dependency graph: for each test script, the files its
+ * steps were parsed from (see TestScriptParser.getDependencies), and for each
+ * of those files, the test scripts that depend on it.  A test script has to be
+ * run again when it is created or modified, or when one of the files it
+ * depends on is.  The directory tree of the test directory is watched for new
+ * test scripts; the directories of the other files are watched as the files
+ * become dependencies.
+ * <P>
+ * Editors often save a file in several steps, so once a change has been seen
+ * the watcher waits until no further changes come for SETTLE_TIME
+ * milliseconds, and then reports all of them at once.
+ *
+ * @see TestEngine.AugustProperties#WATCH
+ */
+class ScriptWatcher {
+
+/** The number of milliseconds without changes after which the changes seen
+ * so far are reported.
+ */
+protected static final long SETTLE_TIME = 200;
+
+/** Tells of changes to the watched directories.
+ */
+private WatchService service;
+
+/** Maps the WatchKeys of the watched directories to the directories (Paths).
+ */
+private Map directories = new HashMap();
+
+/** The watched directories (absolute Paths).
+ */
+private Set watched = new HashSet();
+
+/** The root of the test directory tree.
+ */
+private Path testDir;
+
+/** The extensions of test script files (Strings).
+ */
+private List extensions;
+
+/** Maps test scripts (paths as given to setDependencies) to the absolute paths
+ * of the files they depend on (Lists of Strings).
+ */
+private Map dependencies = new HashMap();
+
+/** Maps the absolute paths of files to the test scripts that depend on them
+ * (Sets of Strings).
+ */
+private Map dependents = new HashMap();
+
+/** Starts watching a test directory tree.
+ *
+ * @param testDir the root of the test directory tree
+ * @param extensions the extensions of test script files (Strings)
+ * @throws IOException if the directories cannot be watched
+ */
+protected ScriptWatcher(String testDir, List extensions) throws IOException {
+    this.testDir = Paths.get(testDir);
+    this.extensions = extensions;
+    service = FileSystems.getDefault().newWatchService();
+    watchTree(this.testDir);
+}
+
+/** Records the files a test script depends on, replacing those recorded
+ * before.  The directories of the files are watched from now on.
+ *
+ * @param testScript the path of the test script
+ * @param files the paths (Strings) of the files its steps were parsed from;
+ * may be null if they are not known
+ * @throws IOException if a directory cannot be watched
+ */
+protected void setDependencies(String testScript, List files)
+throws IOException {
+    forget(testScript);
+    List paths = new ArrayList();
+    for (int i = 0; files != null && i < files.size(); i++) {
+        File file = new File((String)(files.get(i))).getAbsoluteFile();
+        String path = normalize(file);
+        if (paths.contains(path)) {
+            continue;
+        }
+        paths.add(path);
+        Set scripts = (Set)(dependents.get(path));
+        if (scripts == null) {
+            scripts = new HashSet();
+            dependents.put(path, scripts);
+        }
+        scripts.add(testScript);
+        if (file.getParentFile() != null) {
+            watch(file.getParentFile().toPath());
+        }
+    }
+    dependencies.put(testScript, paths);
+}
+
+/** Waits until some files change, and returns the test scripts that have to
+ * be run again because of those changes.
+ *
+ * @return the paths of the test scripts (Strings), at least one
+ * @throws InterruptedException if interrupted while waiting
+ * @throws IOException if new directories cannot be watched
+ */
+protected List awaitChanges() throws InterruptedException, IOException {
+    while (true) {
+        Set changed = new LinkedHashSet();
+        Set created = new LinkedHashSet();
+        WatchKey key = service.take();
+        do {
+            collect(key, changed, created);
+            key = service.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+        } while (key != null);
+
+        Set scripts = new LinkedHashSet();
+        for (Iterator i = changed.iterator(); i.hasNext(); ) {
+            Path path = (Path)(i.next());
+            Set affected = (Set)(dependents.get(normalize(path.toFile())));
+            if (affected != null) {
+                scripts.addAll(affected);
+            }
+        }
+        for (Iterator i = created.iterator(); i.hasNext(); ) {
+            Path path = (Path)(i.next());
+            if (isTestScript(path) && !dependencies.containsKey(path.toString())) {
+                scripts.add(path.toString());
+            }
+        }
+        // Deleted test scripts cannot be run again.
+        List testScripts = new ArrayList();
+        for (Iterator i = scripts.iterator(); i.hasNext(); ) {
+            String testScript = (String)(i.next());
+            if (new File(testScript).isFile()) {
+                testScripts.add(testScript);
+            }
+            else {
+                forget(testScript);
+            }
+        }
+        if (!testScripts.isEmpty()) {
+            return testScripts;
+        }
+    }
+}
+
+/** Stops watching.
+ */
+protected void close() {
+    try {
+        service.close();
+    }
+    catch (IOException e) {
+        // Nothing is watched anymore anyway.
+    }
+}
+
+/** Takes the events of a watched directory.
+ *
+ * @param key the key of the directory
+ * @param changed receives the Paths of the files that were modified or
+ * deleted
+ * @param created receives the Paths of the files that were created, including
+ * the files in new directories of the test directory tree
+ * @throws IOException if a new directory cannot be watched
+ */
+private void collect(WatchKey key, Set changed, Set created)
+throws IOException {
+    Path directory = (Path)(directories.get(key));
+    List events = key.pollEvents();
+    if (!key.reset()) {
+        // The directory is gone; it is watched again once it is recreated in
+        // the test directory tree, or holds a dependency again.
+        directories.remove(key);
+        watched.remove(directory.toAbsolutePath().normalize());
+    }
+    for (int i = 0; i < events.size(); i++) {
+        WatchEvent event = (WatchEvent)(events.get(i));
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            // Changes were lost; assume that everything has changed.
+            for (Iterator j = dependents.keySet().iterator(); j.hasNext(); ) {
+                changed.add(Paths.get((String)(j.next())));
+            }
+            continue;
+        }
+        Path path = directory.resolve((Path)(event.context()));
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+            if (path.toFile().isDirectory() && isInTestDir(path)) {
+                watchTree(path);
+                addFiles(path.toFile(), created);
+            }
+            else {
+                created.add(path);
+            }
+        }
+        changed.add(path);
+    }
+}
+
+/** Adds all of the files in a directory tree.
+ *
+ * @param file the root of the tree
+ * @param files receives the Paths of the files
+ */
+private static void addFiles(File file, Set files) {
+    File[] children = file.listFiles();
+    for (int i = 0; children != null && i < children.length; i++) {
+        if (children[i].isDirectory()) {
+            addFiles(children[i], files);
+        }
+        else {
+            files.add(children[i].toPath());
+        }
+    }
+}
+
+/** Forgets the files a test script depends on.
+ *
+ * @param testScript the path of the test script
+ */
+private void forget(String testScript) {
+    List paths = (List)(dependencies.remove(testScript));
+    for (int i = 0; paths != null && i < paths.size(); i++) {
+        Set scripts = (Set)(dependents.get(paths.get(i)));
+        scripts.remove(testScript);
+        if (scripts.isEmpty()) {
+            dependents.remove(paths.get(i));
+        }
+    }
+}
+
+/** Watches a directory and all of the directories in it.
+ *
+ * @param root the directory
+ * @throws IOException if a directory cannot be watched
+ */
+private void watchTree(Path root) throws IOException {
+    watch(root);
+    File[] children = root.toFile().listFiles();
+    for (int i = 0; children != null && i < children.length; i++) {
+        if (children[i].isDirectory()) {
+            watchTree(root.resolve(children[i].getName()));
+        }
+    }
+}
+
+/** Watches a directory, unless it is already watched.
+ *
+ * @param directory the directory
+ * @throws IOException if the directory cannot be watched
+ */
+private void watch(Path directory) throws IOException {
+    if (watched.add(directory.toAbsolutePath().normalize())) {
+        WatchKey key = directory.register(service, new WatchEvent.Kind[] {
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE});
+        directories.put(key, directory);
+    }
+}
+
+/** @return 'true' if path is in the test directory tree
+ */
+private boolean isInTestDir(Path path) {
+    return path.toAbsolutePath().normalize().startsWith(
+        testDir.toAbsolutePath().normalize());
+}
+
+/** @return 'true' if path is a test script file in the test directory tree
+ */
+private boolean isTestScript(Path path) {
+    if (!isInTestDir(path) || !path.toFile().isFile()) {
+        return false;
+    }
+    for (int i = 0; i < extensions.size(); i++) {
+        if (FileUtilities.hasExtension(path.toFile(),
+                                       (String)(extensions.get(i)))) {
+            return true;
+        }
+    }
+    return false;
+}
+
+/** Turns the path of a file into the form used as a key of the dependency
+ * graph.
+ *
+ * @param file the file
+ * @return its absolute, normalized path
+ */
+private static String normalize(File file) {
+    return file.toPath().toAbsolutePath().normalize().toString();
+}
+
+}
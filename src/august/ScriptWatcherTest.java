@@ -0,0 +1,100 @@
+package august;
+
+import junit.framework.*;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ScriptWatcherTest extends TestCase {
+
+private File dir;
+
+private File utilDir;
+
+public ScriptWatcherTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(ScriptWatcherTest.class);
+}
+
+protected void setUp() throws IOException {
+    dir = new File("watcher_test_dir");
+    utilDir = new File("watcher_test_util_dir");
+    new File(dir, "sub").mkdirs();
+    utilDir.mkdirs();
+    write(new File(dir, "a.xml"), "a");
+    write(new File(dir, "sub/b.xml"), "b");
+    write(new File(utilDir, "util.xml"), "util");
+}
+
+protected void tearDown() {
+    delete(dir);
+    delete(utilDir);
+}
+
+public void testChangedDependency() throws Exception {
+    ScriptWatcher watcher = new ScriptWatcher(dir.getPath(), extensions());
+    try {
+        String a = new File(dir, "a.xml").getPath();
+        String b = new File(dir, "sub/b.xml").getPath();
+        watcher.setDependencies(a, paths(new String[] {a}));
+        watcher.setDependencies(b, paths(new String[] {
+            b, new File(utilDir, "util.xml").getPath()}));
+
+        write(new File(utilDir, "util.xml"), "changed");
+        assertEquals(paths(new String[] {b}), watcher.awaitChanges());
+
+        write(new File(dir, "a.xml"), "changed");
+        assertEquals(paths(new String[] {a}), watcher.awaitChanges());
+    }
+    finally {
+        watcher.close();
+    }
+}
+
+public void testNewScript() throws Exception {
+    ScriptWatcher watcher = new ScriptWatcher(dir.getPath(), extensions());
+    try {
+        write(new File(dir, "notes.txt"), "not a script");
+        File c = new File(dir, "sub/c.xml");
+        write(c, "c");
+        assertEquals(paths(new String[] {c.getPath()}), watcher.awaitChanges());
+    }
+    finally {
+        watcher.close();
+    }
+}
+
+private static List extensions() {
+    List extensions = new ArrayList();
+    extensions.add(".xml");
+    return extensions;
+}
+
+private static List paths(String[] paths) {
+    List list = new ArrayList();
+    for (int i = 0; i < paths.length; i++) {
+        list.add(paths[i]);
+    }
+    return list;
+}
+
+private static void write(File file, String contents) throws IOException {
+    FileWriter out = new FileWriter(file);
+    out.write(contents);
+    out.close();
+}
+
+private static void delete(File file) {
+    File[] children = file.listFiles();
+    for (int i = 0; children != null && i < children.length; i++) {
+        delete(children[i]);
+    }
+    file.delete();
+}
+
+}
@@ -0,0 +1,165 @@
+package august;
+
+import java.awt.Window;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/** Decides when the tested application has finished shutting down.
+ * <P>
+ * The application is considered gone once none of its windows are displayable
+ * any more (i.e. they have all been disposed), and all of the non-daemon
+ * threads it started have stopped.  The threads of the application are the
+ * threads that are alive now but were not alive when the detector was created,
+ * so a ShutdownDetector should be created right before the application is
+ * started.  The threads of the AWT toolkit itself (whose names start with
+ * "AWT-") are not counted, since the toolkit outlives the application.
+ * <P>
+ * When several instances of the application run in the same JVM, each has its
+ * own detector, which only looks at the windows of the instance's window scope,
+ * and at the threads whose context class loader is the instance's class loader
+ * (the threads of the other instances cannot be told apart otherwise).
+ */
+class ShutdownDetector {
+
+/** How often the windows and threads are checked while waiting.
+ */
+protected static final long POLL_INTERVAL = 50;
+
+/** The prefix of the names of the threads that belong to the AWT toolkit.
+ */
+private static final String AWT_THREAD_PREFIX = "AWT-";
+
+/** The name of the class of the hidden frame that Swing uses as the owner of
+ * dialogs created without one.  It is disposed by Swing itself, some time
+ * after all of the dialogs it owns.
+ */
+private static final String SHARED_OWNER_FRAME =
+    "javax.swing.SwingUtilities$SharedOwnerFrame";
+
+/** The threads that were alive before the application was started.
+ */
+private Set threadsBefore;
+
+/** The windows of the application instance, or null if every window belongs
+ * to the application.
+ */
+private WindowScope scope;
+
+/** Creates a ShutdownDetector, taking note of the threads that are alive now.
+ * <P>
+ * Called by the TestEngine right before the tested application is started.
+ */
+protected ShutdownDetector() {
+    this(null);
+}
+
+/** Creates a ShutdownDetector for one of several instances of the
+ * application, taking note of the threads that are alive now.
+ *
+ * @param scope the windows of the instance, or null if every window belongs
+ * to the application
+ */
+protected ShutdownDetector(WindowScope scope) {
+    this.scope = scope;
+    threadsBefore = new HashSet(Thread.getAllStackTraces().keySet());
+}
+
+/** Blocks until the application has shut down, or until the timeout elapses.
+ *
+ * @param timeout the maximum number of milliseconds to wait
+ * @return 'true' if the application has shut down, 'false' if the timeout
+ * elapsed first
+ */
+protected boolean await(long timeout) {
+    long deadline = System.currentTimeMillis() + timeout;
+    while (!isShutDown()) {
+        if (System.currentTimeMillis() >= deadline) {
+            return false;
+        }
+        try {
+            Thread.sleep(POLL_INTERVAL);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    return true;
+}
+
+/** Describes what is still keeping the application from being shut down.
+ *
+ * @return the titles or names of the windows that are still displayable and
+ * the names of the application threads that are still alive
+ */
+protected String describeRemains() {
+    StringBuffer remains = new StringBuffer("windows:");
+    Window[] windows = getWindows();
+    for (int i = 0; i < windows.length; i++) {
+        if (isLive(windows[i])) {
+            remains.append(' ').append(windows[i].getName());
+        }
+    }
+    remains.append(" threads:");
+    Iterator threads = getApplicationThreads().iterator();
+    while (threads.hasNext()) {
+        remains.append(' ').append(((Thread)(threads.next())).getName());
+    }
+    return remains.toString();
+}
+
+/** Checks whether the application has shut down.
+ *
+ * @return 'true' if no windows are displayable and no application threads are
+ * alive
+ */
+private boolean isShutDown() {
+    Window[] windows = getWindows();
+    for (int i = 0; i < windows.length; i++) {
+        if (isLive(windows[i])) {
+            return false;
+        }
+    }
+    return getApplicationThreads().isEmpty();
+}
+
+/** Returns the windows of the application.
+ *
+ * @return the windows of the scope, or all windows if there is no scope
+ */
+private Window[] getWindows() {
+    return (scope != null) ? scope.getWindows() : Window.getWindows();
+}
+
+/** Checks whether a window still has to be disposed.
+ *
+ * @param window the window
+ * @return 'true' if the window is displayable and is not Swing's shared owner
+ * frame
+ */
+private static boolean isLive(Window window) {
+    return window.isDisplayable()
+        && !window.getClass().getName().equals(SHARED_OWNER_FRAME);
+}
+
+/** Finds the live non-daemon threads started since this detector was created.
+ *
+ * @return a set of Thread objects
+ */
+private Set getApplicationThreads() {
+    Set threads = new HashSet();
+    Iterator i = Thread.getAllStackTraces().keySet().iterator();
+    while (i.hasNext()) {
+        Thread t = (Thread)(i.next());
+        if (t.isAlive() && !t.isDaemon() && !threadsBefore.contains(t)
+                && !t.getName().startsWith(AWT_THREAD_PREFIX)
+                && (scope == null
+                    || t.getContextClassLoader() == scope.getClassLoader())) {
+            threads.add(t);
+        }
+    }
+    return threads;
+}
+
+}
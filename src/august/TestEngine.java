@@ -1,11 +1,17 @@
 package august;
 
 import java.awt.AWTException;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Iterator;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.xml.sax.SAXException;
 
@@ -31,7 +37,7 @@ import org.xml.sax.SAXException;
  * line argument.  If this command line argument is present, August will run
  * tests from the directory specified with this argument.
  * log.dir -  The log directory.  August will place its outputs there.
- * The log directory may alternatively be specified with the -l or --logfile
+ * The log directory may alternatively be specified with the -l or --logdir
  * command line argument.  If this command line argument is present, August
  * will write logs to the directory specified with this argument.
  *
@@ -59,6 +65,65 @@ private String testScriptFileExtension;
  * application.
  */
 private TestableApplication application;
+
+/** True if the tested application has been started and not yet exited.
+ */
+private boolean applicationRunning = false;
+
+/** The number of tests run on the tested application since it was last
+ * started.
+ */
+private int runsSinceStart = 0;
+
+/** Decides when a freshly started application is ready to be tested, or null
+ * if the engine should simply wait for startDelay milliseconds.
+ */
+private ReadinessGate readinessGate;
+
+/** Decides when the tested application has shut down; created each time the
+ * application is started.
+ */
+private ShutdownDetector shutdownDetector;
+
+/** Executes test steps that have a deadline.
+ */
+private Watchdog watchdog = new Watchdog();
+
+/** True if a step of the current test did not complete before its deadline;
+ * the application is then exited (as far as possible) and started again.
+ */
+private boolean applicationHung = false;
+
+/** True if the event dispatch thread stayed blocked after a hung application
+ * was exited.  Nothing that is run in this JVM can be tested properly after
+ * that, whichever engine saw it: a worker JVM exits so that a fresh one takes
+ * its place, and any other run reports its remaining tests as not run.
+ */
+private static volatile boolean eventDispatchThreadBlocked = false;
+
+/** The windows of the instance of the tested application run by this engine,
+ * or null if this engine is the only one running tests in this JVM.
+ */
+private WindowScope scope;
+
+/** Held by the engine that drives the GUI (by starting its application or by
+ * executing a test step), when several engines run instances of the tested
+ * application in this JVM.  There is only one mouse and keyboard, so only one
+ * engine can use them at a time.
+ */
+private static final Object INPUT_LOCK = new Object();
+
+/** The longest time an engine waits for the events caused by a step to be
+ * processed before it lets another engine drive the GUI.
+ */
+private static final long SETTLE_TIMEOUT = 1000;
+
+/** The system property which is 'true' in a worker JVM.  The WorkerPool sets
+ * it on the command line of every worker it starts (along with the --worker
+ * argument), so that a worker knows it is one before it reads the config file,
+ * which may well ask for several jobs.
+ */
+protected static final String WORKER_PROPERTY = "august.worker";
     
 /** Creates an instance of the TestEngine class.
  * <P>
@@ -83,7 +148,7 @@ public TestEngine(){
  * <BR>-The path to the config file may be specified with the -c or
  * --configfile (the path must include the file name).
  * <BR>-The test directory may be specified with the -t or --testdir.
- * <BR>-The log directory may be specified with the -l or --logfile.
+ * <BR>-The log directory may be specified with the -l or --logdir.
  */
 public static void main(String[] args) {
     TestEngine engine = new TestEngine();
@@ -91,13 +156,25 @@ public static void main(String[] args) {
     String configfile = null;
     String testdir = null;
     String logdir = null;
+    String jobs = null;
+    boolean worker = Boolean.getBoolean(WORKER_PROPERTY);
+    boolean rerunFailed = false;
+    boolean failedFirst = false;
+    String validate = null;
+    boolean watch = false;
     if (args.length > 0) {
     // Set up commandline options.
-    Option opt[] = new Option[4];
+    Option opt[] = new Option[10];
     opt[0] = new Option(false, Option.REQUIRES_ARGUMENT, 'c', "configfile");
     opt[1] = new Option(false, Option.REQUIRES_ARGUMENT, 't', "testdir");
     opt[2] = new Option(false, Option.REQUIRES_ARGUMENT, 'l', "logdir");
     opt[3] = new Option(false, Option.NO_ARGUMENT,       'h', "help");
+    opt[4] = new Option(false, Option.REQUIRES_ARGUMENT, 'j', "jobs");
+    opt[5] = new Option(false, Option.NO_ARGUMENT,       'w', "worker");
+    opt[6] = new Option(false, Option.NO_ARGUMENT,       'r', "rerunfailed");
+    opt[7] = new Option(false, Option.NO_ARGUMENT,       'f', "failedfirst");
+    opt[8] = new Option(false, Option.REQUIRES_ARGUMENT, 'v', "validate");
+    opt[9] = new Option(false, Option.NO_ARGUMENT,       'W', "watch");
 
     OptParser optParser = new OptParser(opt);
     try {
@@ -121,7 +198,31 @@ public static void main(String[] args) {
                     break;
 
                 case 'l': // handle the logdir option
-                    testdir = optParser.getOptionArg();
+                    logdir = optParser.getOptionArg();
+                    break;
+
+                case 'j': // handle the jobs option
+                    jobs = optParser.getOptionArg();
+                    break;
+
+                case 'w': // handle the worker option
+                    worker = true;
+                    break;
+
+                case 'r': // handle the rerunfailed option
+                    rerunFailed = true;
+                    break;
+
+                case 'f': // handle the failedfirst option
+                    failedFirst = true;
+                    break;
+
+                case 'v': // handle the validate option
+                    validate = optParser.getOptionArg();
+                    break;
+
+                case 'W': // handle the watch option
+                    watch = true;
                     break;
 
                 case 'h': // handle the help option
@@ -130,7 +231,7 @@ public static void main(String[] args) {
                     break;
 
                 default: // catch anything else
-                    System.out.println("Unrecognized option: " + option);
+                    System.out.println("Unrecognized option: " + (char)option);
                     printHelp();
                     System.exit(1);
                     break;
@@ -153,11 +254,69 @@ public static void main(String[] args) {
             configfile = f.getPath();
         }
         engine.loadProperties(configfile);
-        engine.initLogger(logdir);
-        engine.initTestScriptParser();
-        engine.initTestStepCreator();
-        engine.initRobot();
-        engine.initApplication();
+        if (jobs != null) {
+            engine.properties.setProperty(AugustProperties.JOBS, jobs);
+        }
+        // A worker shares the config file of the JVM that started it, but
+        // must run its tests itself rather than start workers of its own.
+        if (worker) {
+            engine.properties.setProperty(AugustProperties.JOBS, "1");
+        }
+        if (rerunFailed) {
+            engine.properties.setProperty(AugustProperties.RERUN_FAILED, "true");
+        }
+        if (failedFirst) {
+            engine.properties.setProperty(AugustProperties.FAILED_FIRST, "true");
+        }
+        if (validate != null) {
+            engine.properties.setProperty(AugustProperties.VALIDATE, validate);
+        }
+        if (watch) {
+            engine.properties.setProperty(AugustProperties.WATCH, "true");
+        }
+        watch = Boolean.valueOf(engine.properties.getProperty(
+            AugustProperties.WATCH)).booleanValue();
+        if (watch && (engine.getJobs() > 1 || engine.getInstances() > 1)) {
+            throw new IllegalArgumentException(AugustProperties.WATCH
+                + " runs the tests in this JVM, one at a time; it cannot be"
+                + " combined with " + AugustProperties.JOBS + " or "
+                + AugustProperties.INSTANCES);
+        }
+        validate = engine.properties.getProperty(AugustProperties.VALIDATE, "")
+                       .trim();
+        if (!validate.equals("") && !validate.equals(ScriptValidator.ONLY)
+                && !validate.equals(ScriptValidator.FIRST)) {
+            throw new IllegalArgumentException(AugustProperties.VALIDATE
+                + " must be " + ScriptValidator.ONLY + " or "
+                + ScriptValidator.FIRST + "; " + validate + " is not");
+        }
+        String compactExtension = engine.properties.getProperty(
+            AugustProperties.COMPACT_SCRIPT_FILE_EXTENSION);
+        if (compactExtension != null
+                && !CompactScript.isCompact(compactExtension)) {
+            throw new IllegalArgumentException(
+                AugustProperties.COMPACT_SCRIPT_FILE_EXTENSION + " must end with "
+                + CompactScript.EXTENSION + "; " + compactExtension + " does not");
+        }
+        // A worker JVM sends its reports back to the JVM that started it,
+        // and the JVM that starts workers does not run any tests itself.
+        if (!worker) {
+            engine.initLogger(logdir);
+        }
+        // Validating scripts takes a parser, but does not touch the GUI.
+        if (worker || engine.getJobs() <= 1 || !validate.equals("")) {
+            engine.initTestScriptParser();
+            engine.initTestStepCreator();
+        }
+        if ((worker || engine.getJobs() <= 1)
+                && !validate.equals(ScriptValidator.ONLY)) {
+            engine.initRobot();
+            engine.initComponentWait();
+            // Several instances each load their own copy of the application.
+            if (worker || engine.getInstances() <= 1) {
+                engine.initApplication();
+            }
+        }
         engine.setTestScriptFileExtension();
     }
     catch (Exception e) {
@@ -168,32 +327,412 @@ public static void main(String[] args) {
         System.exit(1);
     }
 
+    if (worker) {
+        engine.runWorker();
+        return;
+    }
+
     // Run tests
     if (testdir == null) {
         testdir = System.getProperty("test.dir");
     }
-    String testScript;
-    TestReport report;
-    Iterator testScripts =
-            FileUtilities.getFilesWithExtension(testdir,
-                    engine.testScriptFileExtension).iterator();
-    while(testScripts.hasNext()) {
-        testScript = (String)(testScripts.next());
-        report = engine.runTest(testScript);
-        engine.logger.logTestReport(report);
+    List testScripts = FileUtilities.getFilesWithExtension(testdir,
+                    engine.testScriptFileExtension);
+    String compactExtension = engine.properties.getProperty(
+        AugustProperties.COMPACT_SCRIPT_FILE_EXTENSION);
+    if (compactExtension != null) {
+        testScripts.addAll(FileUtilities.getFilesWithExtension(testdir,
+                               compactExtension));
+    }
+    if (Boolean.valueOf(engine.properties.getProperty(
+            AugustProperties.LONGEST_FIRST, "true")).booleanValue()) {
+        testScripts = ScriptScheduler.orderLongestFirst(testScripts,
+                          engine.logger.getTimingHistory());
+    }
+    if (Boolean.valueOf(engine.properties.getProperty(
+            AugustProperties.RERUN_FAILED)).booleanValue()) {
+        testScripts = ScriptScheduler.selectFailed(testScripts,
+                          engine.logger.getResultHistory());
+    }
+    else if (Boolean.valueOf(engine.properties.getProperty(
+            AugustProperties.FAILED_FIRST)).booleanValue()) {
+        testScripts = ScriptScheduler.orderFailedFirst(testScripts,
+                          engine.logger.getResultHistory());
+    }
+    if (!validate.equals("")) {
+        boolean valid = engine.validateScripts(testScripts);
+        if (validate.equals(ScriptValidator.ONLY)) {
+            System.exit(valid ? 0 : 1);
+        }
+        if (!valid) {
+            System.out.println("August aborting; " +
+                "some of the test scripts cannot be parsed");
+            System.exit(1);
+        }
+    }
+    if (watch) {
+        engine.watch(testdir, testScripts);
+    }
+    else if (engine.getJobs() > 1) {
+        new WorkerPool(engine.getJobs(), engine.properties, configfile,
+                       engine.logger).run(testScripts);
+    }
+    else if (engine.getInstances() > 1) {
+        engine.runInstances(testScripts);
+    }
+    else {
+        engine.runTests(testScripts);
     }
     engine.logger.setMoreTestReportsComing(false);
 }
 
+/** Runs tests one by one in this JVM, and forwards their reports to the
+ * logger.
+ * <P>
+ * Unless the parseAhead property is 0, the test scripts are opened ahead of
+ * time by a ScriptPrefetcher, while the preceding tests run; their steps are
+ * still created as they are run.
+ *
+ * @param testScripts a list of test script paths (Strings)
+ */
+private void runTests(List testScripts) {
+    int parseAhead = Integer.parseInt(
+        properties.getProperty(AugustProperties.PARSE_AHEAD, "1"));
+    ScriptPrefetcher prefetcher = null;
+    if (parseAhead > 0) {
+        try {
+            prefetcher = new ScriptPrefetcher(testScripts, parseAhead, parser);
+            prefetcher.start();
+        }
+        catch (SAXException e) {
+            // Parse each script right before running it instead.
+            e.printStackTrace();
+            prefetcher = null;
+        }
+    }
+
+    TestReport report;
+    for (int i = 0; i < testScripts.size(); i++) {
+        if (eventDispatchThreadBlocked) {
+            reportNotRun(testScripts.subList(i, testScripts.size()));
+            break;
+        }
+        if (prefetcher == null) {
+            report = runTest((String)(testScripts.get(i)));
+        }
+        else {
+            try {
+                report = runTest(prefetcher.next());
+            }
+            catch (InterruptedException e) {
+                // Nobody is expected to interrupt the main thread; if it
+                // happens anyway, stop running tests.
+                break;
+            }
+        }
+        logger.logTestReport(report);
+    }
+    stopApplication(null);
+}
+
+/** Reports tests that are not run because the event dispatch thread is
+ * blocked.  The applications started after that would not get any events, and
+ * the threads of the steps that were given up on may still be driving the
+ * robot.
+ *
+ * @param testScripts the test script paths (Strings)
+ */
+private void reportNotRun(List testScripts) {
+    System.out.println("August aborting; the event dispatch thread is blocked, "
+        + "so the remaining " + testScripts.size() + " test(s) are not run");
+    for (int i = 0; i < testScripts.size(); i++) {
+        String testScript = (String)(testScripts.get(i));
+        TestReport report = new TestReport(testScript);
+        report.addFailure(new TestReport.NotRunFailure(testScript
+            + " not run; the event dispatch thread was left blocked by a hung"
+            + " application"));
+        logger.logTestReport(report);
+    }
+}
+
+/** Runs the tests, and then runs them again as they change, until August is
+ * stopped.
+ * <P>
+ * Each script is parsed (completely) right before it is run, by the parser
+ * of the engine, so that the files it depends on are known; the
+ * ScriptWatcher then tells which scripts those files affect.  Only those
+ * scripts are parsed again, and utility scripts that have not changed are not
+ * parsed again at all (see UtilityScriptCache).  The application is only
+ * stopped when a test requires it (see releaseApplication).
+ *
+ * @param testDir the root of the test directory tree
+ * @param testScripts the test scripts to run first (Strings)
+ */
+private void watch(String testDir, List testScripts) {
+    List extensions = new ArrayList();
+    extensions.add(testScriptFileExtension);
+    String compactExtension =
+        properties.getProperty(AugustProperties.COMPACT_SCRIPT_FILE_EXTENSION);
+    if (compactExtension != null) {
+        extensions.add(compactExtension);
+    }
+    ScriptWatcher watcher = null;
+    try {
+        watcher = new ScriptWatcher(testDir, extensions);
+        while (true) {
+            long start = System.currentTimeMillis();
+            int failed = 0;
+            for (int i = 0; i < testScripts.size(); i++) {
+                if (eventDispatchThreadBlocked) {
+                    reportNotRun(testScripts.subList(i, testScripts.size()));
+                    return;
+                }
+                String testScript = (String)(testScripts.get(i));
+                ScriptPrefetcher.ParsedScript script =
+                    ScriptPrefetcher.ParsedScript.parse(parser, testScript);
+                watcher.setDependencies(testScript, parser.getDependencies());
+                TestReport report = runTest(script);
+                if (!report.isTestPassed()) {
+                    failed++;
+                }
+                logger.logTestReport(report);
+            }
+            System.out.println("August watching; ran " + testScripts.size()
+                + " test(s) in " + (System.currentTimeMillis() - start)
+                + " ms, " + failed + " failed; waiting for changes in "
+                + testDir);
+            testScripts = watcher.awaitChanges();
+        }
+    }
+    catch (InterruptedException e) {
+        // Stop watching.
+    }
+    catch (IOException e) {
+        System.out.println("August aborting; cannot watch " + testDir);
+        e.printStackTrace();
+    }
+    finally {
+        if (watcher != null) {
+            watcher.close();
+        }
+        stopApplication(null);
+    }
+}
+
+/** Parses all of the test scripts before any of them is run, on as many
+ * threads as there are processors, and prints the reason for each script
+ * that cannot be parsed.
+ *
+ * @param testScripts a list of test script paths (Strings)
+ * @return 'true' if all of the scripts were parsed
+ * @see ScriptValidator
+ */
+private boolean validateScripts(List testScripts) {
+    long start = System.currentTimeMillis();
+    List failures;
+    try {
+        failures = new ScriptValidator(parser,
+            Runtime.getRuntime().availableProcessors()).validate(testScripts);
+    }
+    catch (InterruptedException e) {
+        System.out.println("August validation; interrupted");
+        return false;
+    }
+    for (int i = 0; i < failures.size(); i++) {
+        System.out.println("August validation; " + failures.get(i));
+    }
+    System.out.println("August validation; "
+        + (testScripts.size() - failures.size()) + " of " + testScripts.size()
+        + " test scripts parsed in "
+        + (System.currentTimeMillis() - start) + " ms");
+    return failures.isEmpty();
+}
+
+/** Runs tests on several instances of the tested application at once, all in
+ * this JVM, and forwards their reports to the logger.
+ * <P>
+ * Each instance is run by an engine of its own, on a thread of its own, and is
+ * loaded by an IsolatingClassLoader of its own, so the instances do not share
+ * any static state.  Each engine takes the next script that nobody has taken
+ * yet, until there are none left.  The test steps of an engine only find the
+ * components in the windows of its own instance (see WindowScope).
+ * <P>
+ * Since there is only one mouse and keyboard, the engines take turns starting
+ * their applications and executing test steps; what runs at the same time is
+ * everything else: waiting for applications to become ready, waiting before
+ * retries, and shutting applications down.
+ *
+ * @param testScripts a list of test script paths (Strings)
+ * @see TestEngine.AugustProperties#INSTANCES
+ */
+private void runInstances(List testScripts) {
+    final Queue queue = new ConcurrentLinkedQueue(testScripts);
+    Thread[] threads = new Thread[getInstances()];
+    for (int i = 0; i < threads.length; i++) {
+        final TestEngine instance;
+        try {
+            instance = createInstance();
+        }
+        catch (Exception e) {
+            // The instances that have been created can run all of the tests.
+            System.out.println("August warning; could not create instance "
+                + (i + 1) + " of the tested application");
+            e.printStackTrace();
+            break;
+        }
+        threads[i] = new Thread("August-Instance-" + (i + 1)) {
+            public void run() {
+                instance.runInstance(queue);
+            }
+        };
+        // Threads started by the application inherit its class loader, which
+        // tells them apart from the threads of the other instances.
+        threads[i].setContextClassLoader(instance.scope.getClassLoader());
+        threads[i].start();
+    }
+    for (int i = 0; i < threads.length; i++) {
+        while (threads[i] != null && threads[i].isAlive()) {
+            try {
+                threads[i].join();
+            }
+            catch (InterruptedException e) {
+                // Keep waiting; the logger must not be told that no more
+                // reports are coming while engines are still running tests.
+            }
+        }
+    }
+    // If not even one instance could be created, then no script has been run.
+    TestReport report;
+    String testScript;
+    while ((testScript = (String)(queue.poll())) != null) {
+        report = new TestReport(testScript);
+        report.addFailure(new ApplicationException(testScript
+            + " no instance of the tested application could be created"));
+        logger.logTestReport(report);
+    }
+}
+
+/** Creates an engine that runs one of several instances of the tested
+ * application in this JVM.  The new engine shares the properties and the
+ * logger of this one.
+ *
+ * @return the new engine
+ * @throws Exception if the parser or the application cannot be created
+ */
+private TestEngine createInstance() throws Exception {
+    TestEngine instance = new TestEngine();
+    instance.properties = properties;
+    instance.logger = logger;
+    instance.testScriptFileExtension = testScriptFileExtension;
+    instance.initTestScriptParser();
+    ClassLoader loader = new IsolatingClassLoader(
+        properties.getProperty(AugustProperties.APPLICATION_CLASS_PATH,
+                               System.getProperty("java.class.path")),
+        properties.getProperty(AugustProperties.TESTABLE_APPLICATION),
+        TestEngine.class.getClassLoader());
+    instance.scope = new WindowScope(loader);
+    instance.initApplication(loader);
+    return instance;
+}
+
+/** Runs tests from a shared queue until it is empty.  Called on the thread of
+ * an engine created by createInstance.
+ *
+ * @param testScripts test script paths (Strings) that no engine has run yet
+ */
+private void runInstance(Queue testScripts) {
+    ObjectFinder.setScope(scope);
+    String testScript;
+    while ((testScript = (String)(testScripts.poll())) != null) {
+        if (eventDispatchThreadBlocked) {
+            List notRun = new ArrayList();
+            do {
+                notRun.add(testScript);
+            } while ((testScript = (String)(testScripts.poll())) != null);
+            reportNotRun(notRun);
+            break;
+        }
+        logger.logTestReport(runTest(testScript));
+    }
+    stopApplication(null);
+    ObjectFinder.forgetSnapshot(scope);
+    scope.close();
+}
+
+/** Runs tests on behalf of another JVM, which started this one as one of the
+ * workers of a WorkerPool.
+ * <P>
+ * Reads test script paths from the standard input, one per line, runs each
+ * script, and writes its report to the standard output, encoded on one line.
+ * Everything else that is printed to the standard output (by August itself or
+ * by the tested application) is redirected to the standard error, so that it
+ * cannot be confused with reports.  When the standard input is closed, the JVM
+ * exits.  The JVM also exits (after telling the other JVM, which then starts a
+ * new worker) if a hung application leaves the event dispatch thread blocked.
+ *
+ * @see WorkerPool
+ */
+private void runWorker() {
+    PrintStream reports = System.out;
+    System.setOut(System.err);
+    BufferedReader scripts =
+        new BufferedReader(new InputStreamReader(System.in));
+    String testScript;
+    try {
+        while ((testScript = scripts.readLine()) != null) {
+            TestReport report = runTest(testScript);
+            reports.println(WorkerPool.encodeReport(report,
+                                                    eventDispatchThreadBlocked));
+            reports.flush();
+            if (eventDispatchThreadBlocked) {
+                break;
+            }
+        }
+    }
+    catch (IOException e) {
+        // The JVM that started this worker is gone, so there is nobody left to
+        // send reports to.
+        e.printStackTrace();
+    }
+    stopApplication(null);
+    // The tested application may have left non-daemon threads behind.
+    System.exit(0);
+}
+
+/** Returns the number of worker JVMs to run tests on.
+ *
+ * @return the value of the jobs property, or 1 if it is not specified
+ * @throws NumberFormatException if the jobs property is not an integer
+ */
+private int getJobs() {
+    return Integer.parseInt(properties.getProperty(AugustProperties.JOBS, "1"));
+}
+
+/** Returns the number of instances of the tested application to run at once
+ * in this JVM.
+ *
+ * @return the value of the instances property, or 1 if it is not specified
+ * @throws NumberFormatException if the instances property is not an integer
+ */
+private int getInstances() {
+    return Integer.parseInt(
+        properties.getProperty(AugustProperties.INSTANCES, "1"));
+}
+
 /** Prints help on using august.
  */
 private static void printHelp() {
     System.out.println("java com.sitraka.aougust.TestEngine [options]");
     System.out.println("Options:");
     System.out.println("-h or --help               print this message");
-    System.out.println("-c or --config <file>      use given config file");
+    System.out.println("-c or --configfile <file>  use given config file");
     System.out.println("-l or --logdir <dir>       write logs to given directory");
     System.out.println("-t or --testdir <dir>      run tests from given directory");
+    System.out.println("-j or --jobs <n>           run tests on n worker JVMs at once");
+    System.out.println("-r or --rerunfailed        run only the tests that failed last time");
+    System.out.println("-f or --failedfirst        run the tests that failed last time first");
+    System.out.println("-v or --validate <mode>    parse all tests first; mode is only or first");
+    System.out.println("-W or --watch              keep running, and rerun tests as they change");
 }
 
 /** Initializes the properties variable and loads the config file into it.
@@ -227,11 +766,33 @@ java.io.FileNotFoundException {
  * constructor accessible by this method
  */
 private void initApplication() throws ClassNotFoundException,
+InstantiationException, IllegalAccessException {
+    initApplication(TestEngine.class.getClassLoader());
+}
+
+/** Initializes the application variable, loading the class implementing the
+ * TestableApplication interface with the given class loader.
+ *
+ * @param loader the class loader of the tested application
+ * @throws ClassNotFoundException if the class cannot be found
+ * @throws InstantiationException if the class is an interface or an abstract
+ * class
+ * @throws IllegalAccessException if the class does not have a zero-argument
+ * constructor accessible by this method
+ */
+private void initApplication(ClassLoader loader) throws ClassNotFoundException,
 InstantiationException, IllegalAccessException {
     String testableApplication = 
         properties.getProperty(AugustProperties.TESTABLE_APPLICATION);
-    Class testableApplicationClass = Class.forName(testableApplication);
+    Class testableApplicationClass =
+        Class.forName(testableApplication, true, loader);
     application = (TestableApplication)(testableApplicationClass.newInstance());
+
+    String readyCondition =
+        properties.getProperty(AugustProperties.READY_CONDITION);
+    if (readyCondition != null && !readyCondition.trim().equals("")) {
+        readinessGate = new ReadinessGate(readyCondition);
+    }
 }
 
 /** Initializes the logger variable.
@@ -261,6 +822,21 @@ private void initRobot() throws NumberFormatException, java.awt.AWTException {
     TestRobot.initialize(autoDelay);
 }
 
+/** Sets the number of milliseconds steps wait for the component they look for
+ * to appear, from the componentWait property.
+ *
+ * @throws NumberFormatException if the property is not a number
+ */
+private void initComponentWait() throws NumberFormatException {
+    long wait = Long.parseLong(
+        properties.getProperty(AugustProperties.COMPONENT_WAIT, "0").trim());
+    if (wait < 0) {
+        throw new NumberFormatException(AugustProperties.COMPONENT_WAIT
+            + " must be a positive number");
+    }
+    ObjectFinder.setComponentWait(wait);
+}
+
 /** Initializes the TestStep.Creator class, sending it a file path for a
  * properties file.
  *
@@ -276,11 +852,29 @@ private void initTestStepCreator() throws Exception {
 /** Initlizes the parser variable.
  * <P>
  * Creates an instance of TestScriptParser class and associates the parser
- * variable with that instance.
+ * variable with that instance.  If the scriptCacheDir property is specified,
+ * then the parser caches the scripts it parses in that directory; if the
+ * streamingParser property is 'true', then the parser streams scripts.
  * @throws SAXException if the parser was not properly initialized
  */
-private void initTestScriptParser() throws org.xml.sax.SAXException {
+private void initTestScriptParser()
+throws org.xml.sax.SAXException, ParsingException {
     parser = new TestScriptParser();
+    String cacheDir = properties.getProperty(AugustProperties.SCRIPT_CACHE_DIR);
+    if (cacheDir != null && !cacheDir.trim().equals("")) {
+        parser.setCache(new ScriptCache(cacheDir.trim()));
+    }
+    parser.setStreaming(Boolean.valueOf(properties.getProperty(
+        AugustProperties.STREAMING_PARSER)).booleanValue());
+    if (Boolean.valueOf(properties.getProperty(
+            AugustProperties.SCHEMA_VALIDATION)).booleanValue()) {
+        parser.setSchema(properties.getProperty(AugustProperties.SCRIPT_SCHEMA,
+            ScriptSchema.getDefaultSchema().getPath()));
+        if (parser.streaming) {
+            System.out.println("August warning; scripts parsed as streams "
+                + "are not validated against the schema");
+        }
+    }
 }
 
 /** Sets <CODE>testScriptFileExtension<CODE> to the value of the property with 
@@ -297,53 +891,66 @@ private void setTestScriptFileExtension() {
  * steps are excecuted one by one.  If a test step results in a failure, then 
  * that failure is addes to the test report whihc is returned by this method, 
  * and the test run may be aborted.  At the end of the test run the application 
- * is shut down.
+ * is shut down, unless it is kept running for the next test (see
+ * releaseApplication).
  * <P>
  * If parsing fails, then an appropriate failure is added to the test report, 
  * and the method returns without ever opening the tested application, or 
- * executing any test steps.
+ * executing any test steps.  The steps are parsed as they are reached, though
+ * (see TestScriptParser.openTestSteps), so a failure to create a step further
+ * on in the script ends the test at that step (the validate property makes
+ * August parse every script before running any of them).
  *
  * @param testScriptFileName a relative or absolute path for a test script file
  * @return a TestReport object with details of the run of the test
  */
 private TestReport runTest(String testScriptFileName) {
-    TestReport report = new TestReport(testScriptFileName);
-    Iterator test = null;
+    return runTest(ScriptPrefetcher.ParsedScript.open(parser,
+                                                      testScriptFileName));
+}
 
-    // First, try parsing the test
-    try {
-        test = parser.parseTestSteps(testScriptFileName);
-    }
-    catch (ParsingException e) {
-		e.printStackTrace();
-        report.addFailure(e);
+/** Executes a test that has already been parsed.
+ * <P>
+ * Behaves exactly like runTest(String), except that parsing has already been
+ * done (possibly on another thread, by a ScriptPrefetcher).
+ *
+ * @param script the parsed test script
+ * @return a TestReport object with details of the run of the test
+ */
+private TestReport runTest(ScriptPrefetcher.ParsedScript script) {
+    long start = System.currentTimeMillis();
+    TestReport report = new TestReport(script.getTestScript());
+    TestStepSource test = script.getTestSteps();
+
+    // If parsing failed, then record that.
+    if (script.getFailure() != null) {
+		script.getFailure().printStackTrace();
+        report.addFailure(script.getFailure());
     }
     
     // If the test object was successfully constructed, then we can run 
     // the test.
     if (test != null) {
-        // Start the application to be tested.
-        application.startApplication();
+        // Start the application to be tested, or reset the one that is
+        // already running.  If it does not become ready, then there is no
+        // point in executing any test steps.
+        boolean abort = !prepareApplication(report);
 
-        // Wait for the appliction to start 
-		String s_delay = properties.getProperty(AugustProperties.START_DELAY);
-    	int startDelay = Integer.parseInt(s_delay);
-        
-        try {
-            Thread.currentThread().sleep(startDelay);
-        }
-        catch (InterruptedException ie){
-        }
-        
         // Execute the instructions until the end of the test step sequence, or 
         // until an abort causing failure occurs.
         TestStep step = null;
-        boolean abort = false;
-        while(test.hasNext() && !abort) {
-           step = (TestStep)test.next();
+        long testDeadline = getTestDeadline(start);
+        while(!abort && (step = nextStep(test, report)) != null) {
            try {
-               step.execute();
+               executeStep(step, testDeadline);
            } // end try
+           // If the step did not complete in time, then the application is in
+           // an unknown state (it may well be hung), so abort the test.
+           catch (Watchdog.DeadlineException e) {
+               report.addFailure(e);
+               abort = true;
+               applicationHung = true;
+           }
            // If the step fails, then...
            catch (TestStep.FailureException e) {
                // If this step is not be retried then record the failure
@@ -356,56 +963,325 @@ private TestReport runTest(String testScriptFileName) {
                        abort = true;
                    } // end if
                } // end if
-               // Otherwise, retry the step.
+               // Otherwise, retry the step, for as long as its retry policy
+               // allows.
                else {
-                   int delay = step.getRetryDelay();
+                   RetryPolicy policy = step.getRetryPolicy();
+                   long firstFailure = System.currentTimeMillis();
+                   TestStep.FailureException failure = e;
                    for (int i=1; i <= step.getRetryTimes(); i++) {
                       try {
-                         Thread.currentThread().sleep(delay);
-                         step.execute();
+                         if (!policy.awaitRetry(i, firstFailure, step)) {
+                             break;
+                         }
+                         executeStep(step, testDeadline);
                          // Stop retrying if step executed without failing.
+                         failure = null;
                          break;
                       }
                       catch(InterruptedException ie) {
+                          // Stop retrying, but let whoever interrupted this
+                          // thread know that it was interrupted.
+                          Thread.currentThread().interrupt();
+                          break;
                       }
-                      // If the step failed again then...
+                      catch (Watchdog.DeadlineException de) {
+                          report.addFailure(de);
+                          abort = true;
+                          applicationHung = true;
+                          failure = null;
+                          break;
+                      }
+                      // If the step failed again then remember the failure.
                       catch (TestStep.FailureException fe) {
-                          // If this was the last retry, then
-                          // record the failure.
-                          if (i == step.getRetryTimes()) {
-                              report.addFailure(fe);
-                              // Also, if this is an "abort if failed" kind of step,
-                              // then abort the test.
-                              if (step.abortIfFailed()) {
-                                  abort = true;
-                              } // end if
-                          } // end if
+                          failure = fe;
                       } // end catch
                    } // end for
+                   // If the step did not pass on any retry, then record the
+                   // last failure.
+                   if (failure != null) {
+                       report.addFailure(failure);
+                       // Also, if this is an "abort if failed" kind of step,
+                       // then abort the test.
+                       if (step.abortIfFailed()) {
+                           abort = true;
+                       } // end if
+                   } // end if
                } // end else
            } // end catch
-           test.remove();
         } // end while
+        test.close();
 
-        // Close the tested application.
-        application.exitApplication();
+        // Close the tested application, unless it can be used by the next
+        // test.
+        releaseApplication(report);
+    }
+    report.setDuration(System.currentTimeMillis() - start);
+    return report;        
+}
+
+/** Takes the next step of a test.  If the step cannot be created, then that
+ * is recorded in the test report, and the test ends there.
+ *
+ * @param test the steps of the test
+ * @param report the report of the test
+ * @return the next step, or null if there are no more steps to execute
+ */
+private TestStep nextStep(TestStepSource test, TestReport report) {
+    try {
+        return test.next();
+    }
+    catch (ParsingException e) {
+        e.printStackTrace();
+        report.addFailure(e);
+    }
+    catch (RuntimeException e) {
+        // The parser does not expect everything that may be wrong with a
+        // script.
+        ParsingException failure = new ParsingException(
+            report.getTestID() + ": " + e);
+        failure.printStackTrace();
+        report.addFailure(failure);
+    }
+    return null;
+}
+
+/** Computes the time by which a test must complete.
+ *
+ * @param start the time at which the test started
+ * @return the deadline of the test, or Long.MAX_VALUE if the testTimeout
+ * property is not specified
+ */
+private long getTestDeadline(long start) {
+    long testTimeout = Long.parseLong(
+        properties.getProperty(AugustProperties.TEST_TIMEOUT, "0"));
+    return (testTimeout > 0) ? start + testTimeout : Long.MAX_VALUE;
+}
 
-        // Wait for the application to shut down 
-		String sd_delay = properties.getProperty(AugustProperties.SHUTDOWN_DELAY);
-    	int shutDownDelay = Integer.parseInt(sd_delay);
+/** Executes a test step, enforcing the step's deadline and the deadline of
+ * the whole test.
+ * <P>
+ * If neither the step nor the test has a deadline, then the step is simply
+ * executed on the calling thread; otherwise it is executed by the watchdog.
+ *
+ * @param step the step to execute
+ * @param testDeadline the time by which the whole test must complete
+ * @throws TestStep.FailureException if the step fails
+ * @throws Watchdog.DeadlineException if the step does not complete before
+ * either deadline
+ */
+private void executeStep(TestStep step, long testDeadline)
+throws TestStep.FailureException, Watchdog.DeadlineException {
+    long timeout = step.getTimeout();
+    if (timeout <= 0) {
+        timeout = Long.parseLong(
+            properties.getProperty(AugustProperties.STEP_TIMEOUT, "0"));
+    }
+    if (testDeadline != Long.MAX_VALUE) {
+        long remaining = testDeadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new Watchdog.DeadlineException(step.getScriptID() + " "
+                + step.getStepNumber() + " test did not complete within "
+                + properties.getProperty(AugustProperties.TEST_TIMEOUT)
+                + " ms");
+        }
+        if (timeout <= 0 || remaining < timeout) {
+            timeout = remaining;
+        }
+    }
+    if (scope == null) {
+        runStep(step, timeout);
+        return;
+    }
+    // Several engines share the mouse and the keyboard; also make sure the
+    // windows the step opens are attributed to this engine's instance.
+    synchronized (INPUT_LOCK) {
+        WindowScope.setActing(scope);
         try {
-            Thread.currentThread().sleep(shutDownDelay);
+            runStep(step, timeout);
+        }
+        finally {
+            Watchdog.isEventDispatchThreadResponsive(SETTLE_TIMEOUT);
+            WindowScope.setActing(null);
+        }
+    }
+}
+
+/** Executes a test step, through the watchdog if it has a deadline.
+ *
+ * @param step the step to execute
+ * @param timeout the maximum number of milliseconds the step may take, or 0
+ * if there is no limit
+ * @throws TestStep.FailureException if the step fails
+ * @throws Watchdog.DeadlineException if the step does not complete in time
+ */
+private void runStep(TestStep step, long timeout)
+throws TestStep.FailureException, Watchdog.DeadlineException {
+    if (timeout > 0) {
+        watchdog.execute(step, timeout);
+    }
+    else {
+        step.execute();
+    }
+}
+
+/** Makes sure that a freshly started, or freshly reset, instance of the tested
+ * application is running and ready to be tested.
+ * <P>
+ * If an instance is still running after the previous test (see
+ * releaseApplication), then it is reset; if the reset fails, then the instance
+ * is exited and a new one is started.  The time this takes is recorded in the
+ * report as the startup time of the test.
+ *
+ * @param report the report of the test about to be run; if the application
+ * does not become ready in time, then an ApplicationException is added to it
+ * @return 'true' if the application is ready, 'false' if it did not become
+ * ready in time
+ */
+private boolean prepareApplication(TestReport report) {
+    long start = System.currentTimeMillis();
+    if (applicationRunning) {
+        boolean reset = false;
+        try {
+            reset = ((ResettableApplication)application).resetApplication();
+        }
+        catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        if (reset) {
+            report.setStartupTime(System.currentTimeMillis() - start);
+            return true;
+        }
+        stopApplication(null);
+        start = System.currentTimeMillis();
+    }
+
+    shutdownDetector = new ShutdownDetector(scope);
+    if (scope == null) {
+        application.startApplication();
+    }
+    else {
+        synchronized (INPUT_LOCK) {
+            WindowScope.setActing(scope);
+            try {
+                application.startApplication();
+                Watchdog.isEventDispatchThreadResponsive(SETTLE_TIMEOUT);
+            }
+            finally {
+                WindowScope.setActing(null);
+            }
+        }
+    }
+    applicationRunning = true;
+    runsSinceStart = 0;
+
+    // Wait for the appliction to start 
+    String s_delay = properties.getProperty(AugustProperties.START_DELAY);
+    int startDelay = Integer.parseInt(s_delay);
+    boolean ready = true;
+    if (readinessGate == null) {
+        try {
+            Thread.currentThread().sleep(startDelay);
         }
         catch (InterruptedException ie){
         }
     }
-    return report;        
+    else {
+        ready = readinessGate.await(startDelay);
+    }
+    report.setStartupTime(System.currentTimeMillis() - start);
+    if (!ready) {
+        report.addFailure(new ApplicationException(report.getTestID()
+            + " application was not ready after " + startDelay + " ms"));
+    }
+    return ready;
+}
+
+/** Called after each test that was run on the tested application.  Exits the
+ * application unless it can be reset and reused by the next test.
+ * <P>
+ * The application is reused only if the reuseApplication property is 'true,'
+ * the application implements ResettableApplication, the test passed, and the
+ * application has not yet run the number of tests given by the
+ * maxRunsPerStart property.
+ *
+ * @param report the report of the test that has just been run
+ */
+private void releaseApplication(TestReport report) {
+    runsSinceStart++;
+    boolean reuse = Boolean.valueOf(properties.getProperty(
+            AugustProperties.REUSE_APPLICATION)).booleanValue()
+        && application instanceof ResettableApplication;
+    int maxRuns = Integer.parseInt(properties.getProperty(
+            AugustProperties.MAX_RUNS_PER_START, "0"));
+    if (!reuse || !report.isTestPassed()
+            || (maxRuns > 0 && runsSinceStart >= maxRuns)) {
+        stopApplication(report);
+    }
+}
+
+/** Exits the tested application if it is running, and waits for it to shut
+ * down.
+ * <P>
+ * Called between tests, and also after the last test, since an application
+ * that is being reused is still running at that point.
+ * <P>
+ * The engine waits until all of the application's windows are disposed and
+ * all of its non-daemon threads have stopped, but no longer than shutDownDelay
+ * milliseconds.  The time this takes is recorded as the teardown time of the
+ * test.
+ *
+ * @param report the report of the test that has just been run, or null if
+ * the application is exited for some other reason
+ */
+private void stopApplication(TestReport report) {
+    if (!applicationRunning) {
+        return;
+    }
+    long start = System.currentTimeMillis();
+    String sd_delay = properties.getProperty(AugustProperties.SHUTDOWN_DELAY);
+    int shutDownDelay = Integer.parseInt(sd_delay);
+    if (applicationHung) {
+        // A hung application may not be able to exit either, so do not let
+        // it take the engine down with it.
+        if (!watchdog.run(new Runnable() {
+                public void run() {
+                    application.exitApplication();
+                }
+            }, shutDownDelay)) {
+            System.out.println("August warning; the hung application did not "
+                + "exit within " + shutDownDelay + " ms");
+        }
+        if (!Watchdog.isEventDispatchThreadResponsive(shutDownDelay)) {
+            System.out.println("August warning; the event dispatch thread is "
+                + "still blocked:" + Watchdog.dumpEventDispatchThread());
+            eventDispatchThreadBlocked = true;
+        }
+        applicationHung = false;
+    }
+    else {
+        application.exitApplication();
+    }
+    applicationRunning = false;
+
+    // Wait for the application to shut down 
+    boolean shutDown = !eventDispatchThreadBlocked
+        && shutdownDetector.await(shutDownDelay);
+    long teardownTime = System.currentTimeMillis() - start;
+    if (report != null) {
+        report.setTeardownTime(teardownTime);
+    }
+    if (!shutDown) {
+        System.out.println("August warning; the tested application did not "
+            + "shut down within " + shutDownDelay + " ms ("
+            + shutdownDetector.describeRemains() + ")");
+    }
 }
 
 /** This is a collection of property names that should appear in the config file
  * for the August system.
  */
-private static interface AugustProperties {
+static interface AugustProperties {
     
     /** The name of the property which maps to a number of milliseconds the
      * TestRobot should sleep inbetween generating events.
@@ -422,7 +1298,204 @@ private static interface AugustProperties {
      * a file is a test script file.
      */
     String TEST_SCRIPT_FILE_EXTENSION = "testScriptFileExtension";
+
+    /** The name of the property which maps to the number of milliseconds to
+     * wait for the tested application to start.  If the readyCondition
+     * property is set, then this is the longest time to wait for the condition
+     * to hold; otherwise the engine always waits this long.
+     */
     String START_DELAY = "startDelay";
+
+    /** The name of the property which maps to the largest number of
+     * milliseconds to wait for the tested application to shut down.
+     *
+     * @see ShutdownDetector
+     */
     String SHUTDOWN_DELAY="shutDownDelay";
+
+    /** The name of the property which maps to the number of worker JVMs that
+     * run tests at the same time.  If it is not specified, or is 1, then all
+     * tests are run one by one in this JVM.  May be overridden with the -j or
+     * --jobs command line argument.
+     *
+     * @see WorkerPool
+     */
+    String JOBS = "jobs";
+
+    /** The name of the property which maps to a command that starts a virtual
+     * display (such as Xvfb) for each worker JVM.  The display argument (":n")
+     * is inserted after the first token of the command.
+     */
+    String WORKER_DISPLAY_COMMAND = "workerDisplayCommand";
+
+    /** The name of the property which maps to the display number of the first
+     * worker JVM; the other workers use consecutive numbers.
+     */
+    String WORKER_DISPLAY_BASE = "workerDisplayBase";
+
+    /** The name of the property which maps to additional options (such as
+     * -Xmx) for the worker JVMs.
+     */
+    String WORKER_JVM_OPTIONS = "workerJvmOptions";
+
+    /** The name of the property which maps to 'true' if one running instance
+     * of the tested application should be reused by consecutive tests.  This
+     * only has an effect if the application implements ResettableApplication.
+     */
+    String REUSE_APPLICATION = "reuseApplication";
+
+    /** The name of the property which maps to the largest number of tests that
+     * may be run on one instance of the tested application before it is
+     * exited and started again (0, or not specified, means no limit).  Only
+     * used if the application is reused.
+     */
+    String MAX_RUNS_PER_START = "maxRunsPerStart";
+
+    /** The name of the property which maps to the number of test scripts that
+     * may be opened ahead of the script that is currently running (1 if not
+     * specified; 0 means that each script is opened right before it runs).
+     *
+     * @see ScriptPrefetcher
+     */
+    String PARSE_AHEAD = "parseAhead";
+
+    /** The name of the property which maps to 'true' (the default) if the
+     * test scripts that took longest in previous runs should be started first.
+     *
+     * @see ScriptScheduler
+     */
+    String LONGEST_FIRST = "longestFirst";
+
+    /** The name of the property which maps to 'true' if only the test scripts
+     * that failed the last time they were run should be run.  May be set with
+     * the -r or --rerunfailed command line argument.
+     *
+     * @see ResultHistory
+     */
+    String RERUN_FAILED = "rerunFailed";
+
+    /** The name of the property which maps to 'true' if the test scripts that
+     * failed the last time they were run should be run before all the others.
+     * May be set with the -f or --failedfirst command line argument.
+     *
+     * @see ResultHistory
+     */
+    String FAILED_FIRST = "failedFirst";
+
+    /** The name of the property which maps to the default number of
+     * milliseconds a single test step may take (0, or not specified, means no
+     * limit).  A step may override it with its timeout attribute.
+     * <P>
+     * A step that does not complete in time cannot be stopped; its thread is
+     * given up on, and may go on driving the robot (into whatever the next
+     * test shows) until it completes or the run ends.  If the hung
+     * application also leaves the event dispatch thread blocked, no further
+     * test can be run in the JVM: a worker JVM is replaced, and in any other
+     * run the remaining tests are reported as not run.
+     *
+     * @see Watchdog
+     */
+    String STEP_TIMEOUT = "stepTimeout";
+
+    /** The name of the property which maps to the number of milliseconds a
+     * whole test may take (0, or not specified, means no limit).
+     *
+     * @see Watchdog
+     */
+    String TEST_TIMEOUT = "testTimeout";
+
+    /** The name of the property which maps to the number of milliseconds a
+     * GUIAction or GUIResultCheck step waits for the component it looks for to
+     * appear and be showing (0, or not specified, means that it does not
+     * wait).  The step goes on as soon as the component is showing, so slow
+     * dialogs need neither delays nor retries.
+     *
+     * @see ObjectFinder#waitForComponent
+     */
+    String COMPONENT_WAIT = "componentWait";
+
+    /** The name of the property which maps to a condition which signals that
+     * a freshly started application is ready to be tested: "frame", "idle",
+     * or "component:" followed by a component name.
+     *
+     * @see ReadinessGate
+     */
+    String READY_CONDITION = "readyCondition";
+
+    /** The name of the property which maps to the number of instances of the
+     * tested application that run tests at the same time in this JVM (1 if not
+     * specified).  Only used if tests are not run on worker JVMs.
+     *
+     * @see IsolatingClassLoader
+     * @see WindowScope
+     */
+    String INSTANCES = "instances";
+
+    /** The name of the property which maps to the class path from which each
+     * instance of the tested application loads its classes, if there are
+     * several instances.  Defaults to the class path of this JVM.
+     */
+    String APPLICATION_CLASS_PATH = "applicationClassPath";
+
+    /** The name of the property which maps to a directory in which the steps
+     * of parsed test scripts are kept, so that scripts which have not changed
+     * are not parsed again by later runs.  If it is not specified, every
+     * script is parsed each time it is run.
+     *
+     * @see ScriptCache
+     */
+    String SCRIPT_CACHE_DIR = "scriptCacheDir";
+
+    /** The name of the property which maps to 'true' if test scripts should
+     * be parsed as streams, one test step at a time, instead of being turned
+     * into whole documents first.  Saves memory on very long scripts.
+     */
+    String STREAMING_PARSER = "streamingParser";
+
+    /** The name of the property which maps to "only" if all of the test
+     * scripts should be parsed, and the scripts that cannot be parsed
+     * reported, without running any tests; or to "first" if the tests should
+     * be run afterwards, but only if all of the scripts can be parsed.  May be
+     * set with the -v or --validate command line argument.
+     *
+     * @see ScriptValidator
+     */
+    String VALIDATE = "validate";
+
+    /** The name of the property which maps to an extension that specifies
+     * that a file is a test script file in the compact format.  Such files are
+     * run along with the files that have the testScriptFileExtension.  The
+     * extension must end with ".aug", since the parser chooses the format of
+     * every script from its name.
+     *
+     * @see CompactScript
+     */
+    String COMPACT_SCRIPT_FILE_EXTENSION = "compactScriptFileExtension";
+
+    /** The name of the property which maps to 'true' if xml test scripts
+     * should be validated against an XML Schema when they are parsed, so that
+     * scripts that do not follow it fail before any of their steps are run.
+     * The schema is compiled once per run.
+     *
+     * @see ScriptSchema
+     */
+    String SCHEMA_VALIDATION = "schemaValidation";
+
+    /** The name of the property which maps to the path of the XML Schema of
+     * test scripts, used if schemaValidation is 'true'.  Defaults to
+     * config/testScript.xsd in the base directory.
+     */
+    String SCRIPT_SCHEMA = "scriptSchema";
+
+    /** The name of the property which maps to 'true' if August should keep
+     * running after it has run the tests, and run each test again whenever
+     * the test script, or a utility script or data file it uses, changes.
+     * The tested application is kept running in between (if it can be
+     * reset), so a rerun costs little more than the test itself.  May be set
+     * with the -W or --watch command line argument.
+     *
+     * @see ScriptWatcher
+     */
+    String WATCH = "watch";
 }
 }
@@ -31,6 +31,22 @@ protected boolean testPassed;
  */
 protected List failures;
 
+/** The number of milliseconds it took to start (or reset) the tested
+ * application and for it to become ready, or -1 if the application was not
+ * started for this test.
+ */
+protected long startupTime = -1;
+
+/** The number of milliseconds it took the tested application to shut down
+ * after the test, or -1 if it was not shut down after this test.
+ */
+protected long teardownTime = -1;
+
+/** The number of milliseconds the whole test took, from the start of its run
+ * until its report was complete, or -1 if this was not measured.
+ */
+protected long duration = -1;
+
 /** This character is printed between various pieces of information in the
  * TestReport.toString method.
  */
@@ -98,6 +114,62 @@ protected void addFailure(Exception e) {
     failures.add(e);
 }
 
+/** Called by the TestEngine once the tested application is ready for the
+ * test.
+ *
+ * @param startupTime the number of milliseconds it took to start (or reset)
+ * the tested application and for it to become ready
+ */
+protected void setStartupTime(long startupTime) {
+    this.startupTime = startupTime;
+}
+
+/** Called by the Logger.
+ *
+ * @return the number of milliseconds it took to start (or reset) the tested
+ * application and for it to become ready, or -1 if the application was not
+ * started for this test
+ */
+protected long getStartupTime() {
+    return startupTime;
+}
+
+/** Called by the TestEngine once the tested application has shut down after
+ * the test.
+ *
+ * @param teardownTime the number of milliseconds it took the tested
+ * application to shut down
+ */
+protected void setTeardownTime(long teardownTime) {
+    this.teardownTime = teardownTime;
+}
+
+/** Called by the Logger.
+ *
+ * @return the number of milliseconds it took the tested application to shut
+ * down after the test, or -1 if it was not shut down after this test
+ */
+protected long getTeardownTime() {
+    return teardownTime;
+}
+
+/** Called by the TestEngine when the test is over.
+ *
+ * @param duration the number of milliseconds the whole test took
+ */
+protected void setDuration(long duration) {
+    this.duration = duration;
+}
+
+/** Called by the Logger.
+ *
+ * @return the number of milliseconds the whole test took, or -1 if this was
+ * not measured
+ */
+protected long getDuration() {
+    return duration;
+}
+
 /** Called by TestReportLogger, only if the isTestPassed() method returns false.
  *
  * @return If this TestReport intance's isTestPassed() method returns 'false,' 
@@ -118,4 +190,31 @@ public String toString() {
     return testID + SEPARATOR + ((testPassed)? PASS : FAIL);
 }
 
+/** A failure that was recorded in another JVM (a worker JVM during a parallel
+ * run), and of which only the message is known.
+ */
+static class ForwardedFailure extends Exception {
+
+    /** Creates a ForwardedFailure.
+     *
+     * @param message the message of the original failure
+     */
+    public ForwardedFailure(String message) {
+        super(message);
+    }
+} // ForwardedFailure
+
+/** The reason a test was not run at all.
+ */
+static class NotRunFailure extends Exception {
+
+    /** Creates a NotRunFailure.
+     *
+     * @param message why the test was not run
+     */
+    public NotRunFailure(String message) {
+        super(message);
+    }
+} // NotRunFailure
+
 }
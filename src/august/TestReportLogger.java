@@ -45,6 +45,27 @@ private boolean moreTestReportsComing;
  */
 private int EXIT_STATUS = 0;
 
+/** Remembers the duration of every logged test, for scheduling later runs.
+ */
+private TimingHistory timingHistory;
+
+/** Remembers the result of every logged test, for the rerunFailed and
+ * failedFirst modes of later runs.
+ */
+private ResultHistory resultHistory;
+
+/** Precedes the startup time of the tested application in the log.
+ */
+private static final String STARTUP = "startup=";
+
+/** Precedes the teardown time of the tested application in the log.
+ */
+private static final String TEARDOWN = "teardown=";
+
+/** Follows times printed to the log.
+ */
+private static final String MILLISECONDS = "ms";
+
 /** Constructs a TestReportLogger object with an the log and fail log path names
  * and an initially empty test report queue.
  * <P>
@@ -59,6 +80,8 @@ protected TestReportLogger(String logDir) {
     reportQueue = new LinkedList();
     this.log = (new File(logDir, "log")).getPath();
     this.failLog = (new File(logDir, "failLog")).getPath();
+    timingHistory = new TimingHistory(logDir);
+    resultHistory = new ResultHistory(logDir);
     moreTestReportsComing = true;
     this.setName("TestReportLogger");
     this.setDaemon(false);
@@ -92,6 +115,10 @@ public void run() {
         try {
             report = dequeueReport();
             printToLog(report);
+            if (report.getDuration() >= 0) {
+                timingHistory.record(report.getTestID(), report.getDuration());
+            }
+            resultHistory.record(report);
             if(!report.isTestPassed()) {
                 EXIT_STATUS = 1;
                 printToFailLog(report);
@@ -113,6 +140,16 @@ public void run() {
             System.exit(1);
         }
     }
+    try {
+        timingHistory.save();
+        resultHistory.save();
+    }
+    catch (IOException e) {
+        // The results are in the logs; only the scheduling of the next run
+        // suffers.
+        System.out.println("August warning; could not save test history: "
+            + e.getMessage());
+    }
     // This run method always completes after the TestEngine.main method, and 
     // when it completes the August run is over.
     // For some reason before this line was added August would not exit even 
@@ -120,6 +157,27 @@ public void run() {
     System.exit(EXIT_STATUS);
 }
 
+/** Returns the durations of tests logged by this and by previous runs.
+ * <P>
+ * Called by the TestEngine to decide in which order to run the tests.
+ *
+ * @return the timing history kept in the log directory
+ */
+protected TimingHistory getTimingHistory() {
+    return timingHistory;
+}
+
+/** Returns the results of tests logged by previous runs (and by this run so
+ * far).
+ * <P>
+ * Called by the TestEngine to decide which tests to run, and in which order.
+ *
+ * @return the result history kept in the log directory
+ */
+protected ResultHistory getResultHistory() {
+    return resultHistory;
+}
+
 /** Queue a TestReport object to be printed to logs, and return immediatelly.
  * <P>
  * This method is called from the main method of the TestEngine class.
@@ -157,12 +215,24 @@ private synchronized TestReport dequeueReport () throws InterruptedException {
 
 /** Print a TestReport object to the log.  Called internally from the run 
  * method.
+ * <P>
+ * The line printed for each test is followed by the time it took the tested
+ * application to start up and to tear down, if these were measured.
  *
  * @param report he TestReport object to be printed to the log
  * @throws IOException if there is an i/o error while prinitng to the log
  */
 private void printToLog(TestReport report) throws IOException {
-    FileUtilities.appendLineToFile(log, report.toString());
+    StringBuffer line = new StringBuffer(report.toString());
+    if (report.getStartupTime() >= 0) {
+        line.append(TestReport.SEPARATOR).append(STARTUP)
+            .append(report.getStartupTime()).append(MILLISECONDS);
+    }
+    if (report.getTeardownTime() >= 0) {
+        line.append(TestReport.SEPARATOR).append(TEARDOWN)
+            .append(report.getTeardownTime()).append(MILLISECONDS);
+    }
+    FileUtilities.appendLineToFile(log, line.toString());
 }
 
 /** Prints the report to the fail log.  Called internally from the run method.
@@ -3,24 +3,44 @@ package august;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
 import org.w3c.dom.Node;
 import org.w3c.dom.Element;
 import org.apache.xerces.parsers.DOMParser;
+import org.apache.xerces.xni.grammars.XMLGrammarPool;
+import org.xml.sax.Attributes;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.ErrorListener;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.stream.StreamSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.FileOutputStream;
+import javax.xml.transform.Templates;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 
 /** Parses test scripts for the August system.
+ * <P>
+ * A TestScriptParser instance must only be used by one thread at a time, but
+ * separate instances may be used on separate threads at the same time (the
+ * TestEngine parses the next test script on a separate thread while the
+ * current one is running).  The only things they share are the compiled
+ * utility stylesheets and the parsed utility scripts, which are shared
+ * safely.
  *
  * @author weronika
  */
@@ -51,10 +71,15 @@ protected static final String UTILITY_SCRIPT_NAME = "script";
  */ 
 protected static final String DATA_FOR_SCRIPT = "data";
 
-/** When data files and utility scripts are combined to produce test scripts,
- * the test script is written to this location.
+/** Separates the names of the utility script and of the data file in the
+ * script id of the steps generated from them.
+ */
+protected static final String DATA_SEPARATOR = "+";
+
+/** Maps the paths of utility stylesheets to CompiledStylesheet objects.
+ * Compiled stylesheets are thread-safe, so they are shared by all parsers.
  */
-protected static final String TEMP_FILE = "TestScriptParser.temp";
+private static Map stylesheets = new HashMap();
     
 /** Used internally for validating scripts and turning them into Document 
  * instances.
@@ -74,9 +99,50 @@ protected TransformerFactory tFactory;
  */
 protected Errors tFactoryErrors;
 
-/** Handles transformation errors.
+
+/** Creates the stream readers used in streaming mode.
+ */
+protected XMLInputFactory inputFactory;
+
+/** True if scripts are parsed in streaming mode (see StreamedScript).
+ */
+protected boolean streaming = false;
+
+/** Creates the stand-alone Elements from which test steps are created in
+ * streaming mode.  Created when it is first needed.
+ */
+private Document elementFactory;
+
+/** The path of the schema against which scripts are validated, or null if
+ * they are not validated.
+ */
+protected String schema;
+
+/** The grammar pool the DOM parser validates against, or null.
+ */
+private XMLGrammarPool grammarPool;
+
+/** Keeps the steps of scripts that have already been parsed, or null if every
+ * script is parsed each time.
+ */
+protected ScriptCache cache;
+
+/** The paths (Strings) of the files read while parsing the current script, or
+ * null if they are not being collected because the script is being opened
+ * (see openTestSteps).
+ */
+private List dependencies;
+
+/** The paths (Strings) of the files read while parsing the last script parsed
+ * by readTestSteps.
  */
-protected Errors transformationErrors;
+private List lastDependencies;
+
+/** The files read while parsing each of the utility scripts that are being
+ * parsed right now (the innermost one last); objects of type
+ * UtilityScriptCache.Entry.Dependencies.
+ */
+private List utilityDependencies = new ArrayList();
 
 /** Creates an instance of the TestScriptParser.
  * <P>
@@ -88,18 +154,91 @@ protected TestScriptParser() throws SAXException {
     parser = new DOMParser();
     parsingErrors = new Errors();
     parser.setErrorHandler(parsingErrors);
-    //parser.setFeature( "http://xml.org/sax/features/validation", true);
+    // Scripts are validated only if a schema is set (see setSchema).
     
     tFactory = TransformerFactory.newInstance();
     tFactoryErrors = new Errors();
     tFactory.setErrorListener(tFactoryErrors);
-    transformationErrors = new Errors();
+
+    inputFactory = XMLInputFactory.newInstance();
+    inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+}
+
+/** Creates an instance of the TestScriptParser with the same settings (cache
+ * and parser mode) as another one.  The two instances share nothing else, so
+ * they may be used on separate threads.
+ *
+ * @param settings the parser whose settings are copied
+ * @throws SAXException if there is an error setting the validation feature of
+ * the parser
+ */
+protected TestScriptParser(TestScriptParser settings) throws SAXException {
+    this();
+    setCache(settings.cache);
+    setStreaming(settings.streaming);
+    schema = settings.schema;
+    if (settings.grammarPool != null) {
+        useGrammarPool(settings.grammarPool);
+    }
+}
+
+/** Chooses between building a Document for each script (the default), and
+ * streaming it (see StreamedScript).
+ *
+ * @param streaming 'true' to stream scripts
+ */
+protected void setStreaming(boolean streaming) {
+    this.streaming = streaming;
 }
     
+/** Makes this parser validate the xml scripts it turns into Documents against
+ * an XML Schema.  The schema is compiled only once, into a grammar pool that
+ * all parsers share (see ScriptSchema), so validating a script costs little
+ * more than parsing it.
+ * <P>
+ * Scripts parsed in streaming mode, scripts in the compact format, and scripts
+ * generated from data files are not validated.
+ *
+ * @param schema the path of the schema, or null not to validate scripts
+ * @throws ParsingException if the schema cannot be compiled
+ * @throws SAXException if the parser does not support schema validation
+ */
+protected void setSchema(String schema) throws ParsingException, SAXException {
+    this.schema = schema;
+    if (schema != null) {
+        useGrammarPool(ScriptSchema.getGrammarPool(schema));
+    }
+}
+
+/** Makes the DOM parser validate documents against the grammars in a pool,
+ * unless it already does.
+ *
+ * @param pool the grammar pool
+ * @throws SAXException if the parser does not support schema validation
+ */
+private void useGrammarPool(XMLGrammarPool pool) throws SAXException {
+    if (pool != grammarPool) {
+        parser.setFeature(ScriptSchema.VALIDATION_FEATURE, true);
+        parser.setFeature(ScriptSchema.SCHEMA_FEATURE, true);
+        parser.setFeature(ScriptSchema.DYNAMIC_FEATURE, true);
+        parser.setProperty(ScriptSchema.GRAMMAR_POOL_PROPERTY, pool);
+        grammarPool = pool;
+    }
+}
+
+/** Makes this parser use a cache of parsed scripts.
+ *
+ * @param cache the cache, or null to parse every script each time
+ */
+protected void setCache(ScriptCache cache) {
+    this.cache = cache;
+}
+
 /** Parses a test script file, and creates TestStep instances for each test step
  * declared in the test script.
  * <P>
- * Called by the TestEngine.runTest method.
+ * All of the steps are created before this method returns; see openTestSteps
+ * for a parser that creates them as they are needed.
  *
  * @param testScript a relative or absolute path for a test script file
  * @throws ParsingException if there were any errors parsing the test script or
@@ -107,80 +246,536 @@ protected TestScriptParser() throws SAXException {
  * @return an Iterator containing objects of type TestStep
  */
 Iterator parseTestSteps(String testScript) throws ParsingException {
-    // The test steps that will be returned are collected here.
+    return readTestSteps(testScript).iterator();
+}
+
+/** Opens a test script file, to create TestStep instances for the test steps
+ * declared in it, one at a time, as they are taken from the returned source.
+ * <P>
+ * Called by the TestEngine.runTest method.
+ * <P>
+ * If this parser has a cache, then all of the steps are created (or loaded from
+ * the cache) before this method returns, since the cache stores whole scripts.
+ *
+ * @param testScript a relative or absolute path for a test script file
+ * @throws ParsingException if the test script cannot be opened, or if there are
+ * errors parsing it that are found before its first step is needed
+ * @return a source of TestStep objects, which must be closed
+ */
+TestStepSource openTestSteps(String testScript) throws ParsingException {
+    if (cache == null) {
+        return openScript(testScript);
+    }
+    return TestStepSource.of(readTestSteps(testScript));
+}
+
+/** Parses a test script file, and creates TestStep instances for each test step
+ * declared in the test script.
+ * <P>
+ * If this parser has a cache, and the cache has an up to date entry for the
+ * script, then the steps are loaded from the cache instead; otherwise the
+ * steps are stored in the cache after they have been parsed.
+ * <P>
+ * Either way, the files the steps were parsed from are remembered until the
+ * next script is parsed (see getDependencies).
+ *
+ * @param testScript a relative or absolute path for a test script file
+ * @throws ParsingException if there were any errors parsing the test script or
+ * instantiating any of the test steps contained in the test script
+ * @return a List containing objects of type TestStep
+ */
+List readTestSteps(String testScript) throws ParsingException {
+    dependencies = new ArrayList();
+    dependencies.add(testScript);
+    dependencies.add(TestStep.Creator.getConfigFile().getPath());
+    if (schema != null) {
+        dependencies.add(schema);
+    }
+    try {
+        List testSteps = null;
+        if (cache != null) {
+            List cached = new ArrayList();
+            testSteps = cache.load(testScript, cached);
+            if (testSteps != null) {
+                dependencies = cached;
+                return testSteps;
+            }
+        }
+        testSteps = parseSteps(testScript);
+        if (cache != null) {
+            cache.store(testScript, dependencies, testSteps);
+        }
+        return testSteps;
+    }
+    finally {
+        lastDependencies = dependencies;
+        dependencies = null;
+    }
+}
+
+/** Returns the files read while parsing the last script parsed with
+ * readTestSteps (or parseTestSteps): the script itself, the utility scripts
+ * and data files it calls (directly or not), and the configuration files
+ * that affect its steps.  If parsing failed, then only the files read up to
+ * the failure are included.
+ *
+ * @return the paths of the files (Strings), or null if no script has been
+ * parsed that way yet
+ */
+List getDependencies() {
+    return lastDependencies;
+}
+
+/** Parses a test script file, or a utility script called by a test script,
+ * and creates TestStep instances for each test step declared in it.
+ *
+ * @param testScript a relative or absolute path for a script file
+ * @throws ParsingException if there were any errors parsing the script or
+ * instantiating any of the test steps contained in it
+ * @return a List containing objects of type TestStep
+ */
+private List parseSteps(String testScript) throws ParsingException {
     List testSteps = new ArrayList();
-       
-    Document script = parseDocument(testScript);
-    
-    // Extract the node containing test steps.  There is only one of those.
-    NodeList temp = script.getElementsByTagName(TEST_STEPS);
-    Node testStepsSection = temp.item(0);
-    // The NodeList temp and the wholeDocument are not needed anymore -   
-    // mark them for garbage collection.
-    temp = null;
-    script = null;
-    
-    // Go through all of the nodes that are in the section containing
-    // test step nodes.  Turn each of those nodes that are not comment 
-    // nodes into (one or more) TestStep instances, and add those instances 
-    // to the testSteps list.  While doing this, keep track of the step 
-    // number in the stepNum variable.  (The comment nodes are ignored.)
-    int stepNum = 0;
-    TestStep step;
-    for(Node node = testStepsSection.getFirstChild();
-        node != null;
-        node = node.getNextSibling()) {
-        
-        int type = node.getNodeType();
-        if (type == Node.ELEMENT_NODE) {
-            // Case One: A utility script is called at this point in the test;
-            // turn the utility script into a series of test steps.
-            if (node.getNodeName().equals(CALL_UTILITY_SCRIPT)) {
-                String utilScriptName = 
-                    ((Element)node).getAttribute(UTILITY_SCRIPT_NAME);
-                Iterator utilScriptSteps = parseTestSteps(utilScriptName);
-                while(utilScriptSteps.hasNext()) {
-                    step = (TestStep)(utilScriptSteps.next());
-                    testSteps.add(step);
-                    utilScriptSteps.remove();
+    addAll(testSteps, openScript(testScript));
+    return testSteps;
+}
+
+/** Takes all of the steps from a source, and adds them to a list.  The source
+ * is closed.
+ *
+ * @param testSteps the list to which the steps are added
+ * @param source the source
+ * @throws ParsingException if one of the steps cannot be created
+ */
+private static void addAll(List testSteps, TestStepSource source)
+throws ParsingException {
+    try {
+        TestStep step;
+        while ((step = source.next()) != null) {
+            testSteps.add(step);
+        }
+    }
+    finally {
+        source.close();
+    }
+}
+
+/** Opens a script file: in the compact format if its name says so (see
+ * CompactScript), otherwise in the parser mode of this parser.
+ *
+ * @param testScript a relative or absolute path for a script file
+ * @throws ParsingException if the script cannot be opened, or (when not
+ * streaming) if it is not well-formed
+ * @return a source of the steps of the script
+ */
+private TestStepSource openScript(String testScript) throws ParsingException {
+    if (CompactScript.isCompact(testScript)) {
+        return new CompactScriptSource(testScript);
+    }
+    if (streaming) {
+        return new StreamedScript(testScript);
+    }
+    return new DocumentScript(testScript);
+}
+
+/** Turns one element of the section containing test step nodes into the source
+ * of the steps it stands for, if it calls another script.
+ *
+ * @param node the element
+ * @return the steps of the called script, or null if the element is a single
+ * test step
+ * @throws ParsingException if a called script cannot be parsed
+ */
+private TestStepSource expand(Element node) throws ParsingException {
+    // Case One: A utility script is called at this point in the test;
+    // turn the utility script into a series of test steps.
+    if (node.getNodeName().equals(CALL_UTILITY_SCRIPT)) {
+        String utilScriptName = node.getAttribute(UTILITY_SCRIPT_NAME);
+        addDependency(utilScriptName);
+        return parseUtilityScript(utilScriptName);
+    }
+    // Case Two: A utility script is combined with a data file; turn the
+    // resulting script into a series of test steps.
+    else if (node.getNodeName().equals(CALL_SCRIPT_WITH_DATA)) {
+        String utilScriptName = node.getAttribute(UTILITY_SCRIPT_NAME);
+        String dataFile = node.getAttribute(DATA_FOR_SCRIPT);
+        addDependency(utilScriptName);
+        addDependency(dataFile);
+        return TestStepSource.of(generateTestSteps(dataFile, utilScriptName));
+    }
+    // Case Three: This is a single test step.  This case is the basis 
+    // for the recursion.
+    return null;
+}
+
+/** The steps of one script, created as they are taken.  Each element of the
+ * section containing test step nodes is turned into test steps only when the
+ * steps before it have all been taken: either into a single step, or into the
+ * steps of the script it calls, which are taken from a nested source.
+ */
+private abstract class ScriptSource extends TestStepSource {
+
+    /** The path of the script.
+     */
+    protected String testScript;
+
+    /** The number of the last step created from the script so far.
+     */
+    private int stepNum = 0;
+
+    /** The steps of the called script that are being taken, or null.
+     */
+    private TestStepSource called;
+
+    /** Creates a ScriptSource.
+     *
+     * @param testScript the path of the script
+     */
+    protected ScriptSource(String testScript) {
+        this.testScript = testScript;
+    }
+
+    /** Returns the next element of the section containing test step nodes.
+     *
+     * @return the element, or null at the end of the section
+     * @throws ParsingException if the script cannot be read
+     */
+    protected abstract Element nextElement() throws ParsingException;
+
+    TestStep next() throws ParsingException {
+        while (true) {
+            if (called != null) {
+                TestStep step = called.next();
+                if (step != null) {
+                    return step;
                 }
+                called.close();
+                called = null;
             }
-            else if (node.getNodeName().equals(CALL_SCRIPT_WITH_DATA)) {
-                String utilScriptName =
-                    ((Element)node).getAttribute(UTILITY_SCRIPT_NAME);
-                String dataFile = 
-                    ((Element)node).getAttribute(DATA_FOR_SCRIPT);
-                generateTestScript(dataFile, utilScriptName);
-                Iterator utilScriptSteps = parseTestSteps(TEMP_FILE);
-                while(utilScriptSteps.hasNext()) {
-                    step = (TestStep)(utilScriptSteps.next());
-                    testSteps.add(step);
-                    utilScriptSteps.remove();
-                }
+            Element node = nextElement();
+            if (node == null) {
+                return null;
             }
-            // Case Three: This is a single test step.  This case is the basis 
-            // for the recursion.
-            else {
+            called = expand(node);
+            if (called == null) {
                 stepNum++;
-                try {
-                    step = TestStep.Creator.create(testScript, stepNum, 
-                        (Element)node);
-                }
-                catch (InstantiationException e) {
-                    throw new ParsingException(e.getMessage());
-                }
-                catch (IllegalAccessException e) {
-                    throw new ParsingException(e.getMessage());                
-                }
-                catch (java.lang.reflect.InvocationTargetException e) {
-					//java.lang.reflect.InvocationTargetException is a wrapper of the target exception
-                    throw new ParsingException(e.getTargetException().getMessage());
+                return TestStep.Creator.create(testScript, stepNum, node);
+            }
+        }
+    }
+
+    void close() {
+        if (called != null) {
+            called.close();
+            called = null;
+        }
+    }
+} // ScriptSource
+
+/** The steps of a script which has been turned into a Document.  Parsing
+ * errors are found when the source is created; only the test steps themselves
+ * are created as they are taken.
+ */
+private class DocumentScript extends ScriptSource {
+
+    /** The next node of the section containing test step nodes.
+     */
+    private Node node;
+
+    /** Parses a script.
+     *
+     * @param testScript the path of the script
+     * @throws ParsingException if the script cannot be parsed, or has no
+     * section containing test step nodes
+     */
+    private DocumentScript(String testScript) throws ParsingException {
+        super(testScript);
+        // Extract the node containing test steps.  There is only one of
+        // those.  The rest of the document is not needed anymore.
+        Node testStepsSection = parseDocument(testScript)
+            .getElementsByTagName(TEST_STEPS).item(0);
+        if (testStepsSection == null) {
+            throw new ParsingException("Errors parsing " + testScript
+                + ":\nno " + TEST_STEPS + " element");
+        }
+        node = testStepsSection.getFirstChild();
+    }
+
+    protected Element nextElement() {
+        // Skip the comment (and text) nodes.
+        while (node != null && node.getNodeType() != Node.ELEMENT_NODE) {
+            node = node.getNextSibling();
+        }
+        if (node == null) {
+            return null;
+        }
+        Element element = (Element)node;
+        node = node.getNextSibling();
+        return element;
+    }
+} // DocumentScript
+
+/** The steps of a script which is read without building a Document for the
+ * whole of it.
+ * <P>
+ * The script is read with a StAX stream reader.  Each element of the section
+ * containing test step nodes is turned into a stand-alone Element when the
+ * steps before it have been taken, and dropped once it has been turned into
+ * steps.  So the memory needed does not depend on the number of steps in the
+ * script, only on the size of the largest one.  Once the end of the section
+ * has been reached, the rest of the script is read as well, so that a script
+ * that is not well-formed is rejected, whatever the parser mode.
+ */
+private class StreamedScript extends ScriptSource {
+
+    /** The script file.
+     */
+    private InputStream in;
+
+    /** Reads the script file; null once the whole script has been read.
+     */
+    private XMLStreamReader reader;
+
+    /** Opens a script, and reads it up to the section containing test step
+     * nodes.
+     *
+     * @param testScript the path of the script
+     * @throws ParsingException if the script cannot be read, or has no
+     * section containing test step nodes
+     */
+    private StreamedScript(String testScript) throws ParsingException {
+        super(testScript);
+        try {
+            in = new BufferedInputStream(new FileInputStream(testScript));
+            reader = inputFactory.createXMLStreamReader(testScript, in);
+            createElementFactory();
+
+            // Skip everything up to the (one) section containing test steps.
+            while (reader.hasNext()
+                   && !(reader.next() == XMLStreamConstants.START_ELEMENT
+                        && getName(reader).equals(TEST_STEPS))) {
+            }
+            if (!reader.hasNext()) {
+                throw new ParsingException("Errors parsing " + testScript
+                    + ":\nno " + TEST_STEPS + " element");
+            }
+        }
+        catch (XMLStreamException e) {
+            close();
+            throw failure(e);
+        }
+        catch (javax.xml.parsers.ParserConfigurationException e) {
+            close();
+            throw new ParsingException(e.getMessage());
+        }
+        catch (java.io.IOException e) {
+            close();
+            throw new ParsingException(e.getMessage());
+        }
+        catch (ParsingException e) {
+            close();
+            throw e;
+        }
+    }
+
+    protected Element nextElement() throws ParsingException {
+        if (reader == null) {
+            return null;
+        }
+        try {
+            int event;
+            while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    return readElement(reader);
                 }
-                testSteps.add(step);
             }
+            // Make sure the rest of the script is well-formed too.
+            while (reader.hasNext()) {
+                reader.next();
+            }
+        }
+        catch (XMLStreamException e) {
+            close();
+            throw failure(e);
+        }
+        close();
+        return null;
+    }
+
+    void close() {
+        super.close();
+        try {
+            if (reader != null) {
+                reader.close();
+            }
+            if (in != null) {
+                in.close();
+            }
+        }
+        catch (Exception e) {
+            // Bury this exception - the script has been read, or parsing has
+            // failed anyway.
+        }
+        reader = null;
+        in = null;
+    }
+
+    /** Describes a failure to read the script.
+     *
+     * @param e the failure
+     * @return the exception to throw
+     */
+    private ParsingException failure(XMLStreamException e) {
+        int line = (e.getLocation() != null) ? e.getLocation().getLineNumber() : -1;
+        return new ParsingException("Errors parsing " + testScript + ":\n"
+            + "[Fatal Error] at line number " + line + ": " + e.getMessage());
+    }
+} // StreamedScript
+
+/** The steps of a script in the compact format.  Each line is read from the
+ * mapped script file when the steps before it have been taken.
+ */
+private class CompactScriptSource extends ScriptSource {
+
+    /** Reads the script.
+     */
+    private CompactScript script;
+
+    /** Opens a compact script.
+     *
+     * @param testScript the path of the script
+     * @throws ParsingException if the script cannot be opened
+     */
+    private CompactScriptSource(String testScript) throws ParsingException {
+        super(testScript);
+        try {
+            createElementFactory();
         }
+        catch (javax.xml.parsers.ParserConfigurationException e) {
+            throw new ParsingException(e.getMessage());
+        }
+        script = new CompactScript(testScript, elementFactory);
+    }
+
+    protected Element nextElement() throws ParsingException {
+        return script.nextElement();
+    }
+
+    void close() {
+        super.close();
+        script.close();
+    }
+} // CompactScriptSource
+
+/** Creates the document that creates stand-alone Elements, unless it has
+ * already been created.
+ *
+ * @throws javax.xml.parsers.ParserConfigurationException if the document
+ * cannot be created
+ */
+private void createElementFactory()
+throws javax.xml.parsers.ParserConfigurationException {
+    if (elementFactory == null) {
+        elementFactory = DocumentBuilderFactory.newInstance()
+            .newDocumentBuilder().newDocument();
+    }
+}
+
+/** Reads an element, and everything in it, into a stand-alone Element.
+ *
+ * @param reader a reader positioned on the start of the element
+ * @return the element, which belongs to no document tree
+ * @throws XMLStreamException if the element is not well-formed
+ */
+private Element readElement(XMLStreamReader reader) throws XMLStreamException {
+    Element element = elementFactory.createElement(getName(reader));
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+        String prefix = reader.getAttributePrefix(i);
+        String name = reader.getAttributeLocalName(i);
+        element.setAttribute((prefix == null || prefix.equals(""))
+                             ? name : prefix + ":" + name,
+                             reader.getAttributeValue(i));
+    }
+    int event;
+    while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+        if (event == XMLStreamConstants.START_ELEMENT) {
+            element.appendChild(readElement(reader));
+        }
+        else if (event == XMLStreamConstants.CHARACTERS
+                 || event == XMLStreamConstants.CDATA
+                 || event == XMLStreamConstants.SPACE) {
+            element.appendChild(elementFactory.createTextNode(reader.getText()));
+        }
+    }
+    return element;
+}
+
+/** Returns the name of the current element, with its prefix, as a DOM parser
+ * would.
+ *
+ * @param reader a reader positioned on the start of an element
+ * @return the qualified name of the element
+ */
+private static String getName(XMLStreamReader reader) {
+    String prefix = reader.getPrefix();
+    return (prefix == null || prefix.equals(""))
+        ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+}
+
+/** Returns the steps of a utility script called with the callScript tag.
+ * <P>
+ * The utility script is only parsed if it has not been parsed before (by any
+ * parser), or if it, or one of the files it calls, has been modified since;
+ * see UtilityScriptCache.
+ *
+ * @param utilScript the path of the utility script
+ * @throws ParsingException if the utility script cannot be parsed
+ * @return a source of new TestStep objects
+ */
+private TestStepSource parseUtilityScript(String utilScript) throws ParsingException {
+    UtilityScriptCache.Entry entry = UtilityScriptCache.get(utilScript);
+    if (entry == null) {
+        UtilityScriptCache.Entry.Dependencies collected =
+            new UtilityScriptCache.Entry.Dependencies();
+        collected.add(utilScript);
+        utilityDependencies.add(collected);
+        List testSteps;
+        try {
+            testSteps = parseSteps(utilScript);
+        }
+        finally {
+            utilityDependencies.remove(utilityDependencies.size() - 1);
+        }
+        entry = UtilityScriptCache.put(utilScript, testSteps, collected);
+    }
+    else {
+        // The files were not read this time, but the script that is being
+        // parsed still depends on them.
+        List paths = entry.getDependencies();
+        for (int i = 0; i < paths.size(); i++) {
+            addDependency((String)(paths.get(i)));
+        }
+    }
+    for (int i = 0; i < utilityDependencies.size(); i++) {
+        ((UtilityScriptCache.Entry.Dependencies)(utilityDependencies.get(i)))
+            .addAll(entry);
+    }
+    return entry.openSteps();
+}
+
+/** Remembers that the script being parsed, and the utility scripts that are
+ * being parsed, depend on a file.
+ *
+ * @param fileName the path of the file
+ */
+private void addDependency(String fileName) {
+    if (dependencies != null && !dependencies.contains(fileName)) {
+        dependencies.add(fileName);
+    }
+    for (int i = 0; i < utilityDependencies.size(); i++) {
+        ((UtilityScriptCache.Entry.Dependencies)(utilityDependencies.get(i)))
+            .add(fileName);
     }
-    return testSteps.iterator();
 }
 
 /** Used internally - turns an xml file into an instance of Document.
@@ -195,6 +790,10 @@ private Document parseDocument(String fileName) throws ParsingException {
     parsingErrors.clearErrors();
     
     try {
+        if (schema != null) {
+            // Picks up the schema again if it has been modified.
+            useGrammarPool(ScriptSchema.getGrammarPool(schema));
+        }
         parser.parse(fileName);
         d = parser.getDocument();
         parser.reset();
@@ -216,47 +815,217 @@ private Document parseDocument(String fileName) throws ParsingException {
     return d;
 }
 
-/** Generates a test script given a utility script (an xsl file) and a data file
- * (an xml file).  The test script is written to the location specified by
- * <CODE>TEMP_FILE<CODE>.
+/** Generates test steps given a utility script (an xsl file) and a data file
+ * (an xml file).
+ * <P>
+ * The utility script is compiled only once, and compiled again only if it has
+ * been modified since (see getTemplates).  The output of the transformation is
+ * not written anywhere: it is turned into test steps as it is produced, by a
+ * StepBuilder, just as a script is in streaming mode.  The steps get the
+ * script id "utilScript+dataFile", and are numbered from 1.
  *
  * @param dataFile a file path for the xml file containing data
  * @param utilScript a filepath for the xsl file containing the utility script
  * @throws ParsingException if there are any problems processing the file 
- * specified by utilityScript, or combining dataFile and utilityScript
+ * specified by utilityScript, or combining dataFile and utilityScript, or
+ * creating the resulting test steps
+ * @return a List containing objects of type TestStep
  */
-private void generateTestScript(String dataFile, String utilScript) throws 
+private List generateTestSteps(String dataFile, String utilScript) throws 
 ParsingException {
-    tFactoryErrors.clearErrors();
-    transformationErrors.clearErrors();
-    
     Transformer t;
     try {
-        t = tFactory.newTransformer(new StreamSource(utilScript));
+        t = getTemplates(utilScript).newTransformer();
     }
     catch (TransformerConfigurationException e) {
         throw new ParsingException(e.getMessage());
     }
-    if(!tFactoryErrors.isEmpty()) {
-        throw new ParsingException("Errors processing " + utilScript + ":\n"
-            + tFactoryErrors.getErrorMessages());
-    }
+    // The transformation may call back into this parser (if the generated
+    // script calls other scripts), so the errors must not be shared.
+    Errors errors = new Errors();
+    t.setErrorListener(errors);
+    StepBuilder builder = new StepBuilder(utilScript + DATA_SEPARATOR + dataFile);
     try {
-        t.transform(new StreamSource(dataFile), 
-                    new StreamResult(new FileOutputStream(TEMP_FILE)));
+        t.transform(new StreamSource(dataFile), new SAXResult(builder));
     }
     catch(TransformerException e) {
+        if (builder.failure != null) {
+            throw builder.failure;
+        }
         throw new ParsingException(e.getMessage());
     }
-    catch(java.io.FileNotFoundException e) {
+    if(!errors.isEmpty()) {
+        throw new ParsingException("Error transforming " + dataFile + ":\n"
+            + errors.getErrorMessages());
+    }
+    return builder.testSteps;
+}
+
+/** Returns the compiled form of a utility stylesheet, compiling it if it has
+ * not been compiled before, or if it has been modified since.
+ *
+ * @param utilScript a filepath for the xsl file containing the utility script
+ * @throws ParsingException if there are any problems processing the file
+ * @return the compiled stylesheet
+ */
+private Templates getTemplates(String utilScript) throws ParsingException {
+    long lastModified = new File(utilScript).lastModified();
+    synchronized (stylesheets) {
+        CompiledStylesheet compiled =
+            (CompiledStylesheet)(stylesheets.get(utilScript));
+        if (compiled != null && compiled.lastModified == lastModified) {
+            return compiled.templates;
+        }
+    }
+
+    tFactoryErrors.clearErrors();
+    Templates templates;
+    try {
+        templates = tFactory.newTemplates(new StreamSource(utilScript));
+    }
+    catch (TransformerConfigurationException e) {
         throw new ParsingException(e.getMessage());
     }
-    if(!transformationErrors.isEmpty()) {
-        throw new ParsingException("Error transforming " + dataFile + ":\n"
-            + transformationErrors.getErrorMessages());
+    if(!tFactoryErrors.isEmpty()) {
+        throw new ParsingException("Errors processing " + utilScript + ":\n"
+            + tFactoryErrors.getErrorMessages());
     }
+    synchronized (stylesheets) {
+        stylesheets.put(utilScript,
+                        new CompiledStylesheet(templates, lastModified));
+    }
+    return templates;
 }
 
+/** A utility stylesheet compiled by getTemplates, and the time the file was
+ * last modified when it was compiled.
+ */
+private static class CompiledStylesheet {
+
+    /** The compiled stylesheet.
+     */
+    private Templates templates;
+
+    /** The time the stylesheet was last modified before it was compiled.
+     */
+    private long lastModified;
+
+    /** Creates a CompiledStylesheet.
+     *
+     * @param templates the compiled stylesheet
+     * @param lastModified the time the file was last modified
+     */
+    private CompiledStylesheet(Templates templates, long lastModified) {
+        this.templates = templates;
+        this.lastModified = lastModified;
+    }
+} // CompiledStylesheet
+
+/** Turns the SAX events of a generated test script into test steps as they
+ * arrive.  Each element directly inside the section containing test step
+ * nodes is built into a stand-alone Element, and turned into test steps as
+ * soon as it ends.
+ */
+private class StepBuilder extends DefaultHandler {
+
+    /** The script id of the generated steps.
+     */
+    private String testScript;
+
+    /** The steps generated so far.
+     */
+    private List testSteps = new ArrayList();
+
+    /** The number of the last step generated so far.
+     */
+    private int stepNum = 0;
+
+    /** True while inside the section containing test step nodes.
+     */
+    private boolean inTestSteps = false;
+
+    /** The elements that have been started but not yet ended, innermost
+     * last (only inside the section containing test step nodes).
+     */
+    private List open = new ArrayList();
+
+    /** The failure that stopped the transformation, if it happened while
+     * creating steps.
+     */
+    private ParsingException failure;
+
+    /** Creates a StepBuilder.
+     *
+     * @param testScript the script id of the generated steps
+     * @throws ParsingException if no document can be created for the
+     * elements
+     */
+    private StepBuilder(String testScript) throws ParsingException {
+        this.testScript = testScript;
+        try {
+            createElementFactory();
+        }
+        catch (javax.xml.parsers.ParserConfigurationException e) {
+            throw new ParsingException(e.getMessage());
+        }
+    }
+
+    public void startElement(String uri, String localName, String qName,
+                             Attributes attributes) {
+        String name = (qName != null && !qName.equals("")) ? qName : localName;
+        if (!inTestSteps) {
+            inTestSteps = name.equals(TEST_STEPS);
+            return;
+        }
+        Element element = elementFactory.createElement(name);
+        for (int i = 0; i < attributes.getLength(); i++) {
+            String attribute = attributes.getQName(i);
+            if (attribute == null || attribute.equals("")) {
+                attribute = attributes.getLocalName(i);
+            }
+            element.setAttribute(attribute, attributes.getValue(i));
+        }
+        if (!open.isEmpty()) {
+            ((Element)(open.get(open.size() - 1))).appendChild(element);
+        }
+        open.add(element);
+    }
+
+    public void characters(char[] ch, int start, int length) {
+        if (!open.isEmpty()) {
+            ((Element)(open.get(open.size() - 1))).appendChild(
+                elementFactory.createTextNode(new String(ch, start, length)));
+        }
+    }
+
+    public void endElement(String uri, String localName, String qName)
+    throws SAXException {
+        if (open.isEmpty()) {
+            // This is the end of the section, or of something outside it.
+            inTestSteps = false;
+            return;
+        }
+        Element element = (Element)(open.remove(open.size() - 1));
+        if (open.isEmpty()) {
+            try {
+                TestStepSource called = expand(element);
+                if (called == null) {
+                    stepNum++;
+                    testSteps.add(TestStep.Creator.create(testScript, stepNum,
+                                                          element));
+                }
+                else {
+                    addAll(testSteps, called);
+                }
+            }
+            catch (ParsingException e) {
+                failure = e;
+                throw new SAXException(e.getMessage());
+            }
+        }
+    }
+} // StepBuilder
+
 /** The ErrorHandler implementation for TestScriptParser.
  * <P>
  * For each encountered fatal error, error, or warning, composes a message, and
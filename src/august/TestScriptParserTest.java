@@ -0,0 +1,408 @@
+package august;
+
+import junit.framework.*;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.w3c.dom.Element;
+
+public class TestScriptParserTest extends TestCase {
+
+private File dir;
+
+private String baseDir;
+
+public TestScriptParserTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(TestScriptParserTest.class);
+}
+
+protected void setUp() throws Exception {
+    dir = new File("parser_test_dir");
+    new File(dir, "config").mkdirs();
+    write("config/testStepCreatorConfig.properties",
+          "step=" + Step.class.getName() + "\n");
+    baseDir = System.getProperty("base.dir");
+    System.setProperty("base.dir", dir.getPath());
+    TestStep.Creator.initialize();
+    UtilityScriptCache.clear();
+
+    write("util.xml", "<script><testSteps>"
+          + "<step name='u1'/><step name='u2'/>"
+          + "</testSteps></script>");
+    write("main.xml", "<script><!-- steps follow --><testSteps>"
+          + "<step name='m1'><arg type='t' value='v'/></step>"
+          + "<callScript script='" + path("util.xml") + "'/>"
+          + "<step name='m2'/>"
+          + "</testSteps></script>");
+    write("broken.xml", "<script><testSteps><step name='b1'/></script>");
+    write("rows.xml", "<rows><row name='r1'/><row name='r2'/></rows>");
+    write("rows.xsl", "<xsl:stylesheet version='1.0' "
+          + "xmlns:xsl='http://www.w3.org/1999/XSL/Transform'>"
+          + "<xsl:template match='/'><script><testSteps>"
+          + "<xsl:for-each select='rows/row'>"
+          + "<step name='{@name}'><arg type='t' value='v'/></step>"
+          + "</xsl:for-each>"
+          + "<callScript script='" + path("util.xml") + "'/>"
+          + "</testSteps></script></xsl:template></xsl:stylesheet>");
+    write("data.xml", "<script><testSteps><step name='d1'/>"
+          + "<callScriptWithData script='" + path("rows.xsl") + "' data='"
+          + path("rows.xml") + "'/>"
+          + "</testSteps></script>");
+}
+
+protected void tearDown() {
+    if (baseDir != null) {
+        System.setProperty("base.dir", baseDir);
+    }
+    new File(dir, "config/testStepCreatorConfig.properties").delete();
+    new File(dir, "config").delete();
+    new File(dir, "util.xml").delete();
+    new File(dir, "main.xml").delete();
+    new File(dir, "broken.xml").delete();
+    new File(dir, "rows.xml").delete();
+    new File(dir, "rows.xsl").delete();
+    new File(dir, "data.xml").delete();
+    dir.delete();
+}
+
+public void testDocumentMode() throws Exception {
+    TestScriptParser parser = new TestScriptParser();
+    checkSteps(parser);
+    assertTrue(parser.getDependencies().contains(path("main.xml")));
+    assertTrue(parser.getDependencies().contains(path("util.xml")));
+}
+
+public void testStreamingMode() throws Exception {
+    TestScriptParser parser = new TestScriptParser();
+    parser.setStreaming(true);
+    checkSteps(parser);
+}
+
+public void testStreamingModeRejectsBrokenScript() throws Exception {
+    TestScriptParser parser = new TestScriptParser();
+    parser.setStreaming(true);
+    try {
+        parser.parseTestSteps(path("broken.xml"));
+        fail("broken script was parsed");
+    }
+    catch (ParsingException e) {
+        assertTrue(e.getMessage().indexOf("at line number 1") > 0);
+    }
+}
+
+public void testOpenedScriptCreatesStepsWhenTaken() throws Exception {
+    write("lazy.xml", "<script><testSteps><step name='l1'/>"
+          + "<callScript script='" + path("util.xml") + "'/><unknown/>"
+          + "</testSteps></script>");
+    for (int mode = 0; mode < 2; mode++) {
+        TestScriptParser parser = new TestScriptParser();
+        parser.setStreaming(mode == 1);
+        TestStepSource steps = parser.openTestSteps(path("lazy.xml"));
+        try {
+            assertEquals("l1", ((Step)(steps.next())).name);
+            assertEquals("u1", ((Step)(steps.next())).name);
+            assertEquals("u2", ((Step)(steps.next())).name);
+            steps.next();
+            fail("unknown tag was accepted");
+        }
+        catch (ParsingException e) {
+            assertEquals("Cannot handle unknown", e.getMessage());
+        }
+        finally {
+            steps.close();
+        }
+    }
+    new File(dir, "lazy.xml").delete();
+}
+
+public void testPrefetchedScriptsCreateStepsWhenTaken() throws Exception {
+    write("lazy.xml", "<script><testSteps><step name='l1'/><unknown/>"
+          + "</testSteps></script>");
+    List scripts = new ArrayList();
+    for (int i = 0; i < 4; i++) {
+        scripts.add(path((i == 1) ? "lazy.xml" : "main.xml"));
+    }
+    ScriptPrefetcher prefetcher =
+        new ScriptPrefetcher(scripts, 1, new TestScriptParser());
+    prefetcher.start();
+    for (int i = 0; i < 4; i++) {
+        ScriptPrefetcher.ParsedScript script = prefetcher.next();
+        assertEquals(scripts.get(i), script.getTestScript());
+        assertNull(script.getFailure());
+        TestStepSource steps = script.getTestSteps();
+        try {
+            if (i == 1) {
+                assertEquals("l1", ((Step)(steps.next())).name);
+                steps.next();
+                fail("unknown tag was accepted");
+            }
+            String[] names = {"m1", "u1", "u2", "m2"};
+            for (int j = 0; j < names.length; j++) {
+                assertEquals(names[j], ((Step)(steps.next())).name);
+            }
+            assertNull(steps.next());
+        }
+        catch (ParsingException e) {
+            assertEquals(1, i);
+            assertEquals("Cannot handle unknown", e.getMessage());
+        }
+        finally {
+            // Closing returns the parser, so the scripts after the
+            // first three can be opened.
+            steps.close();
+        }
+    }
+    new File(dir, "lazy.xml").delete();
+}
+
+public void testPrefetcherQueuesUnexpectedFailures() throws Exception {
+    write("error.xml", "<script><testSteps><step name='error'/>"
+          + "</testSteps></script>");
+    List scripts = new ArrayList();
+    scripts.add(path("error.xml"));
+    scripts.add(path("main.xml"));
+    ScriptPrefetcher prefetcher =
+        new ScriptPrefetcher(scripts, 1, new TestScriptParser());
+    prefetcher.start();
+    ScriptPrefetcher.ParsedScript script = prefetcher.next();
+    assertEquals(path("error.xml"), script.getTestScript());
+    assertNull(script.getTestSteps());
+    assertEquals("cannot create step",
+                 script.getFailure().getCause().getMessage());
+    // The prefetcher goes on with the next script.
+    script = prefetcher.next();
+    assertNull(script.getFailure());
+    assertEquals("m1", ((Step)(script.getTestSteps().next())).name);
+    script.getTestSteps().close();
+    new File(dir, "error.xml").delete();
+}
+
+public void testCompactScript() throws Exception {
+    write("main.aug", "# steps follow\n\n"
+          + "step name=m1 {arg type=t value=v}\r\n"
+          + "callScript script=" + path("util.xml") + "\n"
+          + "  step name=\"m2\"");
+    checkSteps(new TestScriptParser(), "main.aug");
+
+    write("bad.aug", "step name=b1\nstep name=\"b2\n");
+    TestStepSource steps = new TestScriptParser().openTestSteps(path("bad.aug"));
+    try {
+        assertEquals("b1", ((Step)(steps.next())).name);
+        steps.next();
+        fail("unterminated value was accepted");
+    }
+    catch (ParsingException e) {
+        assertTrue(e.getMessage().indexOf("at line number 2") > 0);
+    }
+    finally {
+        steps.close();
+    }
+    new File(dir, "main.aug").delete();
+    new File(dir, "bad.aug").delete();
+}
+
+public void testCompactScriptReleasesFile() throws Exception {
+    write("open.aug", "step name=o1\nstep name=o2\n");
+    TestStepSource steps =
+        new TestScriptParser().openTestSteps(path("open.aug"));
+    try {
+        assertEquals("o1", ((Step)(steps.next())).name);
+        // The script is being read, but its file is no longer held open.
+        assertTrue(new File(dir, "open.aug").delete());
+        assertEquals("o2", ((Step)(steps.next())).name);
+    }
+    finally {
+        steps.close();
+    }
+}
+
+public void testCompactScriptConversion() throws Exception {
+    write("odd.xml", "<script><testSteps><!-- odd values -->"
+          + "<step name='o1' empty='' text='a \"b\" {c} \\d&#10;&#233;'>"
+          + "<arg type='t' value='v'/></step>"
+          + "</testSteps></script>");
+    CompactScript.fromXml(path("odd.xml"), path("odd.aug"));
+    CompactScript.toXml(path("odd.aug"), path("odd2.xml"));
+    CompactScript.fromXml(path("odd2.xml"), path("odd2.aug"));
+    assertEquals(ScriptCache.hash(new File(dir, "odd.aug")),
+                 ScriptCache.hash(new File(dir, "odd2.aug")));
+
+    TestStepSource steps = new TestScriptParser().openTestSteps(path("odd.aug"));
+    Step step = (Step)(steps.next());
+    steps.close();
+    assertEquals("", step.node.getAttribute("empty"));
+    assertEquals("a \"b\" {c} \\d\n\u00e9", step.node.getAttribute("text"));
+    new File(dir, "odd.xml").delete();
+    new File(dir, "odd.aug").delete();
+    new File(dir, "odd2.xml").delete();
+    new File(dir, "odd2.aug").delete();
+}
+
+public void testSchemaValidation() throws Exception {
+    write("script.xsd", "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+          + "<xs:element name='script'><xs:complexType><xs:sequence>"
+          + "<xs:element name='testSteps'><xs:complexType>"
+          + "<xs:choice minOccurs='0' maxOccurs='unbounded'>"
+          + "<xs:element name='step'><xs:complexType><xs:sequence>"
+          + "<xs:any processContents='skip' minOccurs='0' maxOccurs='unbounded'/>"
+          + "</xs:sequence><xs:attribute name='name' use='required'/>"
+          + "</xs:complexType></xs:element>"
+          + "<xs:element name='callScript'><xs:complexType>"
+          + "<xs:attribute name='script' use='required'/>"
+          + "</xs:complexType></xs:element>"
+          + "</xs:choice></xs:complexType></xs:element>"
+          + "</xs:sequence></xs:complexType></xs:element></xs:schema>");
+    write("invalid.xml", "<script><testSteps><step name='i1'/><step/>"
+          + "</testSteps></script>");
+    TestScriptParser parser = new TestScriptParser();
+    parser.setSchema(path("script.xsd"));
+    checkSteps(parser);
+    try {
+        new TestScriptParser(parser).openTestSteps(path("invalid.xml"));
+        fail("invalid script was accepted");
+    }
+    catch (ParsingException e) {
+        assertTrue(e.getMessage().indexOf("[Error]") > 0);
+    }
+    assertSame(ScriptSchema.getGrammarPool(path("script.xsd")),
+               ScriptSchema.getGrammarPool(path("script.xsd")));
+    new File(dir, "script.xsd").delete();
+    new File(dir, "invalid.xml").delete();
+}
+
+public void testUtilityScriptIsMemoized() throws Exception {
+    TestScriptParser parser = new TestScriptParser();
+    Iterator first = parser.parseTestSteps(path("main.xml"));
+    first.next();
+    Step u1 = (Step)(first.next());
+    Iterator second = new TestScriptParser().parseTestSteps(path("main.xml"));
+    second.next();
+    Step copy = (Step)(second.next());
+    assertNotSame(u1, copy);
+    assertEquals("u1", copy.name);
+
+    write("util.xml", "<script><testSteps><step name='changed'/></testSteps></script>");
+    File util = new File(dir, "util.xml");
+    util.setLastModified(util.lastModified() + 2000);
+    Iterator third = parser.parseTestSteps(path("main.xml"));
+    third.next();
+    assertEquals("changed", ((Step)(third.next())).name);
+    assertEquals("m2", ((Step)(third.next())).name);
+}
+
+public void testScriptWithData() throws Exception {
+    TestScriptParser parser = new TestScriptParser();
+    for (int run = 0; run < 2; run++) {
+        Iterator steps = parser.parseTestSteps(path("data.xml"));
+        assertEquals("d1", ((Step)(steps.next())).name);
+        Step r1 = (Step)(steps.next());
+        assertEquals("r1", r1.name);
+        assertEquals(path("rows.xsl") + TestScriptParser.DATA_SEPARATOR
+                     + path("rows.xml"), r1.getScriptID());
+        assertEquals(1, r1.getStepNumber());
+        Step r2 = (Step)(steps.next());
+        assertEquals("r2", r2.name);
+        assertEquals(2, r2.getStepNumber());
+        assertEquals("u1", ((Step)(steps.next())).name);
+        assertEquals("u2", ((Step)(steps.next())).name);
+        assertFalse(steps.hasNext());
+    }
+}
+
+public void testValidatorReportsEveryBrokenScript() throws Exception {
+    List scripts = new ArrayList();
+    scripts.add(path("broken.xml"));
+    scripts.add(path("main.xml"));
+    scripts.add(path("missing.xml"));
+    scripts.add(path("data.xml"));
+    List failures = new ScriptValidator(new TestScriptParser(), 3)
+        .validate(scripts);
+    assertEquals(2, failures.size());
+    assertTrue(((String)(failures.get(0))).startsWith(path("broken.xml")));
+    assertTrue(((String)(failures.get(1))).startsWith(path("missing.xml")));
+}
+
+public void testRegisteredFactory() throws Exception {
+    TestStep.Creator.register("custom", new TestStep.Factory() {
+        public TestStep create(String scriptID, int stepNumber, Element node)
+        throws ParsingException {
+            Step step = new Step(scriptID, Integer.valueOf(stepNumber), node);
+            step.name = "custom " + node.getAttribute("name");
+            return step;
+        }
+    });
+    write("custom.xml", "<script><testSteps><custom name='c'/>"
+          + "<unknown/></testSteps></script>");
+    try {
+        new TestScriptParser().parseTestSteps(path("custom.xml"));
+        fail("unknown tag was accepted");
+    }
+    catch (ParsingException e) {
+        assertEquals("Cannot handle unknown", e.getMessage());
+    }
+    write("custom.xml", "<script><testSteps><custom name='c'/></testSteps></script>");
+    Iterator steps = new TestScriptParser().parseTestSteps(path("custom.xml"));
+    assertEquals("custom c", ((Step)(steps.next())).name);
+    new File(dir, "custom.xml").delete();
+}
+
+private void checkSteps(TestScriptParser parser) throws Exception {
+    checkSteps(parser, "main.xml");
+}
+
+private void checkSteps(TestScriptParser parser, String main) throws Exception {
+    Iterator steps = parser.parseTestSteps(path(main));
+    String[] names = {"m1", "u1", "u2", "m2"};
+    String[] scripts = {main, "util.xml", "util.xml", main};
+    int[] numbers = {1, 1, 2, 2};
+    for (int i = 0; i < names.length; i++) {
+        Step step = (Step)(steps.next());
+        assertEquals(names[i], step.name);
+        assertEquals(path(scripts[i]), step.getScriptID());
+        assertEquals(numbers[i], step.getStepNumber());
+    }
+    assertFalse(steps.hasNext());
+}
+
+private String path(String name) {
+    return new File(dir, name).getPath();
+}
+
+private void write(String name, String contents) throws IOException {
+    FileWriter out = new FileWriter(new File(dir, name));
+    out.write(contents);
+    out.close();
+}
+
+public static class Step extends TestStep {
+
+    String name;
+
+    transient Element node;
+
+    public Step(String scriptID, Integer stepNumber, Element node)
+    throws ParsingException {
+        super(scriptID, stepNumber, node);
+        name = node.getAttribute("name");
+        this.node = node;
+        if ((name.equals("m1") || name.startsWith("r"))
+            && node.getElementsByTagName("arg").getLength() != 1) {
+            throw new ParsingException("arg missing");
+        }
+        if (name.equals("error")) {
+            throw new Error("cannot create step");
+        }
+    }
+
+    public void execute() {
+    }
+} // Step
+
+}
@@ -1,11 +1,18 @@
 package august;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Properties;
 import java.util.Enumeration;
 import org.w3c.dom.Element;
-import java.lang.reflect.Constructor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.File;
 
 /** Base class for all classes that contain information about a single test step
@@ -19,11 +26,17 @@ import java.io.File;
  * step.
  * <P>
  * Known subclasses: GUIActionStep, ResultCheckStep
+ * <P>
+ * TestSteps are serializable, so that parsed scripts can be cached (see
+ * ScriptCache); subclasses must only keep serializable state.  They can also
+ * be copied (see copy), so that the steps of a utility script only need to be
+ * parsed once per run; subclasses must not change their state after they have
+ * been constructed, since copies share it.
  *
  * @author weronika
  * @see TestStepSequence
  */
-public abstract class TestStep {
+public abstract class TestStep implements java.io.Serializable, Cloneable {
     
 /** The xml attribute which specifies whether the test run containing this test
  * step should be aborted if this test step fails.
@@ -34,6 +47,36 @@ protected static final String RETRY_TIMES = "retryTimes";
 
 protected static final String RETRY_DELAY = "retryDelay";
 
+/** The xml attribute which specifies how the step is retried ("fixed",
+ * "backoff" or "onChange").
+ *
+ * @see RetryPolicy
+ */
+protected static final String RETRY_POLICY = "retryPolicy";
+
+/** The xml attribute which specifies the longest wait between retries of a
+ * step with the "backoff" retry policy.
+ */
+protected static final String RETRY_MAX_DELAY = "retryMaxDelay";
+
+/** The xml attribute which identifies the GUI component a step looks for by a
+ * selector, instead of by its name.
+ *
+ * @see ComponentSelector
+ */
+protected static final String SELECTOR = "selector";
+
+/** The xml attribute which specifies the number of milliseconds after the
+ * first failure of the step after which it is not retried any more.
+ */
+protected static final String RETRY_BUDGET = "retryBudget";
+
+/** The xml attribute which specifies the number of milliseconds this step may
+ * take before the TestEngine gives up on it.  If it is not specified, then the
+ * stepTimeout property of the config file applies.
+ */
+protected static final String TIMEOUT = "timeout";
+
 /** The id of the script where the step represented by this TestStep comes from.
  */    
 protected String scriptID;
@@ -51,6 +94,15 @@ protected int retryTimes = 0;
 
 protected int retryDelay = 0;
 
+/** The number of milliseconds this step may take, or 0 if the default
+ * applies.
+ */
+protected int timeout = 0;
+
+/** Decides how long to wait before each retry of this step.
+ */
+protected RetryPolicy retryPolicy;
+
 /** This constructor cannot be called directly, since TestStep is an abstract
  * class, but it should be called by constructors of subclasses of TestStep.
  * <P>
@@ -93,6 +145,64 @@ throws ParsingException {
             throw new ParsingException("retryDelay must be a positive number");
         }
     }
+
+    timeout = getIntAttribute(node, TIMEOUT);
+    retryPolicy = RetryPolicy.create(node.getAttribute(RETRY_POLICY),
+                                     retryDelay,
+                                     getIntAttribute(node, RETRY_MAX_DELAY),
+                                     getIntAttribute(node, RETRY_BUDGET));
+}
+
+/** Reads an optional, non-negative integer attribute.
+ *
+ * @param node the element representing this step
+ * @param attribute the name of the attribute
+ * @return the value of the attribute, or 0 if it is not specified
+ * @throws ParsingException if the attribute is not a positive number
+ */
+private static int getIntAttribute(Element node, String attribute)
+throws ParsingException {
+    String value = node.getAttribute(attribute);
+    if (value == null || value.equals("")) {
+        return 0;
+    }
+    try {
+        int i = Integer.parseInt(value);
+        if (i >= 0) {
+            return i;
+        }
+    }
+    catch(NumberFormatException nbe) {
+    }
+    throw new ParsingException(attribute + " must be a positive number");
+}
+
+/** Compiles the selector of a step that looks for a GUI component, if it has
+ * one.
+ *
+ * @param node the element representing this step
+ * @return the compiled selector, or null if the step does not have one
+ * @throws ParsingException if the selector is not well formed
+ */
+protected static ComponentSelector getSelector(Element node)
+throws ParsingException {
+    String selector = node.getAttribute(SELECTOR);
+    if (selector == null || selector.equals("")) {
+        return null;
+    }
+    return ComponentSelector.compile(selector);
+}
+
+/** @return the id of the script where this step comes from
+ */
+public String getScriptID() {
+    return scriptID;
+}
+
+/** @return the number of this step in its script
+ */
+public int getStepNumber() {
+    return stepNumber;
 }
 
 /** Called by the TestEngine, when the TestStep represented by this TestStep
@@ -115,6 +225,64 @@ public int getRetryDelay() {
     return retryDelay;
 }
 
+/** Called by the TestEngine before each retry of this step.
+ *
+ * @return the policy deciding how long to wait before each retry
+ */
+public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+}
+
+/** Returns the name of the GUI component this step looks for, if any.  The
+ * "onChange" retry policy uses it to recognize relevant changes.
+ * <P>
+ * Subclasses that look for a component should override this method.
+ *
+ * @return the name of the component, or null if this step does not look for
+ * a component, or looks for it with a selector
+ */
+public String getComponentName() {
+    return null;
+}
+
+/** Returns the selector of the GUI component this step looks for, if it
+ * looks for one with a selector.  The "onChange" retry policy uses it to
+ * recognize relevant changes.
+ * <P>
+ * Subclasses that look for a component with a selector should override this
+ * method.
+ *
+ * @return the selector, or null if this step does not look for a component
+ * with a selector
+ */
+public ComponentSelector getComponentSelector() {
+    return null;
+}
+
+/** Called by the TestEngine to find out how long to wait for this step.
+ *
+ * @return the number of milliseconds this step may take, or 0 if the
+ * stepTimeout property of the config file applies
+ */
+public int getTimeout() {
+    return timeout;
+}
+
+/** Creates a copy of this step.  The copy shares the state of this step,
+ * which therefore must not change after the step is constructed.
+ *
+ * @return a new TestStep, equal to this one
+ */
+public TestStep copy() {
+    try {
+        return (TestStep)(clone());
+    }
+    catch (CloneNotSupportedException e) {
+        // TestStep is Cloneable.
+        throw new IllegalStateException(e.toString());
+    }
+}
+
 /** This method must be implemented by all subclasses.
  * <P>
  * It executes the instructions contained in this TestStep instance.  This may
@@ -172,31 +340,71 @@ protected class FailureException extends Exception {
     }
 }// FailureException
 
+/** Creates the TestStep declared by an XML element.
+ * <P>
+ * Every TestStep subclass that can be declared in test scripts has a factory,
+ * which TestStep.Creator uses to create its instances.
+ *
+ * @see TestStep.Creator#register(String, TestStep.Factory)
+ */
+public static interface Factory {
+
+    /** Creates a TestStep.
+     *
+     * @param scriptID id of the script where the step is declared
+     * @param stepNumber number of the step in the script
+     * @param node the XML element declaring the step
+     * @return a new TestStep
+     * @throws ParsingException if the node is missing information needed to
+     * create the TestStep
+     */
+    TestStep create(String scriptID, int stepNumber, Element node)
+    throws ParsingException;
+} // Factory
+
 /** TestStep.creator is a factory for instances of TestStep subclasses.
  * <P>
  * It is initialized by the TestEngine, and then used by the TestScriptParser.
  * <P>
- * The implementation is based on the Factory Method patern.
- *
+ * The implementation is based on the Factory Method patern.  Each XML tag is
+ * mapped to a TestStep.Factory.  The factories of the classes listed in the
+ * testStepCreatorConfig.properties file (and of any class registered with
+ * register(String, Class)) call the constructor of the class with the
+ * signature (String, Integer, Element) directly, through a class generated at
+ * run time, so creating a step costs no more than calling its constructor.
+ * Factories may also be registered directly.
  */
-protected static class Creator {
+public static class Creator {
+
+    /** The type of the constructors of TestStep subclasses.
+     */
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(
+        void.class, String.class, Integer.class, Element.class);
+
+    /** The type of the Factory.create method.
+     */
+    private static final MethodType CREATE_TYPE = MethodType.methodType(
+        TestStep.class, String.class, int.class, Element.class);
+
+    /** Maps xml tags to the factories of the subclasses of TestStep which
+     * implement the test steps specified by those tags.  Tags may be
+     * registered while scripts are being parsed on other threads.
+     */
+    private static Map tagsAndFactories = new ConcurrentHashMap();
+
+    /** Maps xml tags to the classes that create the test steps declared by
+     * them: the TestStep subclass, or the class of the factory if one was
+     * registered directly.
+     */
+    private static Map tagsAndClasses = new ConcurrentHashMap();
 
-/** Maps xml tags to constructors for subclasses of TestStep which implement the
- * test steps specified by those tags.
- */    
-    private static Map tagsAndConstructors = new HashMap();
-    
     /** Reads a mapping of XML tags to names of classes that implement test 
-     * steps declared by those tags in test scripts.
+     * steps declared by those tags in test scripts, from the file returned by
+     * getConfigFile, and registers each class.
      * <P>
      * Called by the TestEngine during initialization.
      *
      * @see java.util.Properties#
-     * @param testStepProperties relative or absolute path for a property file  
-     * that maps tags to names of TestStep subclasses; the format of the file 
-     * with this path must be the same as that expected by the Properties.load 
-     * method, with tag names on the left, and testStep subclass names on the 
-     * right
      * @throws IOException if i/o error is encountered while reading the 
      * testStepProperties file
      * @throws FileNotFoundException if the file with path described by 
@@ -206,41 +414,131 @@ protected static class Creator {
      * @throws NoSuchMethodException if at least on class listed in the 
      * testStepProperties file does not have a public constructor with this
      * signature: <BR>
-     * (java.lang.String, java.lang.Integer, org.w3c.dom.Node)
+     * (java.lang.String, java.lang.Integer, org.w3c.dom.Element)
+     * @throws IllegalAccessException if the constructor of at least one of
+     * the classes is not accessible
      */    
     protected static void initialize() throws
     java.io.IOException, java.io.FileNotFoundException, ClassNotFoundException,
-    NoSuchMethodException {
+    NoSuchMethodException, IllegalAccessException {
         // Read tags and TestStep classes that implement test steps
         // declared by those tags in test scripts into a Properties object p.
-        File properties = new File(System.getProperty("base.dir"),
-                "config/testStepCreatorConfig.properties");
-        Properties p = FileUtilities.loadProperties(properties.getPath());
+        Properties p = FileUtilities.loadProperties(getConfigFile().getPath());
         
-        // For each tag in p, create a constructor object for the class that 
-        // implements test steps declared with that tag in the test script,
-        // and map the tag to the constructor in the tagsAndConstructors map.
-        // This involves the following intermediate steps:
-        //  1. Create a Class object for a class name that corresponds to the
-        //     tag in p.
-        //  2. Get the constructor object with the signature 
-        //     (String, Integer, Node).
-        // This is implemented below:
+        // For each tag in p, register the class that implements test steps
+        // declared with that tag in the test script.
         Enumeration tags = p.propertyNames();
         String tag;
-        String testStepClassName;
-        Class testStepClass;
-        Constructor constructor;
-        Class[] parameterTypes = {String.class, Integer.class, Element.class};
         while (tags.hasMoreElements()) {
             tag = (String) (tags.nextElement());
-            testStepClassName = p.getProperty(tag);
-            testStepClass = Class.forName(testStepClassName);
-            constructor = testStepClass.getConstructor(parameterTypes);
-            tagsAndConstructors.put(tag, constructor);            
+            register(tag, Class.forName(p.getProperty(tag)));
         }
     }
     
+    /** Returns the file that maps XML tags to the classes that implement the
+     * test steps declared by those tags.
+     *
+     * @return the testStepCreatorConfig.properties file in the config
+     * subdirectory of the base directory
+     */
+    protected static File getConfigFile() {
+        return new File(System.getProperty("base.dir"),
+                        "config/testStepCreatorConfig.properties");
+    }
+
+    /** Makes the test steps declared with a tag be instances of a class.
+     * Replaces any factory registered for the tag before.
+     *
+     * @param tag the XML tag
+     * @param testStepClass a subclass of TestStep, with a public constructor
+     * with the signature (String, Integer, Element)
+     * @throws NoSuchMethodException if the class does not have such a
+     * constructor
+     * @throws IllegalAccessException if the constructor is not accessible
+     */
+    public static void register(String tag, Class testStepClass)
+    throws NoSuchMethodException, IllegalAccessException {
+        register(tag, createFactory(testStepClass));
+        tagsAndClasses.put(tag, testStepClass);
+    }
+
+    /** Makes the test steps declared with a tag be created by a factory.
+     * Replaces any factory registered for the tag before.
+     *
+     * @param tag the XML tag
+     * @param factory the factory
+     */
+    public static void register(String tag, Factory factory) {
+        tagsAndFactories.put(tag, factory);
+        tagsAndClasses.put(tag, factory.getClass());
+    }
+
+    /** Returns the classes whose code creates the registered test steps.
+     *
+     * @return the TestStep subclasses (or, for factories registered directly,
+     * the classes of the factories), in no particular order
+     */
+    protected static List getStepClasses() {
+        return new ArrayList(new HashSet(tagsAndClasses.values()));
+    }
+
+    /** Creates the factory of a TestStep subclass.
+     * <P>
+     * The factory is an instance of a class generated with the
+     * LambdaMetafactory, whose create method calls the constructor directly.
+     * If no such class can be generated (for example because the TestStep
+     * subclass was loaded by a class loader this class cannot see), then the
+     * factory calls the constructor through a method handle instead.
+     *
+     * @param testStepClass a subclass of TestStep
+     * @return a factory creating instances of the subclass
+     * @throws NoSuchMethodException if the class does not have a public
+     * constructor with the signature (String, Integer, Element)
+     * @throws IllegalAccessException if the constructor is not accessible
+     */
+    private static Factory createFactory(Class testStepClass)
+    throws NoSuchMethodException, IllegalAccessException {
+        if (!TestStep.class.isAssignableFrom(testStepClass)) {
+            throw new NoSuchMethodException(testStepClass.getName()
+                + " is not a TestStep");
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final MethodHandle constructor = MethodHandles.publicLookup()
+            .findConstructor(testStepClass, CONSTRUCTOR_TYPE);
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup, "create",
+                MethodType.methodType(Factory.class), CREATE_TYPE, constructor,
+                CREATE_TYPE.changeReturnType(testStepClass));
+            return (Factory)(site.getTarget().invoke());
+        }
+        catch (Throwable t) {
+            // Fall back on calling the constructor through the handle.
+        }
+        final MethodHandle handle = constructor.asType(
+            CONSTRUCTOR_TYPE.changeReturnType(TestStep.class));
+        return new Factory() {
+            public TestStep create(String scriptID, int stepNumber,
+                                   Element node) throws ParsingException {
+                try {
+                    return (TestStep)(handle.invokeExact(scriptID,
+                        Integer.valueOf(stepNumber), node));
+                }
+                catch (ParsingException e) {
+                    throw e;
+                }
+                catch (RuntimeException e) {
+                    throw e;
+                }
+                catch (Error e) {
+                    throw e;
+                }
+                catch (Throwable t) {
+                    throw new ParsingException(t.getMessage());
+                }
+            }
+        };
+    }
+    
     /** Creates a new instance of TestStep subclass.  The type of the test step 
      * that is created depends on the tag name of the node. This method should 
      * always be used to create instances of TestStep.
@@ -252,34 +550,32 @@ protected static class Creator {
      * The corresponding method in the TestStep subclass (i.e. the method that 
      * is called by this method to actually create a TestStep instance) is the 
      * public constructor with signature (java.lang.String, java.lang.Integer,
-     * org.w3c.dom.Node).  This constructor must be overridden by subclasses of
-     * TestStep.
+     * org.w3c.dom.Element), unless a Factory was registered for the tag.
      * @param script id of the script where the step to be created is declared
      * @param stepNum number of the step in the script
      * @param node a Node object representing the XML element which has the 
      * information needed to create the new test step
-     * @throws InstantiationException if the class that is supposed to implement
-     * the test step declared by node is an abstract class or an interface
-     * @throws IllegalAccessException if the class that is supposed to implement
-     * the test step declared by node is not a public class and is not in the 
-     * same package as this TestStep.Creator class
-     * @throws InvocationTargetException if an exception is thrown by the 
-     * constructor of the TestStep subclass
      * @return a new instance of a TestStep subclass.
      * @throws ParsingException if the node is missing information needed to create 
-     * a TestStep instance.
+     * a TestStep instance, if no factory is registered for its tag, or if the
+     * factory fails in any other way.
      */   
     protected static TestStep create(String script, int stepNum, Element node) 
-    throws InstantiationException, IllegalAccessException, ParsingException, 
-    java.lang.reflect.InvocationTargetException {
+    throws ParsingException {
         String tag = node.getNodeName();
-        Constructor c = (Constructor)(tagsAndConstructors.get(tag));
-        if (c == null) {
+        Factory factory = (Factory)(tagsAndFactories.get(tag));
+        if (factory == null) {
             throw new ParsingException("Cannot handle " + tag);
         }
-        Object[] initargs = {script, new Integer(stepNum), node};
-        return (TestStep)(c.newInstance(initargs));
+        try {
+            return factory.create(script, stepNum, node);
+        }
+        catch (RuntimeException e) {
+            // A constructor that does not expect some of the contents of the
+            // node is as good as one that rejects it.
+            throw new ParsingException(e.getMessage());
+        }
     }
 }// Creator
 
-}
\ No newline at end of file
+}
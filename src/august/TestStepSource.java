@@ -0,0 +1,54 @@
+package august;
+
+import java.util.List;
+
+/** Produces the test steps of a test script one at a time, as the TestEngine
+ * asks for them.
+ * <P>
+ * A TestStepSource opened by TestScriptParser.openTestSteps reads the script
+ * only as far as the step it returns (utility scripts called by the script are
+ * inlined as they are reached), so the memory it needs does not depend on the
+ * length of the script, and each step costs the same, wherever it is in the
+ * script.  A consequence is that a script may turn out not to be valid only
+ * when its faulty step is reached.
+ * <P>
+ * A source must be closed once it is no longer needed, whether or not all of
+ * its steps have been taken.
+ */
+abstract class TestStepSource {
+
+/** Returns the next test step.
+ *
+ * @return the next step, or null if there are no more steps
+ * @throws ParsingException if the next step cannot be read or created
+ */
+abstract TestStep next() throws ParsingException;
+
+/** Releases whatever the source holds (e.g. an open script file).  Does
+ * nothing by default.
+ */
+void close() {
+}
+
+/** Returns a source that produces the steps of a list, in order.  Each step is
+ * dropped from the list once it has been returned, so that steps that have
+ * been executed can be garbage collected.
+ *
+ * @param testSteps a List containing objects of type TestStep; it is emptied
+ * (its elements set to null) as the steps are taken
+ * @return the source
+ */
+static TestStepSource of(final List testSteps) {
+    return new TestStepSource() {
+        private int next = 0;
+
+        TestStep next() {
+            if (next >= testSteps.size()) {
+                return null;
+            }
+            return (TestStep)(testSteps.set(next++, null));
+        }
+    };
+}
+
+}
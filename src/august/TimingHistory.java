@@ -0,0 +1,105 @@
+package august;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/** Remembers how long each test script took to run, across runs of August.
+ * <P>
+ * The history is kept in a properties file (named <CODE>HISTORY_FILE</CODE>)
+ * in the log directory, mapping test script paths to durations in
+ * milliseconds.  Each new duration is averaged with the remembered one, so a
+ * single unusually slow or fast run does not throw the estimate off
+ * completely.
+ * <P>
+ * The TestReportLogger records the duration of every test it logs, and saves
+ * the history when it is done; the TestEngine reads it to schedule the
+ * slowest scripts first.  All of the methods are synchronized, since reports
+ * are logged on the logger thread while the engine may be reading estimates.
+ *
+ * @see ScriptScheduler
+ */
+class TimingHistory {
+
+/** The name of the history file in the log directory.
+ */
+protected static final String HISTORY_FILE = "timings.properties";
+
+/** Written at the top of the history file.
+ */
+private static final String HEADER = "August test script durations (ms)";
+
+/** The path of the history file.
+ */
+private String historyFile;
+
+/** Test script paths mapped to durations.
+ */
+private Properties durations = new Properties();
+
+/** Creates a TimingHistory, and loads the history file from the given
+ * directory if there is one.
+ *
+ * @param logDir the log directory
+ */
+protected TimingHistory(String logDir) {
+    historyFile = new File(logDir, HISTORY_FILE).getPath();
+    if (FileUtilities.exists(historyFile)) {
+        try {
+            FileUtilities.loadProperties(durations, historyFile);
+        }
+        catch (IOException e) {
+            // Without a history every script is simply new.
+            durations.clear();
+        }
+    }
+}
+
+/** Records how long a test script took to run.
+ *
+ * @param testScript the path of the test script
+ * @param duration the number of milliseconds the script took
+ */
+protected synchronized void record(String testScript, long duration) {
+    long previous = getDuration(testScript);
+    if (previous >= 0) {
+        duration = (previous + duration) / 2;
+    }
+    durations.setProperty(testScript, String.valueOf(duration));
+}
+
+/** Returns the remembered duration of a test script.
+ *
+ * @param testScript the path of the test script
+ * @return the number of milliseconds the script is expected to take, or -1 if
+ * it has never been run
+ */
+protected synchronized long getDuration(String testScript) {
+    String duration = durations.getProperty(testScript);
+    if (duration == null) {
+        return -1;
+    }
+    try {
+        return Long.parseLong(duration);
+    }
+    catch (NumberFormatException e) {
+        return -1;
+    }
+}
+
+/** Writes the history to the history file.
+ *
+ * @throws IOException if the file cannot be written
+ */
+protected synchronized void save() throws IOException {
+    FileOutputStream out = new FileOutputStream(historyFile);
+    try {
+        durations.store(out, HEADER);
+    }
+    finally {
+        out.close();
+    }
+}
+
+}
@@ -0,0 +1,175 @@
+package august;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Remembers the test steps of the utility scripts called with the callScript
+ * tag, so that each utility script is parsed only once per run, however many
+ * times it is called, and by however many test scripts.
+ * <P>
+ * Each utility script is kept together with the files it was parsed from (the
+ * utility script itself, and the scripts and data files it calls in turn), and
+ * with the time each of them was last modified.  A remembered utility script
+ * is used only if none of those files has been modified since; otherwise it is
+ * parsed again, so edits made while August is running are picked up.
+ * <P>
+ * The remembered steps serve as templates: every call of the utility script
+ * gets copies of them (see TestStep.copy), made as the steps are reached.
+ * <P>
+ * All of the methods are class methods, so that the utility scripts are shared
+ * by all of the TestScriptParsers in the JVM; they are synchronized, since the
+ * parsers may run on separate threads.
+ */
+class UtilityScriptCache {
+
+/** Maps the paths of utility scripts to Entry objects.
+ */
+private static Map entries = new HashMap();
+
+/** Returns a utility script, if it has been parsed before and none of its
+ * files have been modified since.
+ *
+ * @param utilScript the path of the utility script
+ * @return the remembered utility script, or null if it has to be parsed
+ */
+protected static synchronized Entry get(String utilScript) {
+    Entry entry = (Entry)(entries.get(utilScript));
+    if (entry != null && !entry.isUpToDate()) {
+        entries.remove(utilScript);
+        entry = null;
+    }
+    return entry;
+}
+
+/** Remembers the steps of a utility script.
+ *
+ * @param utilScript the path of the utility script
+ * @param testSteps the steps parsed from the script, which must not be
+ * executed
+ * @param dependencies every file the steps were parsed from, including the
+ * utility script itself; each must have been added before it was read, so
+ * that a file modified while it was being parsed is parsed again next time
+ * @return the remembered utility script
+ */
+protected static synchronized Entry put(String utilScript, List testSteps,
+                                        Entry.Dependencies dependencies) {
+    Entry entry = new Entry(testSteps, dependencies);
+    entries.put(utilScript, entry);
+    return entry;
+}
+
+/** Forgets all of the utility scripts.
+ */
+protected static synchronized void clear() {
+    entries.clear();
+}
+
+/** The steps of one utility script, and the files they were parsed from.
+ */
+static class Entry {
+
+    /** The template steps.
+     */
+    private List testSteps;
+
+    /** The files the steps were parsed from.
+     */
+    private Dependencies dependencies;
+
+    /** Creates an Entry.
+     *
+     * @param testSteps the template steps
+     * @param dependencies the files the steps were parsed from
+     */
+    private Entry(List testSteps, Dependencies dependencies) {
+        this.testSteps = new ArrayList(testSteps);
+        this.dependencies = dependencies;
+    }
+
+    /** Returns a source of copies of the template steps.  Each template is
+     * copied only when its step is taken from the source.
+     *
+     * @return a source of new TestStep objects
+     */
+    protected TestStepSource openSteps() {
+        return new TestStepSource() {
+            private int next = 0;
+
+            TestStep next() {
+                if (next >= testSteps.size()) {
+                    return null;
+                }
+                return ((TestStep)(testSteps.get(next++))).copy();
+            }
+        };
+    }
+
+    /** Returns the files the steps were parsed from.
+     *
+     * @return the paths of the files (Strings)
+     */
+    protected List getDependencies() {
+        return dependencies.paths;
+    }
+
+    /** Checks whether any of the files has been modified.
+     *
+     * @return 'true' if none of the files has been modified
+     */
+    private boolean isUpToDate() {
+        for (int i = 0; i < dependencies.paths.size(); i++) {
+            File file = new File((String)(dependencies.paths.get(i)));
+            if (file.lastModified()
+                    != ((Long)(dependencies.lastModified.get(i))).longValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The files a utility script is parsed from, with their times of last
+     * modification.  Collected by the TestScriptParser while it parses the
+     * utility script.
+     */
+    static class Dependencies {
+
+        /** The paths of the files (Strings).
+         */
+        private List paths = new ArrayList();
+
+        /** The times the files were last modified, taken when they were
+         * added (Longs).
+         */
+        private List lastModified = new ArrayList();
+
+        /** Adds a file, unless it has already been added.
+         *
+         * @param path the path of the file
+         */
+        protected void add(String path) {
+            if (!paths.contains(path)) {
+                paths.add(path);
+                lastModified.add(Long.valueOf(new File(path).lastModified()));
+            }
+        }
+
+        /** Adds all of the files of a remembered utility script.
+         *
+         * @param entry the utility script
+         */
+        protected void addAll(Entry entry) {
+            for (int i = 0; i < entry.dependencies.paths.size(); i++) {
+                String path = (String)(entry.dependencies.paths.get(i));
+                if (!paths.contains(path)) {
+                    paths.add(path);
+                    lastModified.add(entry.dependencies.lastModified.get(i));
+                }
+            }
+        }
+    } // Dependencies
+} // Entry
+
+}
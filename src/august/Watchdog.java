@@ -0,0 +1,203 @@
+package august;
+
+import java.awt.EventQueue;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/** Enforces deadlines on test steps.
+ * <P>
+ * A step executed through the Watchdog runs on a separate (daemon) thread,
+ * while the calling thread waits for it, but no longer than the step's
+ * deadline.  If the deadline passes, then the Watchdog gives up on the step,
+ * leaving its thread behind (a step that is stuck, for example on a blocked
+ * event dispatch thread, cannot be stopped safely), and throws a
+ * DeadlineException describing what the event dispatch thread was doing at
+ * that moment.  Later steps run on a fresh thread.
+ * <P>
+ * The thread left behind is not stopped: it keeps running the step (which may
+ * drive the robot, typing or clicking into whatever the following steps, or
+ * tests, have on the screen) until the step completes, or until the run ends,
+ * since the thread is a daemon thread.
+ *
+ * @see TestEngine.AugustProperties#STEP_TIMEOUT
+ * @see TestEngine.AugustProperties#TEST_TIMEOUT
+ */
+class Watchdog {
+
+/** The prefix of the names of event dispatch threads.
+ */
+private static final String EVENT_DISPATCH_THREAD_PREFIX = "AWT-EventQueue";
+
+/** Creates the threads on which steps run.
+ */
+private static final ThreadFactory STEP_THREADS = new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "August-StepRunner");
+        t.setDaemon(true);
+        return t;
+    }
+};
+
+/** Runs steps, one at a time.
+ */
+private ExecutorService executor = Executors.newSingleThreadExecutor(STEP_THREADS);
+
+/** Executes a test step, and waits for it to complete, but no longer than the
+ * given timeout.
+ *
+ * @param step the step to execute
+ * @param timeout the maximum number of milliseconds to wait
+ * @throws TestStep.FailureException if the step fails
+ * @throws DeadlineException if the step does not complete in time
+ */
+protected void execute(final TestStep step, long timeout)
+throws TestStep.FailureException, DeadlineException {
+    final WindowScope scope = ObjectFinder.getScope();
+    Future result = executor.submit(new Callable() {
+        public Object call() throws TestStep.FailureException {
+            // The step must find the same components as on the calling thread.
+            ObjectFinder.setScope(scope);
+            step.execute();
+            return null;
+        }
+    });
+    try {
+        result.get(timeout, TimeUnit.MILLISECONDS);
+    }
+    catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof TestStep.FailureException) {
+            throw (TestStep.FailureException)cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error)cause;
+        }
+        throw (RuntimeException)cause;
+    }
+    catch (java.util.concurrent.TimeoutException e) {
+        abandon();
+        throw new DeadlineException(step.getScriptID() + " "
+            + step.getStepNumber() + " step did not complete within "
+            + timeout + " ms" + dumpEventDispatchThread());
+    }
+    catch (InterruptedException e) {
+        abandon();
+        Thread.currentThread().interrupt();
+        throw new DeadlineException(step.getScriptID() + " "
+            + step.getStepNumber() + " interrupted while waiting for step");
+    }
+}
+
+/** Runs a task, and waits for it to complete, but no longer than the given
+ * timeout.
+ *
+ * @param task the task to run
+ * @param timeout the maximum number of milliseconds to wait
+ * @return 'true' if the task completed in time
+ */
+protected boolean run(final Runnable task, long timeout) {
+    final WindowScope scope = ObjectFinder.getScope();
+    Future result = executor.submit(new Runnable() {
+        public void run() {
+            ObjectFinder.setScope(scope);
+            task.run();
+        }
+    });
+    try {
+        result.get(timeout, TimeUnit.MILLISECONDS);
+        return true;
+    }
+    catch (ExecutionException e) {
+        e.getCause().printStackTrace();
+        return true;
+    }
+    catch (java.util.concurrent.TimeoutException e) {
+        abandon();
+        return false;
+    }
+    catch (InterruptedException e) {
+        abandon();
+        Thread.currentThread().interrupt();
+        return false;
+    }
+}
+
+/** Checks whether the event dispatch thread processes events.
+ *
+ * @param timeout the maximum number of milliseconds to wait for an event to
+ * be processed
+ * @return 'true' if an event posted now was processed in time
+ */
+protected static boolean isEventDispatchThreadResponsive(long timeout) {
+    final CountDownLatch processed = new CountDownLatch(1);
+    EventQueue.invokeLater(new Runnable() {
+        public void run() {
+            processed.countDown();
+        }
+    });
+    try {
+        return processed.await(timeout, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+    }
+}
+
+/** Describes the state and stack of every event dispatch thread.
+ *
+ * @return a multi-line description, starting with a line break
+ */
+protected static String dumpEventDispatchThread() {
+    StringBuffer dump = new StringBuffer();
+    Iterator i = Thread.getAllStackTraces().entrySet().iterator();
+    while (i.hasNext()) {
+        Map.Entry entry = (Map.Entry)(i.next());
+        Thread thread = (Thread)(entry.getKey());
+        if (!thread.getName().startsWith(EVENT_DISPATCH_THREAD_PREFIX)) {
+            continue;
+        }
+        dump.append("\n\"").append(thread.getName()).append("\" ")
+            .append(thread.getState());
+        StackTraceElement[] stack = (StackTraceElement[])(entry.getValue());
+        for (int j = 0; j < stack.length; j++) {
+            dump.append("\n\tat ").append(stack[j]);
+        }
+    }
+    if (dump.length() == 0) {
+        dump.append("\n(no event dispatch thread)");
+    }
+    return dump.toString();
+}
+
+/** Gives up on the thread that is running a step or task, and prepares a
+ * fresh one for the next step.
+ */
+private void abandon() {
+    executor.shutdownNow();
+    executor = Executors.newSingleThreadExecutor(STEP_THREADS);
+}
+
+/** Thrown when a test step does not complete before its deadline.
+ */
+static class DeadlineException extends Exception {
+
+    /** Standard exception constructor.
+     *
+     * @param message the id of the script, the number of the step, and a
+     * description of what happened
+     */
+    public DeadlineException(String message) {
+        super(message);
+    }
+} // DeadlineException
+
+}
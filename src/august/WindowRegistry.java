@@ -0,0 +1,194 @@
+package august;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.event.AWTEventListener;
+import java.awt.event.ContainerEvent;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.swing.JInternalFrame;
+
+/** Keeps track of the live windows of the tested application, so that the
+ * ObjectFinder does not have to ask AWT for every frame (and create a dialog
+ * to reach the frame that owns the dialogs without an owner) on every search.
+ * <P>
+ * The registry is fed by an AWTEventListener: a window is registered when it
+ * is opened, and forgotten when it is closed; the windows that are already
+ * open when the registry is created are registered then.  An iconified
+ * internal frame is removed from its desktop pane, so it cannot be found by
+ * walking the component trees of the windows; it is registered as iconified
+ * when it is removed from its desktop pane as an icon, and forgotten when it
+ * is added back (or closed).  Iconified windows stay in their component
+ * trees, so they need no special treatment.
+ * <P>
+ * The windows are kept in lists that are copied when they change, which
+ * happens rarely, so the engine, logger and event dispatch threads can read
+ * them at any time without locking, and without seeing a list being changed.
+ * The windows are listed in the order in which they were opened.
+ */
+class WindowRegistry {
+
+/** The events the registry is fed from.
+ */
+private static final long EVENT_MASK =
+    AWTEvent.WINDOW_EVENT_MASK | AWTEvent.CONTAINER_EVENT_MASK;
+
+/** The registry, created when it is first needed.
+ */
+private static WindowRegistry instance;
+
+/** The live windows, in the order in which they were opened.
+ */
+private CopyOnWriteArrayList windows = new CopyOnWriteArrayList();
+
+/** The iconified internal frames (JInternalFrames), in the order in which
+ * they were iconified.
+ */
+private CopyOnWriteArrayList iconified = new CopyOnWriteArrayList();
+
+/** Keeps the registry up to date.
+ */
+private AWTEventListener listener = new AWTEventListener() {
+    public void eventDispatched(AWTEvent e) {
+        switch (e.getID()) {
+            case WindowEvent.WINDOW_OPENED:
+                add(((WindowEvent)e).getWindow());
+                break;
+            case WindowEvent.WINDOW_CLOSED:
+                remove(((WindowEvent)e).getWindow());
+                break;
+            case ContainerEvent.COMPONENT_REMOVED:
+                Component removed = ((ContainerEvent)e).getChild();
+                if (removed instanceof JInternalFrame
+                    && ((JInternalFrame)removed).isIcon()) {
+                    addIconified(removed);
+                }
+                break;
+            case ContainerEvent.COMPONENT_ADDED:
+                Component added = ((ContainerEvent)e).getChild();
+                if (added instanceof JInternalFrame) {
+                    removeIconified(added);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+};
+
+/** Returns the registry, creating it (and registering the open windows) if
+ * it does not exist yet.
+ *
+ * @return the registry
+ */
+protected static synchronized WindowRegistry getInstance() {
+    if (instance == null) {
+        instance = new WindowRegistry();
+        Toolkit.getDefaultToolkit().addAWTEventListener(instance.listener,
+                                                        EVENT_MASK);
+        Window[] open = Window.getWindows();
+        for (int i = 0; i < open.length; i++) {
+            if (open[i].isDisplayable()) {
+                instance.add(open[i]);
+            }
+        }
+    }
+    return instance;
+}
+
+/** Registers a window.
+ *
+ * @param window a window that has been opened
+ */
+protected void add(Window window) {
+    windows.addIfAbsent(window);
+}
+
+/** Forgets a window.
+ *
+ * @param window a window that has been closed
+ */
+protected void remove(Window window) {
+    windows.remove(window);
+}
+
+/** Registers an iconified internal frame.
+ *
+ * @param frame the internal frame
+ */
+protected void addIconified(Component frame) {
+    iconified.addIfAbsent(frame);
+}
+
+/** Forgets an internal frame that is no longer iconified.
+ *
+ * @param frame the internal frame
+ */
+protected void removeIconified(Component frame) {
+    iconified.remove(frame);
+}
+
+/** Returns all of the live windows.
+ *
+ * @return the windows, in the order in which they were opened
+ */
+protected Window[] getWindows() {
+    return (Window[])(windows.toArray(new Window[0]));
+}
+
+/** Returns the live windows that are not owned by another live window; the
+ * others are found through the windows that own them.  The dialogs created
+ * without an owner are owned by a frame of Swing's that is never opened, so
+ * they are top-level windows too.
+ *
+ * @return the windows, in the order in which they were opened
+ */
+protected Window[] getTopLevelWindows() {
+    Object[] live = windows.toArray();
+    Map registered = new IdentityHashMap();
+    for (int i = 0; i < live.length; i++) {
+        registered.put(live[i], live[i]);
+    }
+    List topLevel = new ArrayList(live.length);
+    for (int i = 0; i < live.length; i++) {
+        Window owner = ((Window)live[i]).getOwner();
+        while (owner != null && !registered.containsKey(owner)) {
+            owner = owner.getOwner();
+        }
+        if (owner == null) {
+            topLevel.add(live[i]);
+        }
+    }
+    return (Window[])(topLevel.toArray(new Window[topLevel.size()]));
+}
+
+/** Returns the iconified internal frames, forgetting those closed since they
+ * were iconified.
+ *
+ * @return the internal frames, in the order in which they were iconified
+ */
+protected Component[] getIconified() {
+    Object[] frames = iconified.toArray();
+    List stillIconified = new ArrayList(frames.length);
+    for (int i = 0; i < frames.length; i++) {
+        Component frame = (Component)frames[i];
+        if (frame instanceof JInternalFrame
+            && (((JInternalFrame)frame).isClosed()
+                || !((JInternalFrame)frame).isIcon())) {
+            iconified.remove(frame);
+        }
+        else {
+            stillIconified.add(frame);
+        }
+    }
+    return (Component[])(stillIconified.toArray(
+        new Component[stillIconified.size()]));
+}
+
+}
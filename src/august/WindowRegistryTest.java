@@ -0,0 +1,56 @@
+package august;
+
+import junit.framework.*;
+import java.awt.Component;
+import javax.swing.JDesktopPane;
+import javax.swing.JInternalFrame;
+
+public class WindowRegistryTest extends TestCase {
+
+public WindowRegistryTest(String name) {
+    super(name);
+}
+
+public static Test suite() {
+    return new TestSuite(WindowRegistryTest.class);
+}
+
+public void testIconifiedInternalFrame() throws Exception {
+    WindowRegistry registry = WindowRegistry.getInstance();
+    JDesktopPane desktop = new JDesktopPane();
+    JInternalFrame frame = new JInternalFrame("internal", true, true, true,
+                                              true);
+    frame.setName("internal");
+    desktop.add(frame);
+    assertEquals(0, count(registry.getIconified(), frame));
+
+    // An iconified internal frame leaves the component tree, so it is only
+    // found through the registry.
+    frame.setIcon(true);
+    assertNull(frame.getParent());
+    assertEquals(1, count(registry.getIconified(), frame));
+    assertSame(frame, ObjectFinder.find("internal", registry.getIconified()));
+
+    frame.setIcon(false);
+    assertSame(desktop, frame.getParent());
+    assertEquals(0, count(registry.getIconified(), frame));
+
+    // A frame closed while iconified is forgotten.
+    frame.setIcon(true);
+    frame.setClosed(true);
+    assertEquals(0, count(registry.getIconified(), frame));
+}
+
+/** @return the number of times c is in components
+ */
+private static int count(Component[] components, Component c) {
+    int n = 0;
+    for (int i = 0; i < components.length; i++) {
+        if (components[i] == c) {
+            n++;
+        }
+    }
+    return n;
+}
+
+}
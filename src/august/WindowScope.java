@@ -0,0 +1,289 @@
+package august;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.event.AWTEventListener;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.EventListener;
+import java.util.Iterator;
+import java.util.List;
+
+/** The windows that belong to one of several instances of the tested
+ * application running in the same JVM.
+ * <P>
+ * All instances share one AWT toolkit, so every window opened by any of them is
+ * visible to all of them through Frame.getFrames and Window.getWindows.  To
+ * keep the test steps of one instance from finding the components of another,
+ * the ObjectFinder only searches the windows of the scope of the current
+ * thread, if it has one.
+ * <P>
+ * A window is attributed to a scope when it is opened, by the first of these
+ * rules that applies:
+ * <BR>- it is owned (directly or not) by a window of the scope
+ * <BR>- the window, one of its components, or one of their listeners is an
+ * instance of a class loaded by the class loader of the scope
+ * <BR>- the scope is the one acting when the window is opened (see
+ * <CODE>setActing</CODE>)
+ * <BR>A window to which none of the rules apply when it is opened is attributed
+ * later, as soon as one of the first two does (for example because the
+ * application has filled it in since).
+ *
+ * @see ObjectFinder#setScope
+ * @see IsolatingClassLoader
+ */
+class WindowScope {
+
+/** The kinds of listeners whose classes tell which instance a window belongs
+ * to.  Swing components keep action listeners with the others, so
+ * Component.getListeners finds them too.
+ */
+private static final Class[] LISTENER_TYPES = {
+    java.awt.event.ActionListener.class, java.awt.event.MouseListener.class,
+    java.awt.event.KeyListener.class, java.awt.event.WindowListener.class
+};
+
+/** All of the scopes that are currently open.
+ */
+private static List scopes = new ArrayList();
+
+/** The windows that were opened but could not be attributed to any scope yet.
+ */
+private static List pending = new ArrayList();
+
+/** The scope that is driving the GUI right now, or null.
+ */
+private static WindowScope acting;
+
+/** Attributes windows to scopes as they are opened.  Installed while at least
+ * one scope is open.
+ */
+private static AWTEventListener listener = new AWTEventListener() {
+    public void eventDispatched(AWTEvent e) {
+        Window window = ((WindowEvent)e).getWindow();
+        if (e.getID() == WindowEvent.WINDOW_OPENED) {
+            attribute(window);
+        }
+        else if (e.getID() == WindowEvent.WINDOW_CLOSED) {
+            forget(window);
+        }
+    }
+};
+
+/** The class loader of the application instance, or null.
+ */
+private ClassLoader loader;
+
+/** The windows attributed to this scope.
+ */
+private List windows = new ArrayList();
+
+/** Opens a scope.
+ *
+ * @param loader the class loader of the application instance, or null if the
+ * windows of the instance are only to be told apart by their owners and by the
+ * acting scope
+ */
+protected WindowScope(ClassLoader loader) {
+    this.loader = loader;
+    synchronized (WindowScope.class) {
+        if (scopes.isEmpty()) {
+            Toolkit.getDefaultToolkit().addAWTEventListener(listener,
+                AWTEvent.WINDOW_EVENT_MASK);
+        }
+        scopes.add(this);
+    }
+}
+
+/** Closes this scope.  Its windows are forgotten.
+ */
+protected void close() {
+    synchronized (WindowScope.class) {
+        scopes.remove(this);
+        windows.clear();
+        if (acting == this) {
+            acting = null;
+        }
+        if (scopes.isEmpty()) {
+            Toolkit.getDefaultToolkit().removeAWTEventListener(listener);
+            pending.clear();
+        }
+    }
+}
+
+/** Makes a scope the acting one, i.e. the one to which windows that cannot be
+ * attributed otherwise are attributed.  The TestEngine makes a scope acting
+ * while its instance is started, and while it executes a test step.
+ *
+ * @param scope the acting scope, or null if none is acting
+ */
+protected static synchronized void setActing(WindowScope scope) {
+    acting = scope;
+}
+
+/** Returns the class loader of the application instance.
+ *
+ * @return a class loader, or null
+ */
+protected ClassLoader getClassLoader() {
+    return loader;
+}
+
+/** Returns the windows attributed to this scope.
+ *
+ * @return the windows, in the order in which they were opened
+ */
+protected Window[] getWindows() {
+    synchronized (WindowScope.class) {
+        attributePending();
+        return (Window[])(windows.toArray(new Window[windows.size()]));
+    }
+}
+
+/** Checks whether a window is searched by the steps of this scope: whether it
+ * is attributed to this scope, or owned (directly or not) by a window that is.
+ *
+ * @param window the window
+ * @return 'true' if the window is searched
+ */
+protected boolean contains(Window window) {
+    synchronized (WindowScope.class) {
+        attributePending();
+        for (Window w = window; w != null; w = w.getOwner()) {
+            if (windows.contains(w)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+/** Attributes a newly opened window to a scope, or adds it to the pending
+ * windows.
+ *
+ * @param window the window
+ */
+private static synchronized void attribute(Window window) {
+    if (find(window) != null) {
+        return;
+    }
+    WindowScope scope = findOwner(window);
+    if (scope == null) {
+        scope = acting;
+    }
+    if (scope != null) {
+        scope.windows.add(window);
+    }
+    else {
+        pending.add(window);
+    }
+}
+
+/** Attributes the pending windows that can be attributed now.
+ */
+private static void attributePending() {
+    Iterator i = pending.iterator();
+    while (i.hasNext()) {
+        Window window = (Window)(i.next());
+        WindowScope scope = findOwner(window);
+        if (scope != null) {
+            scope.windows.add(window);
+            i.remove();
+        }
+    }
+}
+
+/** Forgets a window that has been closed.
+ *
+ * @param window the window
+ */
+private static synchronized void forget(Window window) {
+    pending.remove(window);
+    WindowScope scope = find(window);
+    if (scope != null) {
+        scope.windows.remove(window);
+    }
+}
+
+/** Finds the scope a window has been attributed to.
+ *
+ * @param window the window
+ * @return the scope, or null
+ */
+private static WindowScope find(Window window) {
+    for (int i = 0; i < scopes.size(); i++) {
+        WindowScope scope = (WindowScope)(scopes.get(i));
+        if (scope.windows.contains(window)) {
+            return scope;
+        }
+    }
+    return null;
+}
+
+/** Applies the ownership and class loader rules to a window.
+ *
+ * @param window the window
+ * @return the scope the window belongs to, or null if neither rule applies
+ */
+private static WindowScope findOwner(Window window) {
+    for (Window owner = window.getOwner(); owner != null;
+         owner = owner.getOwner()) {
+        WindowScope scope = find(owner);
+        if (scope != null) {
+            return scope;
+        }
+    }
+    for (int i = 0; i < scopes.size(); i++) {
+        WindowScope scope = (WindowScope)(scopes.get(i));
+        if (scope.loader != null && scope.isLoadedHere(window)) {
+            return scope;
+        }
+    }
+    return null;
+}
+
+/** Checks whether a component, one of its listeners, or (for a container) one
+ * of the components it contains was loaded by the class loader of this scope.
+ *
+ * @param c the component
+ * @return 'true' if a class of the application instance was found
+ */
+private boolean isLoadedHere(Component c) {
+    if (c.getClass().getClassLoader() == loader) {
+        return true;
+    }
+    for (int i = 0; i < LISTENER_TYPES.length; i++) {
+        if (isLoadedHere(c.getListeners(LISTENER_TYPES[i]))) {
+            return true;
+        }
+    }
+    if (c instanceof Container) {
+        Component[] children = ((Container)c).getComponents();
+        for (int i = 0; i < children.length; i++) {
+            if (isLoadedHere(children[i])) {
+                return true;
+            }
+        }
+    }
+    return false;
+}
+
+/** Checks whether one of the listeners was loaded by the class loader of this
+ * scope.
+ *
+ * @param listeners the listeners
+ * @return 'true' if a class of the application instance was found
+ */
+private boolean isLoadedHere(EventListener[] listeners) {
+    for (int i = 0; i < listeners.length; i++) {
+        if (listeners[i].getClass().getClassLoader() == loader) {
+            return true;
+        }
+    }
+    return false;
+}
+
+}
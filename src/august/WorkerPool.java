@@ -0,0 +1,520 @@
+package august;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.StringTokenizer;
+
+/** Runs a test suite on several worker JVMs at once.
+ * <P>
+ * Each worker is a separate JVM running <CODE>TestEngine --worker</CODE>, with
+ * the august.worker system property set (see TestEngine.WORKER_PROPERTY); a
+ * worker ignores the jobs property, so it never starts workers of its own.  A
+ * worker reads test script paths, one per line, from its standard input, runs
+ * each script exactly as a serial run of August would, and writes one encoded
+ * TestReport line per script to its standard output.  Everything else the
+ * worker (or the tested application) prints goes to the standard error, which
+ * is shared with this JVM.
+ * <P>
+ * Scripts are handed out from a single shared queue, so a worker that finishes
+ * early simply takes the next script.  All reports are forwarded to one
+ * TestReportLogger, so the logs of a parallel run look just like the logs of a
+ * serial run (except that the reports are in order of completion).
+ * <P>
+ * Since every worker moves the mouse with its own java.awt.Robot, the workers
+ * must not share a display.  If the workerDisplayCommand property is set in
+ * the config file (for example to "Xvfb -screen 0 1280x1024x24"), then that
+ * command is started once per worker with the display ":n" as its first
+ * argument, and the worker is started with DISPLAY set to ":n".  Displays are
+ * numbered from workerDisplayBase (100 if not specified).
+ *
+ * @see TestEngine#runWorker
+ */
+class WorkerPool {
+
+/** Starts every line of the worker's standard output that carries a report.
+ */
+protected static final String REPORT_PREFIX = "@august-report";
+
+/** Separates the fields of an encoded report.
+ */
+protected static final char FIELD_SEPARATOR = '\t';
+
+/** Escapes field separators, line breaks and itself in encoded reports.
+ */
+protected static final char ESCAPE = '\\';
+
+/** The position of the test id among the fields of an encoded report.
+ */
+protected static final int ID = 0;
+
+/** The position of the verdict ("pass" or "FAIL").
+ */
+protected static final int VERDICT = 1;
+
+/** The position of the startup time.
+ */
+protected static final int STARTUP = 2;
+
+/** The position of the teardown time.
+ */
+protected static final int TEARDOWN = 3;
+
+/** The position of the duration of the test.
+ */
+protected static final int DURATION = 4;
+
+/** The position of the flag telling whether the worker exits after this
+ * report.
+ */
+protected static final int EXITING = 5;
+
+/** The position of the first failure message; all following fields are
+ * failure messages too.
+ */
+protected static final int FAILURES = 6;
+
+/** The display number used by the first worker if workerDisplayBase is not
+ * specified in the config file.
+ */
+protected static final int DEFAULT_DISPLAY_BASE = 100;
+
+/** How long to wait for a virtual display to come up before giving up on it.
+ */
+protected static final int DISPLAY_START_TIMEOUT = 10000;
+
+/** The number of worker JVMs.
+ */
+private int jobs;
+
+/** The August config (used to read the worker related properties).
+ */
+private Properties properties;
+
+/** Path of the config file; every worker is started with it.
+ */
+private String configFile;
+
+/** All of the reports produced by the workers are forwarded to this logger.
+ */
+private TestReportLogger logger;
+
+/** Test script paths that have not been handed out to a worker yet.
+ */
+private LinkedList scripts = new LinkedList();
+
+/** Creates a WorkerPool.  The worker JVMs are not started until the run method
+ * is called.
+ *
+ * @param jobs the number of worker JVMs to run at once
+ * @param properties the August config
+ * @param configFile path of the config file to be passed on to the workers
+ * @param logger the logger to which all test reports are forwarded
+ */
+protected WorkerPool(int jobs, Properties properties, String configFile,
+                     TestReportLogger logger) {
+    this.jobs = jobs;
+    this.properties = properties;
+    this.configFile = configFile;
+    this.logger = logger;
+}
+
+/** Runs all of the given test scripts on the worker JVMs, and returns when
+ * all of them have been run and reported.
+ *
+ * @param testScripts a list of test script paths (Strings); scripts are handed
+ * out to workers in the order of this list
+ */
+protected void run(List testScripts) {
+    synchronized (scripts) {
+        scripts.addAll(testScripts);
+    }
+    int displayBase = Integer.parseInt(properties.getProperty(
+        TestEngine.AugustProperties.WORKER_DISPLAY_BASE,
+        String.valueOf(DEFAULT_DISPLAY_BASE)));
+
+    List workers = new ArrayList();
+    for (int i = 0; i < jobs; i++) {
+        Worker worker = new Worker(i, displayBase + i);
+        workers.add(worker);
+        worker.start();
+    }
+    Iterator i = workers.iterator();
+    while (i.hasNext()) {
+        Worker worker = (Worker)(i.next());
+        try {
+            worker.join();
+        }
+        catch (InterruptedException e) {
+            // Nobody is expected to interrupt the main thread; if it happens
+            // anyway, stop waiting for this worker and move on.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // If the workers could not be started (or started again after one of
+    // them exited), then some scripts were never run; they still have to
+    // show up in the logs.
+    String script;
+    while ((script = nextScript()) != null) {
+        TestReport report = new TestReport(script);
+        report.addFailure(new TestReport.ForwardedFailure(script
+            + " not run; no worker JVM could be started to run it"));
+        logger.logTestReport(report);
+    }
+}
+
+/** Removes and returns the next script from the shared queue.
+ *
+ * @return the path of the next test script, or null if there are no more
+ */
+private String nextScript() {
+    synchronized (scripts) {
+        return scripts.isEmpty() ? null : (String)(scripts.removeFirst());
+    }
+}
+
+/** Puts a script that was taken from the shared queue, but not run, back at
+ * the front of the queue.
+ *
+ * @param script the path of the test script
+ */
+private void putBack(String script) {
+    synchronized (scripts) {
+        scripts.addFirst(script);
+    }
+}
+
+/** Encodes a test report as a single line of the worker protocol.
+ * <P>
+ * Called on the worker side, by TestEngine.runWorker.
+ *
+ * @param report the report to encode
+ * @param exiting 'true' if the worker JVM exits after sending this report, so
+ * that a new one has to be started for the remaining scripts
+ * @return the encoded report, without a line terminator
+ */
+protected static String encodeReport(TestReport report, boolean exiting) {
+    StringBuffer line = new StringBuffer(REPORT_PREFIX);
+    appendField(line, report.getTestID());
+    appendField(line, report.isTestPassed() ? TestReport.PASS : TestReport.FAIL);
+    appendField(line, String.valueOf(report.getStartupTime()));
+    appendField(line, String.valueOf(report.getTeardownTime()));
+    appendField(line, String.valueOf(report.getDuration()));
+    appendField(line, String.valueOf(exiting));
+    if (!report.isTestPassed()) {
+        Iterator failures = report.getFailures();
+        while (failures.hasNext()) {
+            appendField(line, ((Exception)(failures.next())).getMessage());
+        }
+    }
+    return line.toString();
+}
+
+/** Splits a line written by encodeReport into its (unescaped) fields.
+ *
+ * @param line a line starting with <CODE>REPORT_PREFIX</CODE>
+ * @return a list of Strings; the field positions are given by the constants
+ * <CODE>ID</CODE> through <CODE>FAILURES</CODE>
+ */
+protected static List decodeFields(String line) {
+    List fields = new ArrayList();
+    StringBuffer field = new StringBuffer();
+    for (int i = REPORT_PREFIX.length() + 1; i < line.length(); i++) {
+        char c = line.charAt(i);
+        if (c == ESCAPE && i + 1 < line.length()) {
+            char next = line.charAt(++i);
+            field.append(next == 'n' ? '\n' : next == 't' ? '\t' : next);
+        }
+        else if (c == FIELD_SEPARATOR) {
+            fields.add(field.toString());
+            field.setLength(0);
+        }
+        else {
+            field.append(c);
+        }
+    }
+    fields.add(field.toString());
+    return fields;
+}
+
+/** Rebuilds a test report from the fields of an encoded report.
+ *
+ * @param fields the fields returned by decodeFields
+ * @return the decoded report; its failures are TestReport.ForwardedFailure
+ * instances carrying the original messages
+ */
+protected static TestReport decodeReport(List fields) {
+    TestReport report = new TestReport((String)(fields.get(ID)));
+    report.setStartupTime(Long.parseLong((String)(fields.get(STARTUP))));
+    report.setTeardownTime(Long.parseLong((String)(fields.get(TEARDOWN))));
+    report.setDuration(Long.parseLong((String)(fields.get(DURATION))));
+    for (int i = FAILURES; i < fields.size(); i++) {
+        report.addFailure(new TestReport.ForwardedFailure((String)(fields.get(i))));
+    }
+    // A failed test always carries at least one failure, but make sure the
+    // verdict survives even if it does not.
+    if (TestReport.FAIL.equals(fields.get(VERDICT)) && report.isTestPassed()) {
+        report.addFailure(new TestReport.ForwardedFailure(report.getTestID()
+            + " failed on a worker JVM"));
+    }
+    return report;
+}
+
+/** Appends a separator followed by an escaped field to an encoded report.
+ *
+ * @param line the encoded report so far
+ * @param field the field to append (null is written as an empty field)
+ */
+private static void appendField(StringBuffer line, String field) {
+    line.append(FIELD_SEPARATOR);
+    if (field == null) {
+        return;
+    }
+    for (int i = 0; i < field.length(); i++) {
+        char c = field.charAt(i);
+        switch (c) {
+            case '\n':
+                line.append(ESCAPE).append('n');
+                break;
+            case '\t':
+                line.append(ESCAPE).append('t');
+                break;
+            case '\r':
+                break;
+            case ESCAPE:
+                line.append(ESCAPE).append(ESCAPE);
+                break;
+            default:
+                line.append(c);
+        }
+    }
+}
+
+/** Drives one worker JVM (and its virtual display, if one is configured) from
+ * a thread of the coordinating JVM.
+ * <P>
+ * If the worker JVM dies while running a script, then that script is reported
+ * as failed, and a new worker JVM is started for the remaining scripts.  If a
+ * worker JVM cannot be started, then the script it was to run is put back on
+ * the shared queue, and the Worker gives up.
+ */
+private class Worker extends Thread {
+
+    /** The display number of this worker.
+     */
+    private int display;
+
+    /** The virtual display process, or null if none is configured.
+     */
+    private Process displayProcess;
+
+    /** The worker JVM.
+     */
+    private Process process;
+
+    /** Script paths are written here.
+     */
+    private PrintWriter toWorker;
+
+    /** Encoded reports are read from here.
+     */
+    private BufferedReader fromWorker;
+
+    /** Creates a Worker thread.
+     *
+     * @param id the number of this worker (used in the thread name)
+     * @param display the display number for this worker
+     */
+    Worker(int id, int display) {
+        this.display = display;
+        setName("August-Worker-" + id);
+    }
+
+    /** Runs scripts from the shared queue on the worker JVM until the queue is
+     * empty.
+     */
+    public void run() {
+        try {
+            startDisplay();
+            String script;
+            while ((script = nextScript()) != null) {
+                if (process == null) {
+                    try {
+                        startWorker();
+                    }
+                    catch (IOException e) {
+                        // Leave the script to the other workers, or to the
+                        // pool, if none of them can run it either.
+                        putBack(script);
+                        throw e;
+                    }
+                }
+                logger.logTestReport(runOnWorker(script));
+            }
+        }
+        catch (IOException e) {
+            // This worker cannot be started at all; leave its share of the
+            // work to the other workers.
+            System.out.println("August worker on display :" + display
+                + " could not be started: " + e.getMessage());
+        }
+        finally {
+            stopWorker();
+            if (displayProcess != null) {
+                displayProcess.destroy();
+            }
+        }
+    }
+
+    /** Runs a single script on the running worker JVM.
+     *
+     * @param script the path of the script to run
+     * @return the report for the script
+     */
+    private TestReport runOnWorker(String script) {
+        toWorker.println(script);
+        toWorker.flush();
+
+        String line;
+        try {
+            while ((line = fromWorker.readLine()) != null) {
+                if (line.startsWith(REPORT_PREFIX)) {
+                    List fields = decodeFields(line);
+                    if (Boolean.valueOf((String)(fields.get(EXITING)))
+                            .booleanValue()) {
+                        // The next script will be run on a fresh worker JVM.
+                        stopWorker();
+                    }
+                    return decodeReport(fields);
+                }
+            }
+        }
+        catch (IOException e) {
+            // As good as the worker JVM going away.
+        }
+        // The worker JVM went away in the middle of the script.
+        stopWorker();
+        TestReport report = new TestReport(script);
+        report.addFailure(new TestReport.ForwardedFailure(script
+            + " worker JVM exited while running this script"));
+        return report;
+    }
+
+    /** Starts the worker JVM.
+     *
+     * @throws IOException if the JVM process cannot be started
+     */
+    private void startWorker() throws IOException {
+        List command = new ArrayList();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"),
+                             "java").getPath());
+        String jvmOptions =
+            properties.getProperty(TestEngine.AugustProperties.WORKER_JVM_OPTIONS);
+        if (jvmOptions != null) {
+            addTokens(command, jvmOptions);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        String[] passedOn = {"base.dir", "config.dir", "log.dir", "test.dir"};
+        for (int i = 0; i < passedOn.length; i++) {
+            if (System.getProperty(passedOn[i]) != null) {
+                command.add("-D" + passedOn[i] + "="
+                            + System.getProperty(passedOn[i]));
+            }
+        }
+        command.add("-D" + TestEngine.WORKER_PROPERTY + "=true");
+        command.add(TestEngine.class.getName());
+        command.add("--configfile");
+        command.add(configFile);
+        command.add("--worker");
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        if (displayProcess != null) {
+            builder.environment().put("DISPLAY", ":" + display);
+        }
+        process = builder.start();
+        toWorker = new PrintWriter(new OutputStreamWriter(process.getOutputStream()));
+        fromWorker = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    }
+
+    /** Tells the worker JVM that there are no more scripts, and waits for it
+     * to exit.
+     */
+    private void stopWorker() {
+        if (process == null) {
+            return;
+        }
+        toWorker.close();
+        try {
+            process.waitFor();
+        }
+        catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+        }
+        process = null;
+    }
+
+    /** Starts the virtual display for this worker, if one is configured, and
+     * waits until it accepts connections.
+     *
+     * @throws IOException if the display process cannot be started
+     */
+    private void startDisplay() throws IOException {
+        String displayCommand =
+            properties.getProperty(TestEngine.AugustProperties.WORKER_DISPLAY_COMMAND);
+        if (displayCommand == null || displayCommand.trim().equals("")) {
+            return;
+        }
+        List command = new ArrayList();
+        StringTokenizer st = new StringTokenizer(displayCommand);
+        command.add(st.nextToken());
+        command.add(":" + display);
+        while (st.hasMoreTokens()) {
+            command.add(st.nextToken());
+        }
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.appendTo(
+            new File(System.getProperty("java.io.tmpdir"),
+                     "august-display-" + display + ".log")));
+        displayProcess = builder.start();
+
+        // An X server is ready once its socket exists.
+        File socket = new File("/tmp/.X11-unix", "X" + display);
+        long deadline = System.currentTimeMillis() + DISPLAY_START_TIMEOUT;
+        while (!socket.exists() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(50);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /** Adds whitespace separated tokens to a command line.
+     *
+     * @param command the command line (a list of Strings)
+     * @param tokens the tokens to add
+     */
+    private void addTokens(List command, String tokens) {
+        StringTokenizer st = new StringTokenizer(tokens);
+        while (st.hasMoreTokens()) {
+            command.add(st.nextToken());
+        }
+    }
+} // Worker
+
+}
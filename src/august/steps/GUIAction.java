@@ -1,5 +1,6 @@
 package august.steps;
 
+import august.ComponentSelector;
 import august.ObjectFinder;
 import august.TestStep;
 import august.TestableComponent;
@@ -19,6 +20,7 @@ private static final String ARG_TYPE_ATTRIBUTE = "type";
 private static final String ARG_VALUE_ATTRIBUTE = "value";
 
 protected String componentName;
+protected ComponentSelector selector;
 protected String keyword;
 protected Map args;
 
@@ -27,6 +29,11 @@ throws ParsingException {
     super(scriptID, stepNumber, node);
     
     componentName = node.getAttribute(COMPONENT_NAME_ATTRIBUTE);
+    selector = getSelector(node);
+    if (selector != null && !componentName.equals("")) {
+        throw new ParsingException(
+            "componentName and selector cannot both be specified.");
+    }
     keyword = node.getAttribute(KEYWORD_ATTRIBUTE);
 
     // Extract the arguments from the node (if any)
@@ -42,13 +49,34 @@ throws ParsingException {
     }
 }
 
+public String getComponentName() {
+    return (selector != null) ? null : componentName;
+}
+
+public ComponentSelector getComponentSelector() {
+    return selector;
+}
+
 public void execute() throws TestStep.FailureException {
-    // First, find the component.
-    Component component = ObjectFinder.findGUIComponent(componentName);
+    // First, find the component, waiting for it to appear if the config
+    // file says so.
+    Component component;
+    try {
+        component = (selector != null)
+            ? ObjectFinder.waitForComponent(selector,
+                                            ObjectFinder.getComponentWait())
+            : ObjectFinder.waitForComponent(componentName,
+                                            ObjectFinder.getComponentWait());
+    }
+    catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new TestStep.FailureException(e);
+    }
 
     // If the component cannot be found, then this test step is a failure.
     if (component == null) {
-        throw new TestStep.FailureException("Cannot find " + componentName);
+        throw new TestStep.FailureException("Cannot find "
+            + ((selector != null) ? selector.toString() : componentName));
     }
     // If the component was found, then, try to find and invoke the right 
     // method on this component.
@@ -1,5 +1,6 @@
 package august.steps;
 
+import august.ComponentSelector;
 import august.ObjectFinder;
 import august.TestStep;
 import august.TestableComponent;
@@ -15,6 +16,7 @@ private static final String PROPERTY_NAME_ATTRIBUTE = "property";
 private static final String PROPERTY_VALUE_ATTRIBUTE = "expectedValue";
 
 private String componentName;
+private ComponentSelector selector;
 private String property;
 private String expectedValue;
 
@@ -23,18 +25,45 @@ throws ParsingException {
     super(scriptID, stepNumber, node);
     
     componentName = node.getAttribute(COMPONENT_NAME_ATTRIBUTE);
+    selector = getSelector(node);
+    if (selector != null && !componentName.equals("")) {
+        throw new ParsingException(
+            "componentName and selector cannot both be specified.");
+    }
     property = node.getAttribute(PROPERTY_NAME_ATTRIBUTE);
     expectedValue = node.getAttribute(PROPERTY_VALUE_ATTRIBUTE);
 }
 
+public String getComponentName() {
+    return (selector != null) ? null : componentName;
+}
+
+public ComponentSelector getComponentSelector() {
+    return selector;
+}
+
 public void execute() throws TestStep.FailureException {
     // First, find the component.
-    Component component = ObjectFinder.findGUIComponent(componentName);
+    String description = (selector != null)
+        ? selector.toString() : componentName;
+    // Wait for it to appear, if the config file says so.
+    Component component;
+    try {
+        component = (selector != null)
+            ? ObjectFinder.waitForComponent(selector,
+                                            ObjectFinder.getComponentWait())
+            : ObjectFinder.waitForComponent(componentName,
+                                            ObjectFinder.getComponentWait());
+    }
+    catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new TestStep.FailureException(e);
+    }
 
     // If the component cannot be found, then this test step results in 
     // a failure.
     if (component == null) {
-        throw new TestStep.FailureException("Cannot find " + componentName);
+        throw new TestStep.FailureException("Cannot find " + description);
     }
     
     // If the component was found, then check the property.
@@ -50,7 +79,7 @@ public void execute() throws TestStep.FailureException {
             // (If it is null, then the result check passed.)
             if (actualValue != null) {
                 throw new TestStep.FailureException( 
-                    "Component " + componentName 
+                    "Component " + description 
                     + " failed check on property " + property + ";"
                     + " expected " + expectedValue + " was " + actualValue);
             }
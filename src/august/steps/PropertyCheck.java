@@ -6,6 +6,7 @@
 
 package august.steps;
 
+import august.ComponentSelector;
 import august.ObjectFinder;
 import august.TestStep;
 import august.ParsingException;
@@ -55,6 +56,7 @@ public static final String EXPECTED_VALUE_TYPE_VARIABLE = "variable";
 public static final String EXPECTED_VALUE_TYPE_METHOD = "method";
 
 private String componentName;
+private ComponentSelector selector;
 private String variableName;
 private String variableType;
 private String expectedValue;
@@ -65,6 +67,12 @@ public PropertyCheck(String scriptID, Integer stepNumber, Element node)
 throws ParsingException {
     super(scriptID, stepNumber, node);
     componentName = node.getAttribute(COMPONENT_NAME_ATTRIBUTE);
+    // or the selector of the component, instead of its name
+    selector = getSelector(node);
+    if (selector != null && !componentName.equals("")) {
+        throw new ParsingException(
+            "componentName and selector cannot both be specified.");
+    }
     // get the name of the variable to test
     variableName = node.getAttribute(VARIABLE_NAME_ATTRIBUTE);
     // get the type of the variable to test
@@ -76,6 +84,14 @@ throws ParsingException {
     expectedValueType = node.getAttribute(EXPECTED_VALUE_TYPE_ATTRIBUTE);
 }
 
+public String getComponentName() {
+    return (selector != null) ? null : componentName;
+}
+
+public ComponentSelector getComponentSelector() {
+    return selector;
+}
+
 /** This method must be implemented by all subclasses.
  * <P>
  * It executes the instructions contained in this TestStep instance.  This may
@@ -87,7 +103,9 @@ throws ParsingException {
  * step was being executed should be reported in the FailLog
  */
 public void execute() throws TestStep.FailureException {
-    Component namedComponent = ObjectFinder.findGUIComponent(componentName);
+    Component namedComponent = (selector != null)
+        ? ObjectFinder.findGUIComponent(selector)
+        : ObjectFinder.findGUIComponent(componentName);
     Object inQuestion = getValue(namedComponent, variableName);
     Object expected = getExpectedValue(namedComponent);
     if (!inQuestion.equals(expected)){